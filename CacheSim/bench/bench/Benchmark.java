@@ -0,0 +1,38 @@
+package bench;
+
+/**
+ * A single benchmark run by the BenchmarkRunner. State is prepared in setUp(), which is not 
+ * timed, and each timed invocation of run() performs operations() operations.
+ * 
+ * @author Erik Tedder
+ */
+public abstract class Benchmark {
+
+	/**
+	 * @return The name reported for this benchmark.
+	 */
+	public abstract String name();
+	
+	/**
+	 * Prepares the state for the benchmark. Called once before any invocation is timed.
+	 * 
+	 * @throws Exception If the state cannot be prepared.
+	 */
+	public void setUp() throws Exception {
+		//nothing to prepare by default
+	}
+	
+	/**
+	 * Performs one timed invocation of the benchmark.
+	 * 
+	 * @return A value derived from the work done, consumed so that the work is not optimized
+	 * away.
+	 * @throws Exception If the invocation fails.
+	 */
+	public abstract long run() throws Exception;
+	
+	/**
+	 * @return The number of operations performed by one invocation of run().
+	 */
+	public abstract long operations();
+}
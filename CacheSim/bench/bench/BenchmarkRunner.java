@@ -0,0 +1,65 @@
+package bench;
+
+/**
+ * Minimal benchmark harness. Each benchmark is warmed up so the JIT has compiled its hot
+ * paths, then timed over a number of measured invocations, reporting the mean and standard 
+ * deviation of the time taken per operation.
+ * 
+ * @author Erik Tedder
+ */
+public class BenchmarkRunner {
+
+	/** Default number of untimed warmup invocations. */
+	private static final int DEFAULT_WARMUP = 10;
+	/** Default number of timed invocations. */
+	private static final int DEFAULT_MEASURED = 20;
+	
+	/** Results of every invocation are folded into this to keep the work from being elided. */
+	private static volatile long sink;
+	
+	/** Number of untimed warmup invocations. */
+	private final int warmup;
+	/** Number of timed invocations. */
+	private final int measured;
+	
+	public BenchmarkRunner() {
+		this(DEFAULT_WARMUP, DEFAULT_MEASURED);
+	}
+	
+	public BenchmarkRunner(final int theWarmup, final int theMeasured) {
+		warmup = theWarmup;
+		measured = theMeasured;
+	}
+	
+	/**
+	 * Runs a benchmark and prints its result.
+	 * 
+	 * @param theBenchmark The benchmark to run.
+	 * @return The mean time per operation, in nanoseconds.
+	 * @throws Exception If the benchmark fails.
+	 */
+	public double run(final Benchmark theBenchmark) throws Exception {
+		theBenchmark.setUp();
+		for (int i = 0; i < warmup; i++) {
+			sink += theBenchmark.run();
+		}
+		
+		double[] perOp = new double[measured];
+		double sum = 0;
+		for (int i = 0; i < measured; i++) {
+			long start = System.nanoTime();
+			sink += theBenchmark.run();
+			perOp[i] = (double) (System.nanoTime() - start) / theBenchmark.operations();
+			sum += perOp[i];
+		}
+		double mean = sum / measured;
+		double squares = 0;
+		for (double time : perOp) {
+			squares += (time - mean) * (time - mean);
+		}
+		double deviation = measured > 1 ? Math.sqrt(squares / (measured - 1)) : 0;
+		
+		System.out.format("%-50s %10.3f ns/op  +- %.3f\n", theBenchmark.name(), mean, deviation);
+		return mean;
+	}
+}
@@ -0,0 +1,334 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import model.ArrayTrace;
+import model.BusListener;
+import model.CPU;
+import model.Cache;
+import model.CacheEvent;
+import model.MemoryInfo;
+import model.Trace;
+import model.TraceCursor;
+import model.TraceFile;
+
+/**
+ * Benchmarks of the simulator's hot paths: trace parsing, CPU.access (one reference of 
+ * CPU.run), CPU.snoop, CPU.add with eviction and Cache.insert. Every benchmark is run for 
+ * each combination of cache size, associativity and trace below, with times reported per 
+ * trace reference.
+ * 
+ * <p>Usage: CacheSimBenchmarks [name filter regex]
+ * 
+ * @author Erik Tedder
+ */
+public class CacheSimBenchmarks {
+
+	/** L1 sizes benchmarked. L2 is always L2_RATIO times larger, as in the Simulator. */
+	private static final int[] L1_SIZES = {16, 64, 256};
+	/** L2 size relative to L1. */
+	private static final int L2_RATIO = 4;
+	/** Associativities benchmarked. */
+	private static final int[] NUM_OF_WAYS = {2, 4, 8};
+	/** Traces benchmarked. Names starting with SYNTHETIC are generated in memory. */
+	private static final String[] TRACES = {"trace-2k.csv", "trace-5k.csv", "synthetic-1m"};
+	/** Prefix of generated traces. */
+	private static final String SYNTHETIC = "synthetic-";
+	/** Number of records in a generated trace. */
+	private static final int SYNTHETIC_RECORDS = 1 << 20;
+	/** Number of distinct data addresses in a generated trace. */
+	private static final int SYNTHETIC_WORKING_SET = 1 << 16;
+	/** Latencies passed to the CPUs (unused by the paths benchmarked). */
+	private static final int L1_LATENCY = 2, L2_LATENCY = 12;
+	
+	/**
+	 * Loads a trace, either from file or by generating it.
+	 * 
+	 * @param theName The trace name.
+	 * @return The trace.
+	 * @throws Exception If the trace cannot be read.
+	 */
+	static Trace load(final String theName) throws Exception {
+		if (theName.startsWith(SYNTHETIC)) {
+			return synthetic(SYNTHETIC_RECORDS, SYNTHETIC_WORKING_SET, theName.hashCode());
+		}
+		return TraceFile.open(theName);
+	}
+	
+	/**
+	 * Generates a trace with roughly the mix of the shipped traces: half of the records are
+	 * instruction only, a sixth are reads and a third are writes. Instructions mostly run 
+	 * sequentially with occasional jumps and data addresses are spread over a working set.
+	 * 
+	 * @param theRecords The number of records.
+	 * @param theWorkingSet The number of distinct data addresses.
+	 * @param theSeed Seed for the generator.
+	 * @return The generated trace.
+	 */
+	static ArrayTrace synthetic(final int theRecords, final int theWorkingSet, 
+			final long theSeed) {
+		Random random = new Random(theSeed);
+		ArrayTrace trace = new ArrayTrace(theRecords);
+		int pc = 0;
+		for (int i = 0; i < theRecords; i++) {
+			pc = random.nextInt(16) == 0 ? random.nextInt(1 << 20) << 2 : pc + 4;
+			int kind = random.nextInt(6);
+			if (kind < 3) {
+				trace.add(pc, -1, -1);
+			} else {
+				trace.add(pc, kind == 3 ? 0 : 1, 0x100000 + (random.nextInt(theWorkingSet) << 2));
+			}
+		}
+		return trace;
+	}
+	
+	/**
+	 * Copies a trace into arrays so benchmarks iterate it without any cursor overhead.
+	 * 
+	 * @param theTrace The trace.
+	 * @return The iAddress, ioValue and dAddress columns.
+	 */
+	static int[][] columns(final Trace theTrace) {
+		List<int[]> records = new ArrayList<int[]>();
+		TraceCursor cursor = theTrace.cursor();
+		while (cursor.next()) {
+			records.add(new int[] {cursor.iAddress(), cursor.ioValue(), cursor.dAddress()});
+		}
+		int[][] columns = new int[3][records.size()];
+		for (int i = 0; i < records.size(); i++) {
+			for (int c = 0; c < 3; c++) {
+				columns[c][i] = records.get(i)[c];
+			}
+		}
+		return columns;
+	}
+	
+	/**
+	 * Benchmark over a trace and CPU built from one point of the parameter grid.
+	 */
+	private abstract static class CpuBenchmark extends Benchmark implements BusListener {
+		/** Name of the benchmarked operation. */
+		private final String operation;
+		/** L1 size. */
+		protected final int l1Size;
+		/** Associativity. */
+		protected final int ways;
+		/** Trace name. */
+		protected final String traceName;
+		/** The trace columns. */
+		protected int[] iAddresses, ioValues, dAddresses;
+		/** The CPU benchmarked. */
+		protected CPU cpu;
+		/** Item filled on a miss. */
+		private final MemoryInfo missed = new MemoryInfo();
+		
+		CpuBenchmark(final String theOperation, final int theL1Size, final int theWays, 
+				final String theTrace) {
+			operation = theOperation;
+			l1Size = theL1Size;
+			ways = theWays;
+			traceName = theTrace;
+		}
+		
+		@Override
+		public String name() {
+			return String.format("%s size=%d ways=%d trace=%s", operation, l1Size, ways, 
+					traceName);
+		}
+		
+		@Override
+		public void setUp() throws Exception {
+			Trace trace = load(traceName);
+			int[][] columns = columns(trace);
+			iAddresses = columns[0];
+			ioValues = columns[1];
+			dAddresses = columns[2];
+			cpu = new CPU(trace, l1Size, L1_LATENCY, l1Size * L2_RATIO, L2_LATENCY, ways, 1, 1);
+			//warm the caches with the trace
+			for (int i = 0; i < iAddresses.length; i++) {
+				access(i);
+			}
+		}
+		
+		/**
+		 * Performs one reference of the trace, servicing the events it raises.
+		 * 
+		 * @param theRecord The record of the trace.
+		 */
+		protected void access(final int theRecord) {
+			cpu.access(iAddresses[theRecord], ioValues[theRecord], dAddresses[theRecord]);
+			cpu.getBus().drainTo(this, Integer.MAX_VALUE);
+		}
+		
+		/**
+		 * Stands in for the simulator by filling the CPU on every miss.
+		 */
+		@Override
+		public void onMessage(final CacheEvent theEvent, final int theCpu, 
+				final int theIAddress, final int theIOValue, final int theDAddress, 
+				final byte theStartState, final byte theEndState) {
+			if (theEvent == CacheEvent.MISS) {
+				cpu.add(missed.set(theIAddress, theIOValue, theDAddress), Cache.EXCLUSIVE, this);
+			}
+		}
+		
+		@Override
+		public long operations() {
+			return iAddresses.length;
+		}
+	}
+	
+	/**
+	 * Throughput of CPU.access, the per-reference body of CPU.run.
+	 */
+	private static class Run extends CpuBenchmark {
+		Run(final int theL1Size, final int theWays, final String theTrace) {
+			super("CPU.run", theL1Size, theWays, theTrace);
+		}
+		
+		@Override
+		public long run() {
+			for (int i = 0; i < iAddresses.length; i++) {
+				access(i);
+			}
+			return iAddresses.length;
+		}
+	}
+	
+	/**
+	 * CPU.snoop of every reference of the trace against warmed caches.
+	 */
+	private static class Snoop extends CpuBenchmark {
+		/** Item snooped. */
+		private final MemoryInfo item = new MemoryInfo();
+		/** Snoop result. */
+		private final MemoryInfo result = new MemoryInfo();
+		
+		Snoop(final int theL1Size, final int theWays, final String theTrace) {
+			super("CPU.snoop", theL1Size, theWays, theTrace);
+		}
+		
+		@Override
+		public long run() {
+			for (int i = 0; i < iAddresses.length; i++) {
+				cpu.snoop(item.set(iAddresses[i], ioValues[i], dAddresses[i]), result, this);
+			}
+			return iAddresses.length;
+		}
+	}
+	
+	/**
+	 * CPU.add of every reference of the trace into full caches, so each add evicts.
+	 */
+	private static class Add extends CpuBenchmark {
+		/** Item added. */
+		private final MemoryInfo item = new MemoryInfo();
+		
+		Add(final int theL1Size, final int theWays, final String theTrace) {
+			super("CPU.add", theL1Size, theWays, theTrace);
+		}
+		
+		@Override
+		public long run() {
+			for (int i = 0; i < iAddresses.length; i++) {
+				cpu.add(item.set(iAddresses[i], ioValues[i], dAddresses[i]), Cache.EXCLUSIVE, this);
+			}
+			return iAddresses.length;
+		}
+	}
+	
+	/**
+	 * Cache.insert of every reference of the trace into its set.
+	 */
+	private static class Insert extends CpuBenchmark {
+		/** The cache inserted into. */
+		private Cache cache;
+		
+		Insert(final int theL1Size, final int theWays, final String theTrace) {
+			super("Cache.insert", theL1Size, theWays, theTrace);
+		}
+		
+		@Override
+		public void setUp() throws Exception {
+			super.setUp();
+			cache = new Cache(l1Size, L1_LATENCY, ways);
+		}
+		
+		@Override
+		public long run() {
+			for (int i = 0; i < iAddresses.length; i++) {
+				int address = iAddresses[i];
+				cache.insert(cache.index(address) + (i & (ways - 1)), cache.tag(address), 
+						Cache.EXCLUSIVE, address, ioValues[i], dAddresses[i]);
+			}
+			return iAddresses.length;
+		}
+	}
+	
+	/**
+	 * Parsing a trace file (the trace loading done by the Simulator constructor).
+	 */
+	private static class Parse extends Benchmark {
+		/** Trace name. */
+		private final String traceName;
+		/** Records in the trace. */
+		private long records;
+		
+		Parse(final String theTrace) {
+			traceName = theTrace;
+		}
+		
+		@Override
+		public String name() {
+			return "TraceFile.open trace=" + traceName;
+		}
+		
+		@Override
+		public void setUp() throws Exception {
+			records = TraceFile.open(traceName).size();
+		}
+		
+		@Override
+		public long run() throws Exception {
+			return TraceFile.open(traceName).size();
+		}
+		
+		@Override
+		public long operations() {
+			return records;
+		}
+	}
+	
+	/**
+	 * Runs every benchmark whose name matches the optional filter.
+	 * 
+	 * @param theArgs Optionally, a regular expression benchmark names must contain.
+	 * @throws Exception If a benchmark fails.
+	 */
+	public static void main(String... theArgs) throws Exception {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for (String trace : TRACES) {
+			if (!trace.startsWith(SYNTHETIC)) {
+				benchmarks.add(new Parse(trace));
+			}
+			for (int size : L1_SIZES) {
+				for (int ways : NUM_OF_WAYS) {
+					benchmarks.add(new Run(size, ways, trace));
+					benchmarks.add(new Snoop(size, ways, trace));
+					benchmarks.add(new Add(size, ways, trace));
+					benchmarks.add(new Insert(size, ways, trace));
+				}
+			}
+		}
+		
+		String filter = theArgs.length > 0 ? ".*(" + theArgs[0] + ").*" : ".*";
+		BenchmarkRunner runner = new BenchmarkRunner(5, 10);
+		for (Benchmark benchmark : benchmarks) {
+			if (benchmark.name().matches(filter)) {
+				runner.run(benchmark);
+			}
+		}
+	}
+}
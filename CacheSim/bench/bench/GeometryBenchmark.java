@@ -0,0 +1,154 @@
+package bench;
+
+import java.util.Arrays;
+
+import model.Cache;
+import model.Trace;
+import model.TraceCursor;
+import model.TraceFile;
+
+/**
+ * Compares the per-reference cost of mapping an address onto the L1, L2 and L3 caches the
+ * way CPU.getTag used to (a Math.log per reference) against the geometry Cache precomputes.
+ * Each operation maps one trace reference onto all three levels and probes each of them.
+ * 
+ * @author Erik Tedder
+ */
+public class GeometryBenchmark {
+
+	/** Cache sizes and associativity matching the Simulator defaults. */
+	private static final int L1_SIZE = 16, L2_SIZE = 64, L3_SIZE = 256, NUM_OF_WAYS = 8;
+	
+	/** Default trace benchmarked. */
+	private static final String TRACE_FILE = "trace-5k.csv";
+	
+	/**
+	 * Reads every instruction and data address from a trace.
+	 * 
+	 * @param theFileName The trace to read.
+	 * @return The addresses of the trace, in order.
+	 * @throws Exception If the trace cannot be read.
+	 */
+	static int[] addresses(final String theFileName) throws Exception {
+		Trace trace = TraceFile.open(theFileName);
+		int[] addresses = new int[1024];
+		int count = 0;
+		TraceCursor cursor = trace.cursor();
+		while (cursor.next()) {
+			if (count + 2 > addresses.length) {
+				addresses = Arrays.copyOf(addresses, addresses.length * 2);
+			}
+			addresses[count++] = cursor.iAddress();
+			if (cursor.dAddress() != -1) {
+				addresses[count++] = cursor.dAddress();
+			}
+		}
+		return Arrays.copyOf(addresses, count);
+	}
+	
+	/**
+	 * Base for both variants: the caches probed and the addresses mapped.
+	 */
+	private abstract static class Mapping extends Benchmark {
+		/** The trace benchmarked. */
+		private final String traceFile;
+		/** Addresses of the trace. */
+		protected int[] addresses;
+		/** The levels probed. */
+		protected Cache[] levels;
+		
+		Mapping(final String theTraceFile) {
+			traceFile = theTraceFile;
+		}
+		
+		@Override
+		public void setUp() throws Exception {
+			addresses = addresses(traceFile);
+			levels = new Cache[] {new Cache(L1_SIZE, 0, NUM_OF_WAYS), 
+					new Cache(L2_SIZE, 0, NUM_OF_WAYS), new Cache(L3_SIZE, 0, NUM_OF_WAYS)};
+			//fill each cache so probes compare real tags
+			for (Cache level : levels) {
+				for (int i = 0; i < addresses.length; i++) {
+					int index = level.index(addresses[i]);
+					level.insert(index + (i % NUM_OF_WAYS), level.tag(addresses[i]), 
+							Cache.EXCLUSIVE, addresses[i], -1, -1);
+				}
+			}
+		}
+		
+		@Override
+		public long operations() {
+			return addresses.length;
+		}
+	}
+	
+	/**
+	 * Maps addresses with a Math.log per reference, as CPU.getTag did.
+	 */
+	private static class LogMapping extends Mapping {
+		/** Cache sizes of the levels. */
+		private final int[] sizes = {L1_SIZE, L2_SIZE, L3_SIZE};
+		
+		LogMapping(final String theTraceFile) {
+			super(theTraceFile);
+		}
+		
+		@Override
+		public String name() {
+			return "geometry: Math.log per reference (before)";
+		}
+		
+		@Override
+		public long run() {
+			long found = 0;
+			for (int address : addresses) {
+				for (int l = 0; l < levels.length; l++) {
+					int sets = sizes[l] / NUM_OF_WAYS;
+					int index = (address & (sets - 1)) * NUM_OF_WAYS;
+					int tag = address >> (int) (Math.log(sets) / Math.log(2));
+					found += levels[l].find(index, tag);
+				}
+			}
+			return found;
+		}
+	}
+	
+	/**
+	 * Maps addresses with the geometry precomputed by Cache.
+	 */
+	private static class PrecomputedMapping extends Mapping {
+		
+		PrecomputedMapping(final String theTraceFile) {
+			super(theTraceFile);
+		}
+		
+		@Override
+		public String name() {
+			return "geometry: precomputed mask and shift (after)";
+		}
+		
+		@Override
+		public long run() {
+			long found = 0;
+			for (int address : addresses) {
+				for (int l = 0; l < levels.length; l++) {
+					found += levels[l].probe(address);
+				}
+			}
+			return found;
+		}
+	}
+	
+	/**
+	 * Runs both variants.
+	 * 
+	 * @param theArgs Optionally, the trace to benchmark.
+	 * @throws Exception If the trace cannot be read.
+	 */
+	public static void main(String... theArgs) throws Exception {
+		String traceFile = theArgs.length > 0 ? theArgs[0] : TRACE_FILE;
+		BenchmarkRunner runner = new BenchmarkRunner(200, 200);
+		runner.run(new LogMapping(traceFile));
+		runner.run(new PrecomputedMapping(traceFile));
+	}
+}
@@ -0,0 +1,173 @@
+package bench;
+
+import model.Cache;
+
+/**
+ * Compares, at each kind of call site, scanning the ways of a set one at a time against 
+ * first building a mask with a bit for each way holding the tag, then walking its set bits.
+ * Each operation looks one trace address up in a full cache, a few sets of which have an 
+ * empty way:
+ * <ul>
+ * <li>hit: the way holding the address's tag, as Cache.probe and find look up.</li>
+ * <li>miss: the same lookup for a tag no way holds, so every way is compared.</li>
+ * <li>invalidation: every way holding the tag, as CPU visits each copy it invalidates.</li>
+ * <li>fill: the first empty way of the set, as CPU and Simulator fill into.</li>
+ * </ul>
+ * Run for 8 and 16 way caches. The mask was no faster at any site, and clearly slower for 
+ * fills, so Cache and CPU scan the ways one at a time, stopping at the first hit.
+ *
+ * @author Erik Tedder
+ */
+public class ProbeBenchmark {
+
+	/** Cache size, matching the Simulator's default L3. */
+	private static final int CACHE_SIZE = 256;
+	/** Associativities benchmarked. */
+	private static final int[] NUM_OF_WAYS = {8, 16};
+	/** Added to a tag to give one no way holds. */
+	private static final int MISS_TAG = 1 << 28;
+	/** Kinds of call site benchmarked. */
+	private static final String[] SITES = {"hit", "miss", "invalidation", "fill"};
+
+	/** Default trace benchmarked. */
+	private static final String TRACE_FILE = "trace-5k.csv";
+
+	/**
+	 * Looks every address up at one kind of call site, either way at a time or through the
+	 * mask.
+	 */
+	private static class Probe extends Benchmark {
+		/** The trace benchmarked. */
+		private final String traceFile;
+		/** Associativity of the cache. */
+		private final int ways;
+		/** The kind of call site, an index into SITES. */
+		private final int site;
+		/** True to compare the ways through a mask, false one at a time. */
+		private final boolean masked;
+		/** Addresses of the trace. */
+		private int[] addresses;
+		/** Tags of the cache, copied so both variants read the same array. */
+		private int[] tags;
+		/** The cache probed. */
+		private Cache cache;
+
+		Probe(final String theTraceFile, final int theWays, final int theSite,
+				final boolean theMasked) {
+			traceFile = theTraceFile;
+			ways = theWays;
+			site = theSite;
+			masked = theMasked;
+		}
+
+		@Override
+		public String name() {
+			return SITES[site] + ": " + (masked ? "way mask" : "way loop") + " ways=" + ways;
+		}
+
+		@Override
+		public void setUp() throws Exception {
+			addresses = GeometryBenchmark.addresses(traceFile);
+			cache = new Cache(CACHE_SIZE, 0, ways);
+			//fill the cache so probes compare real tags, leaving a way of some sets empty
+			for (int i = 0; i < addresses.length; i++) {
+				int index = cache.index(addresses[i]);
+				cache.insert(index + (i % ways), cache.tag(addresses[i]), Cache.EXCLUSIVE,
+						addresses[i], -1, -1);
+			}
+			for (int i = 0; i < CACHE_SIZE; i += 3 * ways) {
+				cache.clear(i);
+			}
+			tags = new int[CACHE_SIZE];
+			for (int i = 0; i < CACHE_SIZE; i++) {
+				tags[i] = cache.holds(i) ? cache.tag(cache.address(i)) : Cache.NO_TAG;
+			}
+		}
+
+		@Override
+		public long operations() {
+			return addresses.length;
+		}
+
+		@Override
+		public long run() {
+			long found = 0;
+			for (int address : addresses) {
+				int index = cache.index(address);
+				int tag = cache.tag(address);
+				switch (site) {
+					case 0: found += find(index, tag); break;
+					case 1: found += find(index, tag + MISS_TAG); break;
+					case 2: found += every(index, tag); break;
+					default: found += find(index, Cache.NO_TAG); break;
+				}
+			}
+			return found;
+		}
+
+		/**
+		 * @return The first slot of the set holding the tag, or -1.
+		 */
+		private int find(final int theIndex, final int theTag) {
+			if (masked) {
+				long matched = matches(theIndex, theTag);
+				return matched == 0 ? -1 : theIndex + Long.numberOfTrailingZeros(matched);
+			}
+			for (int i = theIndex; i < theIndex + ways; i++) {
+				if (tags[i] == theTag) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * @return The sum of the slots of the set holding the tag.
+		 */
+		private int every(final int theIndex, final int theTag) {
+			int sum = 0;
+			if (masked) {
+				for (long way = matches(theIndex, theTag); way != 0; way &= way - 1) {
+					sum += theIndex + Long.numberOfTrailingZeros(way);
+				}
+			} else {
+				for (int i = theIndex; i < theIndex + ways; i++) {
+					if (tags[i] == theTag) {
+						sum += i;
+					}
+				}
+			}
+			return sum;
+		}
+
+		/**
+		 * @return A mask with bit i set if slot theIndex + i holds the tag.
+		 */
+		private long matches(final int theIndex, final int theTag) {
+			long matched = 0;
+			for (int i = 0; i < ways; i++) {
+				if (tags[theIndex + i] == theTag) {
+					matched |= 1L << i;
+				}
+			}
+			return matched;
+		}
+	}
+
+	/**
+	 * Runs both variants of every call site for each associativity.
+	 *
+	 * @param theArgs Optionally, the trace to benchmark.
+	 * @throws Exception If the trace cannot be read.
+	 */
+	public static void main(String... theArgs) throws Exception {
+		String traceFile = theArgs.length > 0 ? theArgs[0] : TRACE_FILE;
+		BenchmarkRunner runner = new BenchmarkRunner(200, 200);
+		for (int ways : NUM_OF_WAYS) {
+			for (int site = 0; site < SITES.length; site++) {
+				runner.run(new Probe(traceFile, ways, site, false));
+				runner.run(new Probe(traceFile, ways, site, true));
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Trace held in memory as three parallel primitive arrays. Used for the CSV traces, which 
+ * are small enough to be read in completely.
+ * 
+ * @author Erik Tedder
+ */
+public class ArrayTrace implements Trace, TraceSink {
+
+	/** Default starting capacity. */
+	private static final int DEFAULT_CAPACITY = 1024;
+	
+	/** Instruction addresses. */
+	private int[] iAddresses;
+	/** I/O values. */
+	private int[] ioValues;
+	/** Data addresses. */
+	private int[] dAddresses;
+	/** Number of records stored. */
+	private int count;
+	
+	public ArrayTrace() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public ArrayTrace(final int theCapacity) {
+		iAddresses = new int[Math.max(theCapacity, 1)];
+		ioValues = new int[iAddresses.length];
+		dAddresses = new int[iAddresses.length];
+		count = 0;
+	}
+	
+	/**
+	 * Appends a record to the end of this trace.
+	 * 
+	 * @param theIAddress The instruction address.
+	 * @param theIOValue The I/O value.
+	 * @param theDAddress The data address.
+	 */
+	@Override
+	public void add(final int theIAddress, final int theIOValue, final int theDAddress) {
+		if (count == iAddresses.length) {
+			grow(iAddresses.length * 2);
+		}
+		iAddresses[count] = theIAddress;
+		ioValues[count] = theIOValue;
+		dAddresses[count] = theDAddress;
+		count++;
+	}
+	
+	/**
+	 * Appends every record of another trace to the end of this trace.
+	 * 
+	 * @param theTrace The trace appended.
+	 */
+	public void addAll(final ArrayTrace theTrace) {
+		if (count + theTrace.count > iAddresses.length) {
+			grow(Math.max(iAddresses.length * 2, count + theTrace.count));
+		}
+		System.arraycopy(theTrace.iAddresses, 0, iAddresses, count, theTrace.count);
+		System.arraycopy(theTrace.ioValues, 0, ioValues, count, theTrace.count);
+		System.arraycopy(theTrace.dAddresses, 0, dAddresses, count, theTrace.count);
+		count += theTrace.count;
+	}
+	
+	/**
+	 * Resizes the backing arrays.
+	 * 
+	 * @param theCapacity The new capacity, at least the number of records stored.
+	 */
+	private void grow(final int theCapacity) {
+		iAddresses = Arrays.copyOf(iAddresses, theCapacity);
+		ioValues = Arrays.copyOf(ioValues, theCapacity);
+		dAddresses = Arrays.copyOf(dAddresses, theCapacity);
+	}
+	
+	@Override
+	public long size() {
+		return count;
+	}
+	
+	@Override
+	public TraceCursor cursor() {
+		return new Cursor();
+	}
+	
+	/**
+	 * Cursor over the backing arrays.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private class Cursor implements TraceCursor {
+		/** Current record. */
+		private int position = -1;
+		
+		@Override
+		public boolean next() {
+			if (position + 1 >= count) {
+				position = count;
+				return false;
+			}
+			position++;
+			return true;
+		}
+		
+		@Override
+		public int iAddress() {
+			return iAddresses[position];
+		}
+		
+		@Override
+		public int ioValue() {
+			return ioValues[position];
+		}
+		
+		@Override
+		public int dAddress() {
+			return dAddresses[position];
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package model;
+
+/**
+ * Receiver of the events raised by a CPU. Messages are passed as primitives so that 
+ * raising an event never allocates or boxes.
+ * 
+ * @author Erik Tedder
+ */
+public interface BusListener {
+
+	/**
+	 * Called for each event raised.
+	 * 
+	 * @param theEvent The type of event.
+	 * @param theCpu The number of the CPU raising the event.
+	 * @param theIAddress Instruction address of the item involved (the evicted address for 
+	 * L3_FILL).
+	 * @param theIOValue I/O value of the item involved.
+	 * @param theDAddress Data address of the item involved.
+	 * @param theStartState MESI state before a MODIFIED event.
+	 * @param theEndState MESI state after a MODIFIED event.
+	 */
+	void onMessage(CacheEvent theEvent, int theCpu, int theIAddress, int theIOValue, 
+			int theDAddress, byte theStartState, byte theEndState);
+}
@@ -0,0 +1,33 @@
+package model;
+
+/**
+ * A single message on the CoherenceBus. Messages are preallocated slots of the bus and are
+ * overwritten once consumed, so they are never created per event.
+ * 
+ * @author Erik Tedder
+ */
+public class BusMessage {
+	/** The type of event. */
+	CacheEvent event;
+	/** The CPU raising the event. */
+	int cpu;
+	/** Instruction address of the item involved. */
+	int iAddress;
+	/** I/O value of the item involved. */
+	int ioValue;
+	/** Data address of the item involved. */
+	int dAddress;
+	/** MESI state before a MODIFIED event. */
+	byte startState;
+	/** MESI state after a MODIFIED event. */
+	byte endState;
+	
+	/**
+	 * Delivers this message to a listener.
+	 * 
+	 * @param theListener The listener.
+	 */
+	void deliverTo(final BusListener theListener) {
+		theListener.onMessage(event, cpu, iAddress, ioValue, dAddress, startState, endState);
+	}
+}
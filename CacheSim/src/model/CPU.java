@@ -1,398 +1,1211 @@
-package model;
-
-import java.util.ArrayList;
-import java.util.Observable;
-import java.util.Random;
-
-/**
- * Simulates a CPU for the Caching Simulator. CPU consists of an L1 and L2 cache locations.
- * 
- * @author Erik Tedder
- */
-public class CPU extends Observable implements Runnable {
-	
-	/**
-	 * Denotes the data handling method. If '1', then write back is enabled and data will be
-	 * written once flushed from L1d. If '0', then data will be written through or instantly
-	 * written instead of delayed.
-	 */
-	private int writeBack;
-	
-	/** The thread for this CPU. */
-	private Thread t;
-	/** The first level cache for instruction. */
-	private Cache L1i;
-	/** The first level cache for data. */
-	private Cache L1d;
-	/** The second level cache. */
-	private Cache L2;
-	/** Name for the CPU. */
-	protected int cpuNumber;
-	/** The memory trace. */
-	private ArrayList<MemoryInfo> memoryTrace;
-	/** Random number generator for assigning positions at random. */
-	private Random r = new Random();
-	
-	/** L1 miss counter. */
-	protected int l1missNum = 0;
-	/** L1 hit counter. */
-	protected int l1hitNum = 0;
-	/** L2 miss counter. */
-	protected int l2missNum = 0;
-	/** L2 hit counter. */
-	protected int l2hitNum = 0;
-	
-	/**
-	 * CPU constructor for instantiating the different cache sizes and values.
-	 * 
-	 * @param theL1Size Size of L1.
-	 * @param theL1Latency Latency of L1.
-	 * @param theL2Size Size of L2.
-	 * @param theL2Latency Latency of L2.
-	 * @param theNumOfWays The cache associativity (2, 4, or 8).
-	 */
-	public CPU(final ArrayList<MemoryInfo> theTrace, final int theL1Size, 
-			final int theL1Latency, final int theL2Size, final int theL2Latency, 
-			final int theNumOfWays, final int theWB, final int thecpuNumber) {		
-		cpuNumber = thecpuNumber;
-		memoryTrace = theTrace;
-		writeBack = theWB;
-		L1i = new Cache(theL1Size, theL1Latency, theNumOfWays);
-		L1d = new Cache(theL1Size, theL1Latency, theNumOfWays);
-		L2 = new Cache(theL2Size, theL2Latency, theNumOfWays);				
-	}
-	
-	/**
-	 * For threading.
-	 */
-	@Override
-	public void run() {
-		int L1Index, L1Tag, L2Index, L2Tag;
-		
-		//go through each item of the memoryTrace and see if it is in the Caches
-		for (MemoryInfo m : memoryTrace) {
-			//Flag to denote the item was found and no need to continue checking
-			boolean located = false;
-			//construct the L1 and L2 indices and tags
-			L1Index = getIndex(m.iAddress, L1i);
-			L1Tag = getTag(m.iAddress, L1i);
-			L2Index = getIndex(m.iAddress, L2);
-			L2Tag = getTag(m.iAddress, L2);
-			
-			if (m.ioValue == 1) { //is a data write
-				int dataIndex = getIndex(m.dAddress, L1d);
-				int dataTag = getTag(m.dAddress, L1d);
-				
-				//denote an immediate write to memory if write-through
-				//(just needs to happen within same span of placing to cache)
-				if (writeBack == 0) {
-					setChanged();
-					notifyObservers(CacheEvent.DATA_WRITE);
-				}
-				
-				//Check if item is in the L1 cache (iterates through checking)
-				for (int i = 0; i < L1d.numOfWays && !located && i + dataIndex < L1d.cacheSize; i++) {
-					if (L1d.entries[dataIndex + i].tag == dataTag) {
-						located = true;
-						l1hitNum++;
-						//notify simulator of a write and state change
-						setChanged();
-						notifyObservers(new CacheModification(L1d.entries[dataIndex + i].MESIState, 'M', m));
-						//set entry as modified
-						L1d.entries[dataIndex + i].MESIState = 'M';
-					} 
-				}
-				dataIndex = getIndex(m.dAddress, L2);
-				dataTag = getTag(m.dAddress, L2);
-				for (int i = 0; i < L2.numOfWays && !located && i + dataIndex < L2.cacheSize; i++) {
-					if (L2.entries[dataIndex + i].tag == dataTag) {
-						located = true;
-						l1missNum++;
-						l2hitNum++;
-						//notify simulator of a write and state change
-						setChanged();
-						notifyObservers(new CacheModification(L2.entries[dataIndex + i].MESIState, 'M', m));
-						//set entry as modified
-						L2.entries[dataIndex + i].MESIState = 'M';
-					} 
-				}
-			} else {
-				//Check if item is in the L1 cache (iterates through checking)
-				for (int i = 0; i < L1i.numOfWays && !located && i + L1Index < L1i.cacheSize; i++) {
-					if (L1i.entries[L1Index + i].tag == L1Tag) {
-						located = true;
-						l1hitNum++;
-					} 
-				}
-				//Check if the item is in the L2 cache (iterates through checking)
-				for (int i = 0; i < L2.numOfWays && !located && i + L2Index < L2.cacheSize; i++) {
-					if (L2.entries[L2Index + i].tag == L2Tag) {
-						located = true;
-						l1missNum++;
-						l2hitNum++;
-					}
-				}
-			}
-			//Item has not be located in L1 or L2
-			if (!located) {
-				//L1 and L2 miss
-				l1missNum++;
-				l2missNum++;
-				//Notify observer to check in shared L3
-				setChanged();
-				notifyObservers(m);
-			}
-			
-			//Sleep thread for a second (good for fast processors)
-			try {
-				Thread.sleep(0);
-			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		}
-		//CPU has finished with provided memory trace, output results.
-		System.out.format("\n[CPU %d] Finished\n[L1] Hits: %d Misses: %d\n[L2] Hits: %d "
-				+ "Misses: %d\n", cpuNumber, l1hitNum, l1missNum, l2hitNum, l2missNum);
-		//Let observer know thread has completed
-		setChanged();
-		notifyObservers(CacheEvent.COMPLETE);
-		
-	}
-	
-	/**
-	 * Snooping method for this CPU. Checks all local caches to see if the item is in the 
-	 * cache. If so, returns the MemoryInfo contained. If not, returns a MemoryInfo with an 
-	 * iAddress of -1.
-	 * 
-	 * @param theMemoryItem The potential memory item being snooped.
-	 * @return MemoryInfo
-	 */
-	public MemoryInfo snoop(final MemoryInfo theMemoryItem) {
-		//MemoryInfo to be returned (set address to -1 to denote none found)
-		MemoryInfo snooped = new MemoryInfo(-1, -1, -1);
-		//boolean to denote item being found
-		boolean contained = false;
-		
-		//Construct the L1 and L2 indices and Tags
-		int L1Index, L1Tag, L2Index, L2Tag;
-		L1Index = getIndex(theMemoryItem.dAddress, L1i);
-		L1Tag = getTag(theMemoryItem.dAddress, L1i);
-		L2Index = getIndex(theMemoryItem.dAddress, L2);
-		L2Tag = getTag(theMemoryItem.dAddress, L2);
-		
-		//see if memory item is in l1d cache (since checking data)
-		for (int i = 0; i < L1d.numOfWays && !contained && i + L1Index < L1d.cacheSize; i++) {
-			if (L1d.entries[L1Index + i].tag == L1Tag) {
-				contained = true;
-				snooped = L1d.entries[L1Index + i].data;
-				L1d.entries[L1Index + i].MESIState = 'S';
-				l1hitNum++;
-			}
-		}
-		//data not contained in L1, increment miss counter
-		if (!contained) {
-			l1missNum++;
-		}
-		
-		//see if memory item is in l2 cache
-		for (int i = 0; i < L2.numOfWays && !contained && i + L2Index < L2.cacheSize; i++) {
-			if (L2.entries[L2Index + i].tag == L2Tag) {
-				contained = true;
-				snooped = L2.entries[L2Index + i].data;
-				l2hitNum++;
-			}
-		}
-		
-		//return whether this CPU contains this item
-		return snooped;
-	}
-	
-	/**
-	 * Method for adding an item to this CPU's caches. 
-	 * 
-	 * @param theMemoryItem
-	 */
-	public void add(final MemoryInfo mem, final char theState) {
-		int L1Index, L1Tag, dataIndex, dataTag;
-		//boolean denoting whether item has been placed (for eviction purposes)
-		boolean placed = false;
-		
-		//Item deals with data, try to add to L1d
-		if (mem.ioValue != -1) {
-			boolean dataPlaced = false;
-			dataIndex = getIndex(mem.dAddress, L1d);
-			dataTag = getTag(mem.dAddress, L1d);
-			for (int i = 0; i < L1d.numOfWays && i + dataIndex < L1d.cacheSize; i++) {
-				if (L1d.entries[dataIndex + i].tag == -1) {
-					//is an empty spot, insert and denote placed boolean
-					L1d.insert(mem, dataIndex + i, dataTag, theState);
-					dataPlaced = true;
-				}
-			}
-			
-			if (!dataPlaced) {
-				//Choose random value within the number of ways
-				int random = r.nextInt(L1d.numOfWays);
-				MemoryInfo oldValue;
-				//MemoryInfo for the item being evicted
-				oldValue = L1d.entries[dataIndex + random].data;
-				//save the old MESI state to ensure we don't write out faulty data
-				char oldMESI = L1d.entries[dataIndex + random].MESIState;
-				L1d.insert(mem, dataIndex + random, dataTag, theState);
-				//Old data entry got evicted and needs to be written
-				if (writeBack == 1 && oldValue.ioValue == 1 && oldMESI != 'I') {
-					setChanged();
-					notifyObservers(CacheEvent.DATA_WRITE);
-				}			
-				//Calculate the L2 index and tag for the evicted item
-				int L2Index = getIndex(oldValue.dAddress, L2);
-				int L2Tag = getTag(oldValue.dAddress, L2);
-				
-				placed = false;
-				//Check all of L2 caches (within the necessary range) to check for free spot
-				for (int i = 0; i < L2.numOfWays && i + L2Index < L2.cacheSize; i++) {
-					if (L2.entries[L2Index + i].tag == -1) {
-						L2.insert(oldValue, L2Index + i, L2Tag, theState);
-						//item placed in L2 cache
-						placed = true;
-					}
-				}
-				//Evicted item was not placed in L2
-				if(!placed) {
-					//take a random value within the necessary range
-					random = r.nextInt(L2.numOfWays);
-					MemoryInfo temp = oldValue;
-					//Construct address value of evicted item
-					oldValue = L2.entries[L2Index + random].data;
-					//Place item evicted from L1 into L2
-					L2.insert(temp, L2Index + random, L2Tag, theState);
-					
-					//Let simulator know something needs to be placed into L3.
-					//only placing non-data values into L3
-					if (oldValue.ioValue == -1) {
-						setChanged();
-						notifyObservers(new Integer(oldValue.iAddress));
-					}
-				}
-			}
-		} 
-		
-		//calculate index and tag for L1
-		L1Index = getIndex(mem.iAddress, L1i);
-		L1Tag = getTag(mem.iAddress, L1i);
-		
-		//Search L1i to see if there are any empty spots
-		for (int i = 0; i < L1i.numOfWays && i + L1Index < L1i.cacheSize; i++) {
-			if (L1i.entries[L1Index + i].tag == -1) {
-				//is an empty spot, insert and denote placed boolean
-				L1i.insert(mem, L1Index + i, L1Tag, theState);
-				placed = true;
-			}
-		}
-			
-		
-		//No empty spots in cache, need to evict something
-		if (!placed) {
-			//Choose random value within the number of ways
-			int random = r.nextInt(L1i.numOfWays);
-			MemoryInfo oldValue;
-			//MemoryInfo for the item being evicted
-			//item doesnt involve data, put in instruction
-			oldValue = L1i.entries[(L1Index + random)].data;
-			L1i.insert(mem, L1Index + random, L1Tag, theState);
-			
-			//Calculate the L2 index and tag for the evicted item
-			int L2Index = getIndex(oldValue.iAddress, L2);
-			int L2Tag = getTag(oldValue.iAddress, L2);
-			//denote it not being placed
-			placed = false;
-			//Check all of L2 caches (within the necessary range) to check for free spot
-			for (int i = 0; i < L2.numOfWays && i + L2Index < L2.cacheSize; i++) {
-				if (L2.entries[L2Index + i].tag == -1) {
-					L2.insert(oldValue, L2Index + i, L2Tag, theState);
-					//item placed in L2 cache
-					placed = true;
-				}
-			}
-			//Evicted item was not placed in L2
-			if(!placed) {
-				//take a random value within the necessary range
-				random = r.nextInt(L2.numOfWays);
-				MemoryInfo temp = oldValue;
-				//Construct address value of evicted item
-				oldValue = L2.entries[L2Index + random].data;
-				//Place item evicted from L1 into L2
-				L2.insert(temp, L2Index + random, L2Tag, theState);
-				
-				//Let simulator know something needs to be placed into L3.
-				setChanged();
-				notifyObservers(new Integer(oldValue.iAddress));
-			}
-		}
-	}
-	
-	/**
-	 * Method that is called when an entry in cache may need to be invalidated.
-	 * 
-	 * @param mem The item that is being written in a different CPU.
-	 */
-	public void invalidateData(final MemoryInfo mem) {
-		int dataIndex = getIndex(mem.dAddress, L1d);
-		int dataTag = getTag(mem.dAddress, L1d);
-		
-		//Check if item is in the L1 cache (iterates through checking)
-		for (int i = 0; i < L1d.numOfWays && i + dataIndex < L1d.cacheSize; i++) {
-			if (L1d.entries[dataIndex + i].tag == dataTag) {
-				//notify simulator of a write and state change
-				setChanged();
-				notifyObservers(new CacheModification(L1d.entries[dataIndex + i].MESIState, 'I', mem));
-				//set entry as modified
-				L1d.entries[dataIndex + i].MESIState = 'I';
-			} 
-		}
-		dataIndex = getIndex(mem.dAddress, L2);
-		dataTag = getTag(mem.dAddress, L2);
-		for (int i = 0; i < L2.numOfWays && i + dataIndex < L2.cacheSize; i++) {
-			if (L2.entries[dataIndex + i].tag == dataTag) {
-				//notify simulator of a write and state change
-				setChanged();
-				notifyObservers(new CacheModification(L2.entries[dataIndex + i].MESIState, 'I', mem));
-				//set entry as modified
-				L2.entries[dataIndex + i].MESIState = 'I';
-			} 
-		}
-	}
-	
-	/**
-	 * Method for calculating the index for caching.
-	 * 
-	 * @param theMemoryItem The item to be cached.
-	 * @param theCacheSize The size of the cache used.
-	 * @return The index for this item.
-	 */
-	private int getIndex(final int address, final Cache theCache) {
-		return address & (theCache.cacheSize/theCache.numOfWays - 1);
-	}
-	
-	/**
-	 * Method for calculating the tag for caching.
-	 * 
-	 * @param theMemoryItem
-	 * @param theCacheSize
-	 * @return
-	 */
-	private int getTag(final int address, final Cache theCache) {
-		return address >> (int)(Math.log(theCache.cacheSize/theCache.numOfWays) / Math.log(2));
-	}
-
-	/**
-	 * Starts the CPU.
-	 */
-	public void start() {
-		System.out.format("[CPU %d] started\n", cpuNumber);
-		t = new Thread(this);
-		t.start();
-	}
-
-}
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Simulates a CPU for the Caching Simulator. CPU consists of an L1 and L2 cache locations.
+ * 
+ * <p>A CPU checkpoints its caches, prefetcher, statistics and position within its trace.
+ * It is restored by replaying its trace up to that position without performing it, so must
+ * be restored before it has run.
+ * 
+ * @author Erik Tedder
+ */
+public class CPU implements Runnable, Checkpointable {
+	
+	/** Most events published onto the bus by a single call to access, besides prefetches. */
+	public static final int MAX_EVENTS_PER_ACCESS = 2;
+	/** Prefetches that may be in flight at once, a power of two. */
+	public static final int IN_FLIGHT = 64;
+	/** Line of an unused in-flight entry. */
+	private static final int NO_LINE = Integer.MIN_VALUE;
+	
+	/**
+	 * Denotes the data handling method. If '1', then write back is enabled and data will be
+	 * written once flushed from L1d. If '0', then data will be written through or instantly
+	 * written instead of delayed.
+	 */
+	private int writeBack;
+	
+	/** The thread for this CPU. */
+	private Thread t;
+	/** The first level cache for instruction. */
+	private Cache L1i;
+	/** The first level cache for data. */
+	private Cache L1d;
+	/** The second level cache. */
+	private Cache L2;
+	/** Name for the CPU. */
+	protected int cpuNumber;
+	/** The memory trace. */
+	private Trace memoryTrace;
+	/** Random number generator for random replacement, seeded by CPU number. */
+	private RestorableRandom r;
+	/** Position of this CPU within its trace. */
+	private final TraceCursor cursor;
+	/** References of the trace performed, fast-forwarded through or skipped. */
+	private long position;
+	/** Position restored from a checkpoint, which resume() skips the trace to. */
+	private long restored;
+	/** Chooses the lines prefetched into L2 on L1 misses, null if not prefetching. */
+	private final Prefetcher prefetcher;
+	/** Addresses chosen by the prefetcher. */
+	private final int[] targets;
+	/** 
+	 * Lines prefetched but not yet filled, each in the first free entry from the one its line
+	 * number maps to, so up to IN_FLIGHT distinct lines may be in flight at once.
+	 */
+	private final int[] inFlight = new int[IN_FLIGHT];
+	/** Entries of inFlight holding a line. */
+	private int inFlightCount;
+	/** Clock at which the prefetch filling each slot of L2 completes. */
+	private final long[] ready;
+	/** Inclusion policy of this CPU's caches and L3. */
+	private final Inclusion inclusion;
+	/** Coherence protocol moving this CPU's lines between states when snooped. */
+	private final Protocol protocol;
+	/** Most events a single call to access publishes beyond MAX_EVENTS_PER_ACCESS. */
+	private final int extraEvents;
+	
+	/* 
+	 * Counters are striped, as snoops from the dispatchers update them while this CPU runs
+	 * and metrics may read them at any time. References performed by this CPU are tallied
+	 * in plain fields, added to the counters at the end of each step.
+	 */
+	/** L1 miss counter. */
+	protected final StripedCounter l1missNum = new StripedCounter();
+	/** L1 hit counter. */
+	protected final StripedCounter l1hitNum = new StripedCounter();
+	/** L2 miss counter. */
+	protected final StripedCounter l2missNum = new StripedCounter();
+	/** L2 hit counter. */
+	protected final StripedCounter l2hitNum = new StripedCounter();
+	/** Number of trace references performed. */
+	protected final StripedCounter references = new StripedCounter();
+	/** Lines filled into L1i and L1d. */
+	protected final StripedCounter lineFills = new StripedCounter();
+	/** Sectors filled into lines already held in L1i and L1d. */
+	protected final StripedCounter sectorFills = new StripedCounter();
+	/** Prefetches issued. */
+	protected final StripedCounter prefetchesIssued = new StripedCounter();
+	/** Prefetched lines referenced after being filled. */
+	protected final StripedCounter prefetchesUseful = new StripedCounter();
+	/** Prefetched lines referenced before being filled, still missing. */
+	protected final StripedCounter prefetchesLate = new StripedCounter();
+	/** Prefetched lines evicted without being referenced. */
+	protected final StripedCounter prefetchesUseless = new StripedCounter();
+	/** Lines invalidated because a level below evicted them. */
+	protected final StripedCounter backInvalidations = new StripedCounter();
+	/**
+	 * Cycles stalled for each Stall. L1 and L2 stalls are charged by this CPU, the others by
+	 * the dispatcher servicing this CPU's bus.
+	 */
+	protected final StripedCounter[] stalls = new StripedCounter[Stall.values().length];
+	/** L1 hits, L1 misses, L2 hits and L2 misses of this step. */
+	private long l1hits, l1misses, l2hits, l2misses;
+	/** Cycles stalled on L1, L2 and late prefetches during this step. */
+	private long l1stall, l2stall, lateStall;
+	/** 
+	 * This CPU's clock as the current reference is performed: cycles() at the start of the 
+	 * step plus the references and stalls of the step so far.
+	 */
+	private long clock;
+	
+	/** Carries the events raised while running the trace to the simulator. */
+	private final CoherenceBus bus = new CoherenceBus();
+	
+	/**
+	 * CPU constructor for instantiating the different cache sizes and values.
+	 * 
+	 * @param theL1Size Size of L1.
+	 * @param theL1Latency Latency of L1.
+	 * @param theL2Size Size of L2.
+	 * @param theL2Latency Latency of L2.
+	 * @param theNumOfWays The cache associativity (2, 4, or 8).
+	 */
+	public CPU(final Trace theTrace, final int theL1Size, 
+			final int theL1Latency, final int theL2Size, final int theL2Latency, 
+			final int theNumOfWays, final int theWB, final int thecpuNumber) {		
+		this(theTrace, theL1Size, theL1Latency, theL2Size, theL2Latency, theNumOfWays, theWB,
+				thecpuNumber, Replacement.RANDOM, Replacement.RANDOM);
+	}
+	
+	/**
+	 * CPU constructor choosing the replacement policy of each cache level.
+	 * 
+	 * @param theL1Size Size of L1.
+	 * @param theL1Latency Latency of L1.
+	 * @param theL2Size Size of L2.
+	 * @param theL2Latency Latency of L2.
+	 * @param theNumOfWays The cache associativity (2, 4, or 8).
+	 * @param theL1Replacement Replacement policy of L1i and L1d.
+	 * @param theL2Replacement Replacement policy of L2.
+	 */
+	public CPU(final Trace theTrace, final int theL1Size, 
+			final int theL1Latency, final int theL2Size, final int theL2Latency, 
+			final int theNumOfWays, final int theWB, final int thecpuNumber, 
+			final Replacement theL1Replacement, final Replacement theL2Replacement) {
+		this(theTrace, theL1Size, theL1Latency, theL2Size, theL2Latency, theNumOfWays, theWB,
+				thecpuNumber, 1, 1, null, theL1Replacement, theL2Replacement);
+	}
+	
+	/**
+	 * CPU constructor choosing the line size and sectors of its caches, its prefetcher and 
+	 * the replacement policy of each level, with a non-inclusive non-exclusive hierarchy.
+	 * 
+	 * @param theL1Size Size of L1, in lines.
+	 * @param theL1Latency Latency of L1.
+	 * @param theL2Size Size of L2, in lines.
+	 * @param theL2Latency Latency of L2.
+	 * @param theNumOfWays The cache associativity (2, 4, or 8).
+	 * @param theLineSize Bytes in each line.
+	 * @param theSectors Sectors in each line.
+	 * @param thePrefetcher Chooses the lines prefetched into L2, or null for none. Trained 
+	 * by this CPU alone, so must not be shared.
+	 * @param theL1Replacement Replacement policy of L1i and L1d.
+	 * @param theL2Replacement Replacement policy of L2.
+	 */
+	public CPU(final Trace theTrace, final int theL1Size, 
+			final int theL1Latency, final int theL2Size, final int theL2Latency, 
+			final int theNumOfWays, final int theWB, final int thecpuNumber, 
+			final int theLineSize, final int theSectors, final Prefetcher thePrefetcher, 
+			final Replacement theL1Replacement, final Replacement theL2Replacement) {
+		this(theTrace, theL1Size, theL1Latency, theL2Size, theL2Latency, theNumOfWays, theWB,
+				thecpuNumber, theLineSize, theSectors, thePrefetcher, Inclusion.NINE, 
+				theL1Replacement, theL2Replacement);
+	}
+	
+	/**
+	 * CPU constructor choosing the line size and sectors of its caches, its prefetcher, the 
+	 * inclusion policy of its hierarchy and the replacement policy of each level, kept 
+	 * coherent by MESI.
+	 * 
+	 * @param theL1Size Size of L1, in lines.
+	 * @param theL1Latency Latency of L1.
+	 * @param theL2Size Size of L2, in lines.
+	 * @param theL2Latency Latency of L2.
+	 * @param theNumOfWays The cache associativity (2, 4, or 8).
+	 * @param theLineSize Bytes in each line.
+	 * @param theSectors Sectors in each line.
+	 * @param thePrefetcher Chooses the lines prefetched into L2, or null for none. Trained 
+	 * by this CPU alone, so must not be shared.
+	 * @param theInclusion Inclusion policy of this CPU's caches, which the simulator's L3 
+	 * must share.
+	 * @param theL1Replacement Replacement policy of L1i and L1d.
+	 * @param theL2Replacement Replacement policy of L2.
+	 */
+	public CPU(final Trace theTrace, final int theL1Size, 
+			final int theL1Latency, final int theL2Size, final int theL2Latency, 
+			final int theNumOfWays, final int theWB, final int thecpuNumber, 
+			final int theLineSize, final int theSectors, final Prefetcher thePrefetcher, 
+			final Inclusion theInclusion, final Replacement theL1Replacement, 
+			final Replacement theL2Replacement) {
+		this(theTrace, theL1Size, theL1Latency, theL2Size, theL2Latency, theNumOfWays, theWB,
+				thecpuNumber, theLineSize, theSectors, thePrefetcher, theInclusion, 
+				Protocol.MESI, theL1Replacement, theL2Replacement);
+	}
+	
+	/**
+	 * CPU constructor choosing the line size and sectors of its caches, its prefetcher, the 
+	 * inclusion policy of its hierarchy, its coherence protocol and the replacement policy of
+	 * each level. L1 and L2 share a geometry of line, so a line's valid sectors move with it 
+	 * between L1 and L2.
+	 * 
+	 * @param theL1Size Size of L1, in lines.
+	 * @param theL1Latency Latency of L1.
+	 * @param theL2Size Size of L2, in lines.
+	 * @param theL2Latency Latency of L2.
+	 * @param theNumOfWays The cache associativity (2, 4, or 8).
+	 * @param theLineSize Bytes in each line.
+	 * @param theSectors Sectors in each line.
+	 * @param thePrefetcher Chooses the lines prefetched into L2, or null for none. Trained 
+	 * by this CPU alone, so must not be shared.
+	 * @param theInclusion Inclusion policy of this CPU's caches, which the simulator's L3 
+	 * must share.
+	 * @param theProtocol Coherence protocol, which the simulator must share.
+	 * @param theL1Replacement Replacement policy of L1i and L1d.
+	 * @param theL2Replacement Replacement policy of L2.
+	 */
+	public CPU(final Trace theTrace, final int theL1Size, 
+			final int theL1Latency, final int theL2Size, final int theL2Latency, 
+			final int theNumOfWays, final int theWB, final int thecpuNumber, 
+			final int theLineSize, final int theSectors, final Prefetcher thePrefetcher, 
+			final Inclusion theInclusion, final Protocol theProtocol, 
+			final Replacement theL1Replacement, final Replacement theL2Replacement) {
+		cpuNumber = thecpuNumber;
+		memoryTrace = theTrace;
+		cursor = memoryTrace.cursor();
+		r = new RestorableRandom(thecpuNumber);
+		writeBack = theWB;
+		L1i = new Cache(theL1Size, theL1Latency, theNumOfWays, theLineSize, theSectors, 
+				theL1Replacement, r);
+		L1d = new Cache(theL1Size, theL1Latency, theNumOfWays, theLineSize, theSectors, 
+				theL1Replacement, r);
+		L2 = new Cache(theL2Size, theL2Latency, theNumOfWays, theLineSize, theSectors, 
+				theL2Replacement, r);
+		for (int i = 0; i < stalls.length; i++) {
+			stalls[i] = new StripedCounter();
+		}
+		prefetcher = thePrefetcher;
+		targets = new int[thePrefetcher == null ? 0 : thePrefetcher.degree()];
+		Arrays.fill(inFlight, NO_LINE);
+		ready = new long[thePrefetcher == null ? 0 : theL2Size];
+		inclusion = theInclusion;
+		protocol = theProtocol;
+		//promoting a line out of an exclusive L2 may write back and move down L2's victim
+		extraEvents = targets.length + (theInclusion == Inclusion.EXCLUSIVE ? 2 : 0);
+	}
+	
+	/**
+	 * For threading.
+	 */
+	@Override
+	public void run() {
+		//go through each item of the memoryTrace and see if it is in the Caches
+		while (step(1) != 0) {
+			//Sleep thread for a second (good for fast processors)
+			try {
+				Thread.sleep(0);
+			} catch (InterruptedException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+		//CPU has finished with provided memory trace, output results.
+		System.out.format("\n[CPU %d] Finished\n[L1] Hits: %d Misses: %d\n[L2] Hits: %d "
+				+ "Misses: %d\n", cpuNumber, l1hitNum.sum(), l1missNum.sum(), l2hitNum.sum(), 
+				l2missNum.sum());
+		//Let simulator know thread has completed
+		bus.onMessage(CacheEvent.COMPLETE, cpuNumber, -1, -1, -1, Cache.EMPTY, Cache.EMPTY);
+		
+	}
+	
+	/**
+	 * Advances this CPU through the next references of its trace. A CPU that prefetches, or 
+	 * whose L2 is exclusive, stops early once its bus could not hold the events of another 
+	 * reference. A CPU that prefetches also stops once its prefetches in flight could not 
+	 * make room for another reference's, as they are only filled once its bus is serviced.
+	 * 
+	 * @param theQuantum The most references to perform.
+	 * @return The number of references performed, 0 once the trace is exhausted.
+	 */
+	public int step(final int theQuantum) {
+		int performed = 0;
+		//some references publish more events, stop before the bus can overflow
+		int events = MAX_EVENTS_PER_ACCESS + extraEvents;
+		//only prefetches completing are timed against the clock within a step
+		long start = prefetcher == null ? 0 : cycles();
+		while (performed < theQuantum && (performed == 0 || extraEvents == 0 
+				|| bus.remaining() >= events && inFlightCount + targets.length <= IN_FLIGHT) 
+				&& cursor.next()) {
+			clock = start + performed + l1stall + l2stall + lateStall;
+			access(cursor.iAddress(), cursor.ioValue(), cursor.dAddress());
+			performed++;
+		}
+		position += performed;
+		references.add(performed);
+		l1hitNum.add(l1hits);
+		l1missNum.add(l1misses);
+		l2hitNum.add(l2hits);
+		l2missNum.add(l2misses);
+		stall(Stall.L1, l1stall);
+		stall(Stall.L2, l2stall);
+		stall(Stall.MEMORY, lateStall);
+		l1hits = l1misses = l2hits = l2misses = l1stall = l2stall = lateStall = 0;
+		return performed;
+	}
+	
+	/**
+	 * Skips the next references of this CPU's trace without performing them, leaving its 
+	 * caches as they are.
+	 * 
+	 * @param theQuantum The most references to skip.
+	 * @return The number of references skipped, 0 once the trace is exhausted.
+	 */
+	public int skip(final int theQuantum) {
+		int skipped = 0;
+		while (skipped < theQuantum && cursor.next()) {
+			skipped++;
+		}
+		position += skipped;
+		return skipped;
+	}
+	
+	/**
+	 * Skips the next references of this CPU's trace towards the position it was restored at.
+	 * 
+	 * @param theQuantum The most references to skip.
+	 * @return The number of references skipped, 0 once the position is reached.
+	 * @throws IOException If the trace ends before the position.
+	 */
+	public int resume(final int theQuantum) throws IOException {
+		int skipped = skip((int) Math.min(restored - position, theQuantum));
+		if (skipped == 0 && position != restored) {
+			throw new IOException("Checkpointed position " + restored + " of CPU " + cpuNumber 
+					+ " is beyond the end of its trace");
+		}
+		return skipped;
+	}
+	
+	/**
+	 * Fast-forwards this CPU through the next references of its trace, updating only the 
+	 * contents of its caches. Hits update the replacement policy and writes move their line
+	 * to the protocol's written state, but nothing is counted, stalled or published onto the
+	 * bus and the prefetcher is not trained. Misses, and the events raised filling them, are
+	 * passed straight to the listener, which is expected to fill the CPU without any 
+	 * coherence bookkeeping.
+	 * 
+	 * @param theQuantum The most references to fast-forward through.
+	 * @param theListener Receives the misses and events raised.
+	 * @return The number of references fast-forwarded through, 0 once the trace is exhausted.
+	 */
+	public int warm(final int theQuantum, final BusListener theListener) {
+		int performed = 0;
+		while (performed < theQuantum && cursor.next()) {
+			performed++;
+			int ioValue = cursor.ioValue();
+			//writes are looked up by their data, everything else by its instruction
+			Cache level = ioValue == 1 ? L1d : L1i;
+			int address = ioValue == 1 ? cursor.dAddress() : cursor.iAddress();
+			int slot = level.probe(address);
+			if (slot == -1) {
+				level = L2;
+				slot = L2.probe(address);
+			}
+			if (slot == -1) {
+				theListener.onMessage(CacheEvent.MISS, cpuNumber, cursor.iAddress(), ioValue, 
+						cursor.dAddress(), Cache.EMPTY, Cache.EMPTY);
+				continue;
+			}
+			level.touch(slot);
+			if (ioValue == 1) {
+				level.write(slot, address, protocol.next(level.states[slot], Protocol.WRITE));
+			}
+			if (level == L2) {
+				//a prefetch demanded while warming is neither useful nor late
+				L2.prefetched[slot] = false;
+				if (inclusion == Inclusion.EXCLUSIVE) {
+					promote(ioValue == 1 ? L1d : L1i, slot, address, theListener);
+				}
+			}
+		}
+		position += performed;
+		return performed;
+	}
+	
+	/**
+	 * Charges stall cycles to this CPU's clock.
+	 * 
+	 * @param theStall The cause of the stall.
+	 * @param theCycles The cycles stalled.
+	 */
+	public void stall(final Stall theStall, final long theCycles) {
+		stalls[theStall.ordinal()].add(theCycles);
+	}
+	
+	/**
+	 * @return Cycles stalled for every cause.
+	 */
+	public long stallCycles() {
+		long total = 0;
+		for (StripedCounter cycles : stalls) {
+			total += cycles.sum();
+		}
+		return total;
+	}
+	
+	/**
+	 * This CPU's clock: a cycle to issue each reference plus every stall.
+	 * 
+	 * @return The cycles this CPU has run for.
+	 */
+	public long cycles() {
+		return references.sum() + stallCycles();
+	}
+	
+	/**
+	 * Performs a single trace reference against this CPU's caches, publishing writes, state 
+	 * changes and misses onto this CPU's bus. Its hits, misses and stalls are tallied until
+	 * the step performing it ends.
+	 * 
+	 * @param iAddress The instruction address.
+	 * @param ioValue The I/O value (-1 if none, 0 for read, 1 for write).
+	 * @param dAddress The data address (-1 if none).
+	 */
+	public void access(final int iAddress, final int ioValue, final int dAddress) {
+		//Flag to denote the item was found and no need to continue checking
+		boolean located = false;
+		//Flag to denote the item was found in L1
+		boolean l1Hit = false;
+		
+		if (ioValue == 1) { //is a data write
+			//denote an immediate write to memory if write-through
+			//(just needs to happen within same span of placing to cache)
+			if (writeBack == 0) {
+				bus.onMessage(CacheEvent.DATA_WRITE, cpuNumber, iAddress, ioValue, dAddress, 
+						Cache.EMPTY, Cache.EMPTY);
+			}
+			
+			//Check if item is in the L1 cache
+			int slot = L1d.probe(dAddress);
+			if (slot != -1) {
+				located = true;
+				l1Hit = true;
+				l1hits++;
+				L1d.touch(slot);
+				//notify simulator of a write and state change
+				byte state = protocol.next(L1d.states[slot], Protocol.WRITE);
+				bus.onMessage(CacheEvent.MODIFIED, cpuNumber, iAddress, ioValue, dAddress, 
+						L1d.states[slot], state);
+				//set entry as written and its sector dirty
+				L1d.write(slot, dAddress, state);
+			} else {
+				slot = L2.probe(dAddress);
+				if (slot != -1) {
+					located = true;
+					l1misses++;
+					l2hits++;
+					l1stall += L1d.latency;
+					L2.touch(slot);
+					demanded(slot);
+					//notify simulator of a write and state change
+					byte state = protocol.next(L2.states[slot], Protocol.WRITE);
+					bus.onMessage(CacheEvent.MODIFIED, cpuNumber, iAddress, ioValue, dAddress, 
+							L2.states[slot], state);
+					//set entry as written and its sector dirty
+					L2.write(slot, dAddress, state);
+					if (inclusion == Inclusion.EXCLUSIVE) {
+						promote(L1d, slot, dAddress, bus);
+					}
+				}
+			}
+		} else {
+			//Check if item is in the L1 cache
+			int slot = L1i.probe(iAddress);
+			if (slot != -1) {
+				located = true;
+				l1Hit = true;
+				l1hits++;
+				L1i.touch(slot);
+			} else if ((slot = L2.probe(iAddress)) != -1) {
+				//item is in the L2 cache
+				located = true;
+				l1misses++;
+				l2hits++;
+				l1stall += L1i.latency;
+				L2.touch(slot);
+				demanded(slot);
+				if (inclusion == Inclusion.EXCLUSIVE) {
+					promote(L1i, slot, iAddress, bus);
+				}
+			}
+		}
+		//Item has not be located in L1 or L2
+		if (!located) {
+			//L1 and L2 miss
+			l1misses++;
+			l2misses++;
+			l1stall += ioValue == 1 ? L1d.latency : L1i.latency;
+			l2stall += L2.latency;
+			//Notify simulator to check the other CPUs and shared L3
+			bus.onMessage(CacheEvent.MISS, cpuNumber, iAddress, ioValue, dAddress, Cache.EMPTY, 
+					Cache.EMPTY);
+		}
+		//Train the prefetcher on the L1 miss, once the miss itself is on the bus
+		if (prefetcher != null && !l1Hit) {
+			prefetch(iAddress, ioValue == 1 ? dAddress : iAddress, !located);
+		}
+	}
+	
+	/**
+	 * Records a reference hitting a slot of L2 filled by a prefetch and not referenced since.
+	 * The prefetch was useful if it had completed by the reference's clock, otherwise it was
+	 * late and the reference stalls until it completes.
+	 * 
+	 * @param theSlot The slot hit.
+	 */
+	private void demanded(final int theSlot) {
+		if (!L2.prefetched[theSlot]) {
+			return;
+		}
+		L2.prefetched[theSlot] = false;
+		long wait = ready[theSlot] - clock;
+		if (wait > 0) {
+			prefetchesLate.increment();
+			lateStall += wait;
+		} else {
+			prefetchesUseful.increment();
+		}
+	}
+	
+	/**
+	 * Trains the prefetcher on an L1 miss and publishes a prefetch of each line it chooses 
+	 * that is neither in L2 nor already in flight. A miss in L2 on a line still in flight 
+	 * counts as a late prefetch, and the prefetch is dropped when it is serviced.
+	 * 
+	 * @param thePc The instruction address of the reference.
+	 * @param theAddress The address missed.
+	 * @param theL2Miss True if the reference also missed L2.
+	 */
+	private void prefetch(final int thePc, final int theAddress, final boolean theL2Miss) {
+		if (theL2Miss) {
+			int entry = inFlight(theAddress >> L2.offsetShift);
+			if (entry != -1) {
+				release(entry);
+				prefetchesLate.increment();
+			}
+		}
+		int count = prefetcher.miss(thePc, theAddress, targets);
+		for (int i = 0; i < count; i++) {
+			int target = targets[i];
+			int line = target >> L2.offsetShift;
+			if (inFlightCount == IN_FLIGHT || inFlight(line) != -1 
+					|| L2.find(L2.index(target), L2.tag(target)) != -1) {
+				continue;
+			}
+			int entry = line & (IN_FLIGHT - 1);
+			while (inFlight[entry] != NO_LINE) {
+				entry = (entry + 1) & (IN_FLIGHT - 1);
+			}
+			inFlight[entry] = line;
+			inFlightCount++;
+			prefetchesIssued.increment();
+			bus.onMessage(CacheEvent.PREFETCH, cpuNumber, target, -1, target, Cache.EMPTY, 
+					Cache.EMPTY);
+		}
+	}
+	
+	/**
+	 * @param theLine A line number.
+	 * @return The entry of inFlight holding the line, -1 if it is not in flight.
+	 */
+	private int inFlight(final int theLine) {
+		for (int i = 0, entry = theLine & (IN_FLIGHT - 1); i < IN_FLIGHT 
+				&& inFlight[entry] != NO_LINE; i++, entry = (entry + 1) & (IN_FLIGHT - 1)) {
+			if (inFlight[entry] == theLine) {
+				return entry;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Frees an entry of inFlight, moving back any later line that could no longer be found 
+	 * past the freed entry.
+	 * 
+	 * @param theEntry The entry freed.
+	 */
+	private void release(final int theEntry) {
+		int free = theEntry;
+		inFlight[free] = NO_LINE;
+		for (int entry = (free + 1) & (IN_FLIGHT - 1); inFlight[entry] != NO_LINE; 
+				entry = (entry + 1) & (IN_FLIGHT - 1)) {
+			//a line moves back unless its home entry lies after the free entry
+			int home = inFlight[entry] & (IN_FLIGHT - 1);
+			if (((home - free - 1) & (IN_FLIGHT - 1)) > ((entry - free - 1) & (IN_FLIGHT - 1))) {
+				inFlight[free] = inFlight[entry];
+				inFlight[entry] = NO_LINE;
+				free = entry;
+			}
+		}
+		inFlightCount--;
+	}
+	
+	/**
+	 * Snooping method for this CPU. Checks all local caches to see if the item is in the 
+	 * cache. If so, the contained item is copied into theSnooped and the line moves to the 
+	 * state the protocol gives a snooped line, the change being passed to the caller's 
+	 * listener along with any write-back. If not, theSnooped is given an iAddress of -1.
+	 * 
+	 * @param theMemoryItem The potential memory item being snooped.
+	 * @param theSnooped The MemoryInfo to copy a found item into.
+	 * @param theListener Receives the state change and write-back.
+	 * @return The protocol's entry for the snoop, Invalid if the item is not held.
+	 */
+	public int snoop(final MemoryInfo theMemoryItem, final MemoryInfo theSnooped, 
+			final BusListener theListener) {
+		//set address to -1 to denote none found
+		theSnooped.set(-1, -1, -1);
+		
+		//see if memory item is in l1d cache (since checking data)
+		Cache cache = L1d;
+		int slot = L1d.probe(theMemoryItem.dAddress);
+		if (slot != -1 && L1d.holds(slot)) {
+			l1hitNum.increment();
+		} else {
+			//data not contained in L1, increment miss counter
+			l1missNum.increment();
+			//see if memory item is in l2 cache
+			cache = L2;
+			slot = L2.probe(theMemoryItem.dAddress);
+			if (slot == -1 || !L2.holds(slot)) {
+				return Cache.INVALID;
+			}
+			l2hitNum.increment();
+		}
+		cache.read(slot, theSnooped);
+		byte state = cache.states[slot];
+		int entry = protocol.entry(state, Protocol.SNOOP);
+		cache.states[slot] = Protocol.state(entry);
+		theListener.onMessage(CacheEvent.MODIFIED, cpuNumber, theSnooped.iAddress, 
+				theSnooped.ioValue, theSnooped.dAddress, state, Protocol.state(entry));
+		if ((entry & Protocol.WRITE_BACK) != 0 && writeBack == 1) {
+			//the written data is copied back to memory, leaving the line clean
+			cache.dirty[slot] = 0;
+			theListener.onMessage(CacheEvent.DATA_WRITE, cpuNumber, theSnooped.iAddress, 
+					theSnooped.ioValue, theSnooped.dAddress, Cache.EMPTY, Cache.EMPTY);
+		}
+		return entry;
+	}
+	
+	/**
+	 * Method for adding an item to this CPU's caches. Events raised by evictions are passed
+	 * straight to the caller's listener rather than through the bus.
+	 * 
+	 * @param mem The item to add.
+	 * @param theState The MESI state the item is added with.
+	 * @param theListener Receives the events raised.
+	 */
+	public void add(final MemoryInfo mem, final byte theState, final BusListener theListener) {
+		if (inclusion != Inclusion.NINE) {
+			enforce(mem, theState, theListener);
+			return;
+		}
+		int L1Index, L1Tag, dataIndex, dataTag;
+		//boolean denoting whether item has been placed (for eviction purposes)
+		boolean placed = false;
+		
+		//Item deals with data, try to add to L1d
+		if (mem.ioValue != -1) {
+			boolean dataPlaced = false;
+			dataIndex = L1d.index(mem.dAddress);
+			dataTag = L1d.tag(mem.dAddress);
+			int sector = L1d.sector(mem.dAddress);
+			int held = L1d.find(dataIndex, dataTag);
+			if (held != -1 && (L1d.valid[held] & sector) == 0) {
+				//the line is held without this sector, fetch just the sector into it
+				L1d.fill(held, sector, theState);
+				sectorFills.increment();
+				dataPlaced = true;
+			} else {
+				lineFills.increment();
+				int free = L1d.find(dataIndex, Cache.NO_TAG);
+				if (free != -1) {
+					//is an empty spot, insert into the first and denote placed boolean
+					L1d.insert(free, dataTag, sector, theState, mem.iAddress, mem.ioValue, 
+							mem.dAddress);
+					dataPlaced = true;
+				}
+			}
+			
+			if (!dataPlaced) {
+				//Let the replacement policy choose the victim
+				int victim = L1d.victim(dataIndex);
+				//the item being evicted
+				int oldI = L1d.iAddress(victim);
+				int oldIO = L1d.ioValue(victim);
+				int oldD = L1d.dAddress(victim);
+				//save the old MESI state to ensure we don't write out faulty data
+				byte oldMESI = L1d.states[victim];
+				//the sectors the evicted line holds, and whether any were written
+				int oldValid = L1d.valid[victim];
+				boolean oldDirty = L1d.dirty[victim] != 0;
+				L1d.insert(victim, dataTag, sector, theState, mem.iAddress, mem.ioValue, 
+						mem.dAddress);
+				//Old data entry got evicted and needs to be written
+				if (writeBack == 1 && (oldIO == 1 || oldDirty) && oldMESI != Cache.INVALID) {
+					theListener.onMessage(CacheEvent.DATA_WRITE, cpuNumber, oldI, oldIO, oldD, 
+							Cache.EMPTY, Cache.EMPTY);
+				}			
+				//Calculate the L2 index and tag for the evicted item
+				int L2Index = L2.index(oldD);
+				int L2Tag = L2.tag(oldD);
+				
+				placed = false;
+				//Check the set in L2 for a free spot
+				int free = L2.find(L2Index, Cache.NO_TAG);
+				if (free != -1) {
+					L2.insert(free, L2Tag, oldValid, theState, oldI, oldIO, oldD);
+					//item placed in L2 cache
+					placed = true;
+				}
+				//Evicted item was not placed in L2
+				if(!placed) {
+					//Let the replacement policy choose the victim
+					victim = L2.victim(L2Index);
+					evicted(victim);
+					//the item evicted from L2
+					int evictedI = L2.iAddress(victim);
+					int evictedIO = L2.ioValue(victim);
+					//Place item evicted from L1 into L2
+					L2.insert(victim, L2Tag, oldValid, theState, oldI, oldIO, oldD);
+					
+					//Let simulator know something needs to be placed into L3.
+					//only placing non-data values into L3
+					if (evictedIO == -1) {
+						theListener.onMessage(CacheEvent.L3_FILL, cpuNumber, evictedI, -1, -1, 
+								Cache.EMPTY, Cache.EMPTY);
+					}
+				}
+			}
+		} 
+		
+		//calculate index and tag for L1
+		L1Index = L1i.index(mem.iAddress);
+		L1Tag = L1i.tag(mem.iAddress);
+		int sector = L1i.sector(mem.iAddress);
+		int held = L1i.find(L1Index, L1Tag);
+		if (held != -1 && (L1i.valid[held] & sector) == 0) {
+			//the line is held without this sector, fetch just the sector into it
+			L1i.fill(held, sector, theState);
+			sectorFills.increment();
+			return;
+		}
+		lineFills.increment();
+		
+		//Search L1i to see if there are any empty spots
+		int free = L1i.find(L1Index, Cache.NO_TAG);
+		if (free != -1) {
+			//is an empty spot, insert into the first and denote placed boolean
+			L1i.insert(free, L1Tag, sector, theState, mem.iAddress, mem.ioValue, mem.dAddress);
+			placed = true;
+		}
+			
+		
+		//No empty spots in cache, need to evict something
+		if (!placed) {
+			//Let the replacement policy choose the victim
+			int victim = L1i.victim(L1Index);
+			//the item being evicted
+			//item doesnt involve data, put in instruction
+			int oldI = L1i.iAddress(victim);
+			int oldIO = L1i.ioValue(victim);
+			int oldD = L1i.dAddress(victim);
+			int oldValid = L1i.valid[victim];
+			L1i.insert(victim, L1Tag, sector, theState, mem.iAddress, mem.ioValue, 
+					mem.dAddress);
+			
+			//Calculate the L2 index and tag for the evicted item
+			int L2Index = L2.index(oldI);
+			int L2Tag = L2.tag(oldI);
+			//denote it not being placed
+			placed = false;
+			//Check the set in L2 for a free spot
+			free = L2.find(L2Index, Cache.NO_TAG);
+			if (free != -1) {
+				L2.insert(free, L2Tag, oldValid, theState, oldI, oldIO, oldD);
+				//item placed in L2 cache
+				placed = true;
+			}
+			//Evicted item was not placed in L2
+			if(!placed) {
+				//Let the replacement policy choose the victim
+				victim = L2.victim(L2Index);
+				evicted(victim);
+				//the item evicted from L2
+				int evictedI = L2.iAddress(victim);
+				//Place item evicted from L1 into L2
+				L2.insert(victim, L2Tag, oldValid, theState, oldI, oldIO, oldD);
+				
+				//Let simulator know something needs to be placed into L3.
+				theListener.onMessage(CacheEvent.L3_FILL, cpuNumber, evictedI, -1, -1, 
+						Cache.EMPTY, Cache.EMPTY);
+			}
+		}
+	}
+	
+	/**
+	 * Fills a prefetched line into L2, unless it has been demanded or filled since being 
+	 * requested. The prefetch completes once this CPU's clock has advanced by its latency.
+	 * Events raised by the eviction are passed straight to the caller's listener.
+	 * 
+	 * @param mem The item prefetched.
+	 * @param theState The MESI state the item is added with.
+	 * @param theLatency Cycles the prefetch takes to complete.
+	 * @param theListener Receives the events raised.
+	 */
+	public void prefetched(final MemoryInfo mem, final byte theState, final int theLatency,
+			final BusListener theListener) {
+		int line = mem.dAddress >> L2.offsetShift;
+		int entry = inFlight(line);
+		if (entry == -1) {
+			//a late prefetch, the demand miss has already fetched the line
+			return;
+		}
+		release(entry);
+		int index = L2.index(mem.dAddress);
+		int tag = L2.tag(mem.dAddress);
+		if (L2.find(index, tag) != -1 || inclusion == Inclusion.EXCLUSIVE 
+				&& (L1i.probe(mem.dAddress) != -1 || L1d.probe(mem.dAddress) != -1)) {
+			return;
+		}
+		int slot = L2.find(index, Cache.NO_TAG);
+		if (slot == -1) {
+			slot = L2.victim(index);
+			if (inclusion != Inclusion.NINE) {
+				evictL2(slot, theListener);
+			} else {
+				evicted(slot);
+				//only placing non-data values into L3
+				if (L2.ioValue(slot) == -1) {
+					theListener.onMessage(CacheEvent.L3_FILL, cpuNumber, L2.iAddress(slot), -1, 
+							-1, Cache.EMPTY, Cache.EMPTY);
+				}
+			}
+		}
+		L2.insert(slot, tag, theState, mem.iAddress, mem.ioValue, mem.dAddress);
+		L2.prefetched[slot] = true;
+		ready[slot] = cycles() + theLatency;
+	}
+	
+	/**
+	 * Adds an item to this CPU's caches under an inclusive or exclusive hierarchy, filling 
+	 * its data into L1d and its instruction into L1i.
+	 * 
+	 * @param mem The item to add.
+	 * @param theState The MESI state the item is added with.
+	 * @param theListener Receives the events raised.
+	 */
+	private void enforce(final MemoryInfo mem, final byte theState, 
+			final BusListener theListener) {
+		if (mem.ioValue != -1) {
+			fill(L1d, mem.dAddress, mem, theState, theListener);
+		}
+		fill(L1i, mem.iAddress, mem, theState, theListener);
+	}
+	
+	/**
+	 * Fills the sector of an address into an L1. An inclusive L2 is filled with it too, while
+	 * an exclusive L2 gives up any sectors of the line it holds to L1.
+	 * 
+	 * @param theL1 L1i or L1d.
+	 * @param theAddress The address filled.
+	 * @param mem The item filled.
+	 * @param theState The MESI state the item is added with.
+	 * @param theListener Receives the events raised.
+	 */
+	private void fill(final Cache theL1, final int theAddress, final MemoryInfo mem, 
+			final byte theState, final BusListener theListener) {
+		int sector = theL1.sector(theAddress);
+		int slot = theL1.find(theL1.index(theAddress), theL1.tag(theAddress));
+		if (slot != -1 && theL1.holds(slot)) {
+			//the line is held, fetch the sector into it unless it is there already
+			if ((theL1.valid[slot] & sector) == 0) {
+				theL1.fill(slot, sector, theState);
+				sectorFills.increment();
+			}
+		} else {
+			lineFills.increment();
+			//a write allocates its line, which is written back once evicted
+			int valid = sector, dirty = theL1 == L1d && mem.ioValue == 1 ? sector : 0;
+			byte state = theState;
+			if (inclusion == Inclusion.EXCLUSIVE) {
+				slot = L2.find(L2.index(theAddress), L2.tag(theAddress));
+				if (slot != -1 && L2.holds(slot)) {
+					valid |= L2.valid[slot];
+					dirty |= L2.dirty[slot];
+					if (L2.states[slot] == Cache.MODIFIED) {
+						state = Cache.MODIFIED;
+					}
+					evicted(slot);
+					L2.clear(slot);
+				}
+			}
+			place(theL1, theAddress, valid, dirty, state, mem.iAddress, mem.ioValue, 
+					mem.dAddress, theListener);
+		}
+		if (inclusion == Inclusion.INCLUSIVE) {
+			place(L2, theAddress, sector, 0, theState, mem.iAddress, mem.ioValue, mem.dAddress,
+					theListener);
+		}
+	}
+	
+	/**
+	 * Moves a line hit in an exclusive L2 up into an L1, whose victim moves down into L2.
+	 * 
+	 * @param theL1 L1i or L1d.
+	 * @param theSlot The slot of L2 hit.
+	 * @param theAddress The address hit.
+	 * @param theListener Receives the events raised, this CPU's bus unless warming.
+	 */
+	private void promote(final Cache theL1, final int theSlot, final int theAddress, 
+			final BusListener theListener) {
+		int i = L2.iAddress(theSlot), io = L2.ioValue(theSlot), d = L2.dAddress(theSlot);
+		int valid = L2.valid[theSlot], dirty = L2.dirty[theSlot];
+		byte state = L2.states[theSlot];
+		L2.clear(theSlot);
+		place(theL1, theAddress, valid, dirty, state, i, io, d, theListener);
+	}
+	
+	/**
+	 * Places a line into L1 or L2 under an inclusive or exclusive hierarchy. A line already
+	 * held takes on the sectors placed, otherwise it fills a free way or the replacement 
+	 * policy's victim, which is evicted.
+	 * 
+	 * @param theCache L1i, L1d or L2.
+	 * @param theAddress An address of the line.
+	 * @param theValid The sectors placed.
+	 * @param theDirty The sectors placed that have been written.
+	 * @param theState The MESI state of the line.
+	 * @param theI Instruction address of the line's item.
+	 * @param theIO I/O value of the line's item.
+	 * @param theD Data address of the line's item.
+	 * @param theListener Receives the events raised.
+	 */
+	private void place(final Cache theCache, final int theAddress, final int theValid, 
+			final int theDirty, final byte theState, final int theI, final int theIO, 
+			final int theD, final BusListener theListener) {
+		int index = theCache.index(theAddress);
+		int tag = theCache.tag(theAddress);
+		int slot = theCache.slotFor(index, tag);
+		if (slot != -1 && theCache.holds(slot)) {
+			theCache.valid[slot] |= theValid;
+			theCache.dirty[slot] |= theDirty;
+			if (theState == Cache.MODIFIED) {
+				theCache.states[slot] = Cache.MODIFIED;
+			}
+			theCache.touch(slot);
+			return;
+		}
+		if (slot == -1) {
+			slot = theCache.victim(index);
+			if (theCache == L2) {
+				evictL2(slot, theListener);
+			} else if (theCache.holds(slot)) {
+				//an L1 victim moves down into L2, which holds it already if inclusive
+				place(L2, theCache.address(slot), theCache.valid[slot], theCache.dirty[slot], 
+						theCache.states[slot], theCache.iAddress(slot), theCache.ioValue(slot), 
+						theCache.dAddress(slot), theListener);
+			}
+		}
+		theCache.insert(slot, tag, theValid, theState, theI, theIO, theD);
+		theCache.dirty[slot] = theDirty;
+	}
+	
+	/**
+	 * Evicts a line from L2 under an inclusive or exclusive hierarchy. An inclusive L2 
+	 * back-invalidates the line from L1, while an exclusive L2 moves it down into L3. Either
+	 * way written data leaves for memory.
+	 * 
+	 * @param theSlot The slot evicted.
+	 * @param theListener Receives the events raised.
+	 */
+	private void evictL2(final int theSlot, final BusListener theListener) {
+		evicted(theSlot);
+		if (!L2.holds(theSlot)) {
+			return;
+		}
+		int address = L2.address(theSlot);
+		boolean written = L2.dirty[theSlot] != 0;
+		if (inclusion == Inclusion.INCLUSIVE) {
+			written |= backInvalidate(L1i, address) | backInvalidate(L1d, address);
+		} else {
+			theListener.onMessage(CacheEvent.L3_FILL, cpuNumber, address, -1, -1, 
+					Cache.EMPTY, Cache.EMPTY);
+		}
+		if (writeBack == 1 && written) {
+			theListener.onMessage(CacheEvent.DATA_WRITE, cpuNumber, L2.iAddress(theSlot), 
+					L2.ioValue(theSlot), L2.dAddress(theSlot), Cache.EMPTY, Cache.EMPTY);
+		}
+	}
+	
+	/**
+	 * Removes a line evicted from an inclusive L3 from every level of this CPU, writing it
+	 * back if it has been written.
+	 * 
+	 * @param theAddress An address of the line.
+	 * @param theListener Receives the events raised.
+	 */
+	public void backInvalidate(final int theAddress, final BusListener theListener) {
+		int slot = L2.find(L2.index(theAddress), L2.tag(theAddress));
+		if (slot != -1) {
+			evicted(slot);
+		}
+		if ((backInvalidate(L1i, theAddress) | backInvalidate(L1d, theAddress) 
+				| backInvalidate(L2, theAddress)) && writeBack == 1) {
+			theListener.onMessage(CacheEvent.DATA_WRITE, cpuNumber, theAddress, 1, theAddress, 
+					Cache.EMPTY, Cache.EMPTY);
+		}
+	}
+	
+	/**
+	 * Removes a line from one of this CPU's caches to keep the hierarchy inclusive.
+	 * 
+	 * @param theCache L1i, L1d or L2.
+	 * @param theAddress An address of the line.
+	 * @return True if the line was held and had been written.
+	 */
+	private boolean backInvalidate(final Cache theCache, final int theAddress) {
+		int slot = theCache.find(theCache.index(theAddress), theCache.tag(theAddress));
+		if (slot == -1 || !theCache.holds(slot)) {
+			return false;
+		}
+		boolean written = theCache.dirty[slot] != 0;
+		theCache.clear(slot);
+		backInvalidations.increment();
+		return written;
+	}
+	
+	/**
+	 * Adds the line number of every line held by this CPU's caches to a set.
+	 * 
+	 * @param theLines The set added to.
+	 */
+	public void lines(final Set<Integer> theLines) {
+		L1i.lines(theLines);
+		L1d.lines(theLines);
+		L2.lines(theLines);
+	}
+	
+	/**
+	 * Records a slot of L2 being evicted, counting a useless prefetch if the slot was 
+	 * prefetched and never referenced.
+	 * 
+	 * @param theSlot The slot evicted.
+	 */
+	private void evicted(final int theSlot) {
+		if (L2.prefetched[theSlot]) {
+			prefetchesUseless.increment();
+		}
+	}
+	
+	/**
+	 * Method that is called when an entry in cache may need to be invalidated. Each copy 
+	 * held moves to the state the protocol gives an invalidated line, written data being 
+	 * copied back to memory if the protocol says so. State changes and write-backs are 
+	 * passed straight to the caller's listener rather than through the bus.
+	 * 
+	 * @param mem The item that is being written in a different CPU.
+	 * @param theListener Receives the state changes and write-backs.
+	 * @return True if this CPU held the item.
+	 */
+	public boolean invalidateData(final MemoryInfo mem, final BusListener theListener) {
+		boolean held = invalidate(L1d, mem, theListener);
+		return invalidate(L2, mem, theListener) || held;
+	}
+	
+	/**
+	 * Invalidates every copy of an item held by one of this CPU's caches.
+	 * 
+	 * @param theCache L1d or L2.
+	 * @param mem The item that is being written in a different CPU.
+	 * @param theListener Receives the state changes and write-backs.
+	 * @return True if the cache held the item.
+	 */
+	private boolean invalidate(final Cache theCache, final MemoryInfo mem, 
+			final BusListener theListener) {
+		int index = theCache.index(mem.dAddress);
+		int tag = theCache.tag(mem.dAddress);
+		boolean held = false;
+		for (int slot = index; slot < index + theCache.numOfWays; slot++) {
+			if (theCache.tags[slot] != tag) {
+				continue;
+			}
+			held = true;
+			byte state = theCache.states[slot];
+			int entry = protocol.entry(state, Protocol.INVALIDATE);
+			theCache.states[slot] = Protocol.state(entry);
+			//notify simulator of the state change
+			theListener.onMessage(CacheEvent.MODIFIED, cpuNumber, mem.iAddress, mem.ioValue, 
+					mem.dAddress, state, Protocol.state(entry));
+			if ((entry & Protocol.WRITE_BACK) != 0 && writeBack == 1 
+					&& theCache.dirty[slot] != 0) {
+				//the written data is copied back to memory before the line is dropped
+				theCache.dirty[slot] = 0;
+				theListener.onMessage(CacheEvent.DATA_WRITE, cpuNumber, mem.iAddress, 
+						mem.ioValue, mem.dAddress, Cache.EMPTY, Cache.EMPTY);
+			}
+		}
+		return held;
+	}
+	
+	/**
+	 * @return Every statistic counted by this CPU, in the order they are checkpointed.
+	 */
+	private StripedCounter[] statistics() {
+		StripedCounter[] statistics = Arrays.copyOf(new StripedCounter[] {l1missNum, l1hitNum, 
+				l2missNum, l2hitNum, references, lineFills, sectorFills, prefetchesIssued, 
+				prefetchesUseful, prefetchesLate, prefetchesUseless, backInvalidations}, 
+				12 + stalls.length);
+		System.arraycopy(stalls, 0, statistics, 12, stalls.length);
+		return statistics;
+	}
+	
+	/**
+	 * Saves this CPU between steps, once every event it has raised has been serviced.
+	 * 
+	 * @throws IllegalStateException If events raised are still waiting on the bus.
+	 */
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		if (!bus.isEmpty()) {
+			throw new IllegalStateException("CPU " + cpuNumber + " has events not yet serviced");
+		}
+		theOut.writeLong(position);
+		r.save(theOut);
+		L1i.save(theOut);
+		L1d.save(theOut);
+		L2.save(theOut);
+		if (prefetcher != null) {
+			prefetcher.save(theOut);
+		}
+		Checkpoint.write(theOut, inFlight);
+		Checkpoint.write(theOut, ready);
+		for (StripedCounter statistic : statistics()) {
+			Checkpoint.write(theOut, statistic);
+		}
+	}
+	
+	/**
+	 * Restores this CPU. Its trace is left where it is, resume() skipping it to the position
+	 * saved.
+	 * 
+	 * @throws IllegalStateException If this CPU has already run.
+	 */
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		if (position != 0) {
+			throw new IllegalStateException("CPU " + cpuNumber + " has already run");
+		}
+		restored = theIn.readLong();
+		r.restore(theIn);
+		L1i.restore(theIn);
+		L1d.restore(theIn);
+		L2.restore(theIn);
+		if (prefetcher != null) {
+			prefetcher.restore(theIn);
+		}
+		Checkpoint.read(theIn, inFlight);
+		inFlightCount = 0;
+		for (int line : inFlight) {
+			if (line != NO_LINE) {
+				inFlightCount++;
+			}
+		}
+		Checkpoint.read(theIn, ready);
+		for (StripedCounter statistic : statistics()) {
+			Checkpoint.read(theIn, statistic);
+		}
+	}
+	
+	/**
+	 * @return The bus carrying this CPU's events.
+	 */
+	public CoherenceBus getBus() {
+		return bus;
+	}
+	
+	/**
+	 * Starts the CPU.
+	 */
+	public void start() {
+		System.out.format("[CPU %d] started\n", cpuNumber);
+		t = new Thread(this);
+		t.start();
+	}
+
+}
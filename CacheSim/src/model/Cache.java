@@ -1,63 +1,477 @@
-package model;
-
-/**
- * Model version of a Cache within the Cache Simulator program. Each cache consists of a size, 
- * a latency (in number of cycles stalled on misses), and an array of CacheEntry values 
- * depicting the cached instructions or values within this specific cache. 
- * 
- * @author Erik Tedder
- */
-public class Cache {
-
-	/** Size of the Cache. */
-	protected int cacheSize;
-	/** Latency/Penalty for misses. */
-	protected int latency;
-	/** The number of ways for associative entry. */
-	protected int numOfWays;
-	/** Stored values. */
-	protected CacheEntry[] entries;
-	
-	public Cache(final int theCacheSize, final int theLatency, final int theNumOfWays) {
-		numOfWays = theNumOfWays;
-		cacheSize = theCacheSize;
-		latency = theLatency;
-		entries = new CacheEntry[theCacheSize];
-		for(int i = 0; i < entries.length; i++) {
-			entries[i] = new CacheEntry();
-		}
-	}
-	
-	/**
-	 * Method for inserting an item into the cache with a particular MESI value.
-	 * 
-	 * @param theIndex The location in cache for insertion.
-	 * @param theTag The tag of the cache entry.
-	 * @param theMESI The MESI state.
-	 */
-	public void insert(final MemoryInfo mem, final int theIndex, final int theTag, final char theMESI) {
-		entries[theIndex] = new CacheEntry(theMESI, theTag, mem);
-	}
-
-	/**
-	 * The individual entries to a Cache's myEntries field. Each CacheEntry consists of a MESI
-	 * State and a tag. 
-	 * 
-	 * @author Erik Tedder	 
-	 */
-	public class CacheEntry {
-		char MESIState;
-		int tag;
-		MemoryInfo data;
-		
-		public CacheEntry() {
-			this(' ', -1, new MemoryInfo());
-		}
-		
-		public CacheEntry(final char theMESI, final int theTag, final MemoryInfo theData) {
-			data = theData;
-			MESIState = theMESI;
-			tag = theTag;
-		}
-	}
-}
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Model version of a Cache within the Cache Simulator program. Each cache consists of a size, 
+ * a latency (in number of cycles stalled on misses), and the cached instructions or values 
+ * within this specific cache. 
+ * 
+ * <p>The cache owns its geometry: the number of sets, the mask selecting an address's set and
+ * the shift producing its tag are computed once at construction, so mapping an address onto
+ * the cache is a mask and a shift. The ways of set s occupy slots s * numOfWays through 
+ * (s + 1) * numOfWays - 1.
+ * 
+ * <p>Addresses are grouped into lines of lineSize bytes, an address's line being the address
+ * with its low bits (the offset within the line) dropped, so every address of a line maps to
+ * the same slot. A line may be split into sectors, each with its own valid and dirty bit in
+ * the slot's valid and dirty masks. Probing an address hits only if its sector is valid, so 
+ * a miss on an invalid sector of a cached line fetches just that sector into the line rather
+ * than filling a new one. With one sector, lines are filled whole.
+ * 
+ * <p>Entries are stored as a structure of arrays: slot i of the cache is made up of tags[i], 
+ * states[i], addresses[i] and ioValues[i]. Lookups therefore walk contiguous primitive memory 
+ * and inserting into the cache never allocates.
+ * 
+ * <p>Lookups scan the ways of a set one at a time, those for a single way, such as probe, 
+ * find and slotFor, stopping at the first way that hits.
+ * 
+ * <p>Victims are chosen by the cache's ReplacementPolicy, which is told of every insert and 
+ * of the hits its owner records through touch.
+ * 
+ * <p>A cache saves its entries and its policy's bookkeeping into checkpoints. The Random 
+ * shared with a random policy belongs to the cache's owner, which saves it alongside.
+ * 
+ * @author Erik Tedder
+ */
+public class Cache implements Checkpointable {
+
+	/** Modified state. States are numbered to match the Simulator's transition matrix. */
+	public static final byte MODIFIED = 0;
+	/** Exclusive state. */
+	public static final byte EXCLUSIVE = 1;
+	/** Shared state. */
+	public static final byte SHARED = 2;
+	/** Invalid state. */
+	public static final byte INVALID = 3;
+	/** MOESI Owned state, a written line other CPUs share and this one supplies. */
+	public static final byte OWNED = 4;
+	/** MESIF Forward state, the one Shared copy that supplies the line. */
+	public static final byte FORWARD = 5;
+	/** Number of states a filled slot can be in. */
+	public static final int STATES = 6;
+	/** Initial of each state, indexed by state. */
+	public static final String STATE_NAMES = "MESIOF";
+	/** State of a slot that has never been filled. */
+	public static final byte EMPTY = -1;
+	/** Tag of a slot that has never been filled. */
+	public static final int NO_TAG = -1;
+	/** Most sectors a line may be split into, one bit each of the valid and dirty masks. */
+	public static final int MAX_SECTORS = Integer.SIZE;
+	
+	/** Size of the Cache. */
+	protected int cacheSize;
+	/** Latency/Penalty for misses. */
+	protected int latency;
+	/** The number of ways for associative entry. */
+	protected int numOfWays;
+	/** Bytes in each line. */
+	protected final int lineSize;
+	/** Number of sectors in each line. */
+	protected final int sectors;
+	/** The number of sets (cacheSize / numOfWays). */
+	protected final int sets;
+	/** Shift dropping the offset within a line from an address. */
+	protected final int offsetShift;
+	/** Shift dropping the offset within a sector from an address. */
+	protected final int sectorShift;
+	/** Mask with a bit for every sector of a line. */
+	protected final int allSectors;
+	/** Mask selecting the set bits of an address. */
+	protected final int indexMask;
+	/** Shift turning a set number into its first slot. */
+	protected final int waysShift;
+	/** Shift removing the offset and set bits of an address to produce its tag. */
+	protected final int tagShift;
+	/** Tag of each slot. */
+	protected int[] tags;
+	/** MESI state of each slot. */
+	protected byte[] states;
+	/** Instruction (high 32 bits) and data (low 32 bits) address of each slot. */
+	protected long[] addresses;
+	/** I/O value of each slot. */
+	protected byte[] ioValues;
+	/** Sectors of each slot holding valid data, bit n being sector n. */
+	protected int[] valid;
+	/** Sectors of each slot written since being filled, bit n being sector n. */
+	protected int[] dirty;
+	/** Whether each slot was filled by a prefetch and has not been referenced since. */
+	protected boolean[] prefetched;
+	/** Chooses the slots evicted. */
+	protected final ReplacementPolicy policy;
+	
+	/**
+	 * Constructs a cache with random replacement, computing its geometry.
+	 * 
+	 * @param theCacheSize Number of entries within the cache, a power of two.
+	 * @param theLatency Latency/Penalty for misses.
+	 * @param theNumOfWays The associativity, a power of two no larger than theCacheSize.
+	 * @throws IllegalArgumentException If the size or associativity are invalid.
+	 */
+	public Cache(final int theCacheSize, final int theLatency, final int theNumOfWays) {
+		this(theCacheSize, theLatency, theNumOfWays, Replacement.RANDOM, new Random());
+	}
+	
+	/**
+	 * Constructs a cache of one byte lines, computing its geometry.
+	 * 
+	 * @param theCacheSize Number of entries within the cache, a power of two.
+	 * @param theLatency Latency/Penalty for misses.
+	 * @param theNumOfWays The associativity, a power of two no larger than theCacheSize.
+	 * @param theReplacement The replacement policy.
+	 * @param theRandom Random number generator for policies choosing at random.
+	 * @throws IllegalArgumentException If the size or associativity are invalid.
+	 */
+	public Cache(final int theCacheSize, final int theLatency, final int theNumOfWays,
+			final Replacement theReplacement, final Random theRandom) {
+		this(theCacheSize, theLatency, theNumOfWays, 1, 1, theReplacement, theRandom);
+	}
+	
+	/**
+	 * Constructs a cache, computing its geometry.
+	 * 
+	 * @param theCacheSize Number of lines within the cache, a power of two.
+	 * @param theLatency Latency/Penalty for misses.
+	 * @param theNumOfWays The associativity, a power of two no larger than theCacheSize.
+	 * @param theLineSize Bytes in each line, a power of two.
+	 * @param theSectors Sectors in each line, a power of two no larger than theLineSize or 
+	 * MAX_SECTORS.
+	 * @param theReplacement The replacement policy.
+	 * @param theRandom Random number generator for policies choosing at random.
+	 * @throws IllegalArgumentException If the size, associativity, line size or sectors are 
+	 * invalid.
+	 */
+	public Cache(final int theCacheSize, final int theLatency, final int theNumOfWays,
+			final int theLineSize, final int theSectors, final Replacement theReplacement, 
+			final Random theRandom) {
+		if (Integer.bitCount(theLineSize) != 1 || Integer.bitCount(theSectors) != 1 
+				|| theSectors > theLineSize || theSectors > MAX_SECTORS) {
+			throw new IllegalArgumentException("Line size (" + theLineSize + ") and sectors (" 
+					+ theSectors + ") must be powers of two with sectors no larger than the "
+					+ "line size or " + MAX_SECTORS);
+		}
+		if (Integer.bitCount(theCacheSize) != 1 || Integer.bitCount(theNumOfWays) != 1 
+				|| theNumOfWays > theCacheSize || theCacheSize < 0 || theNumOfWays < 0) {
+			throw new IllegalArgumentException("Cache size (" + theCacheSize + ") and ways (" 
+					+ theNumOfWays + ") must be powers of two with ways no larger than size");
+		}
+		numOfWays = theNumOfWays;
+		cacheSize = theCacheSize;
+		latency = theLatency;
+		lineSize = theLineSize;
+		sectors = theSectors;
+		sets = theCacheSize / theNumOfWays;
+		offsetShift = Integer.numberOfTrailingZeros(theLineSize);
+		sectorShift = Integer.numberOfTrailingZeros(theLineSize / theSectors);
+		allSectors = (int) ((1L << theSectors) - 1);
+		indexMask = sets - 1;
+		waysShift = Integer.numberOfTrailingZeros(theNumOfWays);
+		tagShift = offsetShift + Integer.numberOfTrailingZeros(sets);
+		tags = new int[theCacheSize];
+		states = new byte[theCacheSize];
+		addresses = new long[theCacheSize];
+		ioValues = new byte[theCacheSize];
+		valid = new int[theCacheSize];
+		dirty = new int[theCacheSize];
+		prefetched = new boolean[theCacheSize];
+		Arrays.fill(tags, NO_TAG);
+		Arrays.fill(states, EMPTY);
+		Arrays.fill(addresses, pack(-1, -1));
+		Arrays.fill(ioValues, (byte) -1);
+		policy = theReplacement.create(theCacheSize, theNumOfWays, theRandom);
+	}
+	
+	/**
+	 * Method for inserting an item into the cache with a particular MESI value, filling every
+	 * sector of its line.
+	 * 
+	 * @param theIndex The location in cache for insertion.
+	 * @param theTag The tag of the cache entry.
+	 * @param theMESI The MESI state.
+	 * @param theIAddress The instruction address of the item.
+	 * @param theIOValue The I/O value of the item.
+	 * @param theDAddress The data address of the item.
+	 */
+	public void insert(final int theIndex, final int theTag, final byte theMESI,
+			final int theIAddress, final int theIOValue, final int theDAddress) {
+		insert(theIndex, theTag, allSectors, theMESI, theIAddress, theIOValue, theDAddress);
+	}
+	
+	/**
+	 * Method for inserting an item into the cache with a particular MESI value, filling only 
+	 * the passed sectors of its line.
+	 * 
+	 * @param theIndex The location in cache for insertion.
+	 * @param theTag The tag of the cache entry.
+	 * @param theSectors The sectors filled, as from sector().
+	 * @param theMESI The MESI state.
+	 * @param theIAddress The instruction address of the item.
+	 * @param theIOValue The I/O value of the item.
+	 * @param theDAddress The data address of the item.
+	 */
+	public void insert(final int theIndex, final int theTag, final int theSectors, 
+			final byte theMESI, final int theIAddress, final int theIOValue, 
+			final int theDAddress) {
+		tags[theIndex] = theTag;
+		valid[theIndex] = theSectors;
+		dirty[theIndex] = 0;
+		prefetched[theIndex] = false;
+		states[theIndex] = theMESI;
+		addresses[theIndex] = pack(theIAddress, theDAddress);
+		ioValues[theIndex] = (byte) theIOValue;
+		policy.fill(theIndex);
+	}
+	
+	/**
+	 * Empties a slot, as if it had never been filled. Used to remove a line the hierarchy's
+	 * inclusion policy no longer allows this cache to hold.
+	 * 
+	 * @param theIndex The slot emptied.
+	 */
+	public void clear(final int theIndex) {
+		tags[theIndex] = NO_TAG;
+		valid[theIndex] = 0;
+		dirty[theIndex] = 0;
+		prefetched[theIndex] = false;
+		states[theIndex] = EMPTY;
+		addresses[theIndex] = pack(-1, -1);
+		ioValues[theIndex] = -1;
+	}
+	
+	/**
+	 * Fills further sectors of a line already held, counting as a hit on its slot. The line
+	 * takes the state of the sectors filled unless it is Modified or Owned, which it stays.
+	 * 
+	 * @param theIndex The slot holding the line.
+	 * @param theSectors The sectors filled, as from sector().
+	 * @param theMESI The MESI state the sectors are filled with.
+	 */
+	public void fill(final int theIndex, final int theSectors, final byte theMESI) {
+		valid[theIndex] |= theSectors;
+		if (states[theIndex] != MODIFIED && states[theIndex] != OWNED) {
+			states[theIndex] = theMESI;
+		}
+		policy.touch(theIndex);
+	}
+	
+	/**
+	 * Records a write to an address held in a slot, moving the slot to the state the 
+	 * protocol gives a written line and marking the address's sector dirty.
+	 * 
+	 * @param theIndex The slot holding the address.
+	 * @param theAddress The address written.
+	 * @param theMESI The state of the written line.
+	 */
+	public void write(final int theIndex, final int theAddress, final byte theMESI) {
+		states[theIndex] = theMESI;
+		dirty[theIndex] |= sector(theAddress);
+	}
+	
+	/**
+	 * Records a hit on a slot with the replacement policy.
+	 * 
+	 * @param theIndex The slot hit.
+	 */
+	public void touch(final int theIndex) {
+		policy.touch(theIndex);
+	}
+	
+	/**
+	 * Chooses the slot to evict from a full set.
+	 * 
+	 * @param theIndex The first slot of the set.
+	 * @return The slot to evict.
+	 */
+	public int victim(final int theIndex) {
+		return policy.victim(theIndex);
+	}
+	
+	/**
+	 * Calculates the first slot of the set an address maps to.
+	 * 
+	 * @param theAddress The address being cached.
+	 * @return The first slot of the address's set.
+	 */
+	public int index(final int theAddress) {
+		return ((theAddress >> offsetShift) & indexMask) << waysShift;
+	}
+	
+	/**
+	 * Calculates the tag of an address.
+	 * 
+	 * @param theAddress The address being cached.
+	 * @return The tag of the address.
+	 */
+	public int tag(final int theAddress) {
+		return theAddress >> tagShift;
+	}
+	
+	/**
+	 * Calculates the sector of its line an address falls in.
+	 * 
+	 * @param theAddress The address being cached.
+	 * @return A mask with the bit of the address's sector set.
+	 */
+	public int sector(final int theAddress) {
+		return 1 << ((theAddress >> sectorShift) & (sectors - 1));
+	}
+	
+	/**
+	 * Looks up an address within the cache.
+	 * 
+	 * @param theAddress The address searched for.
+	 * @return The slot holding the address, or -1 if its line is not cached or its sector
+	 * has not been filled.
+	 */
+	public int probe(final int theAddress) {
+		int slot = find(index(theAddress), tag(theAddress));
+		if (slot != -1 && (valid[slot] & sector(theAddress)) == 0) {
+			return -1;
+		}
+		return slot;
+	}
+	
+	/**
+	 * Searches the ways of the set starting at the passed index for the passed tag.
+	 * 
+	 * @param theIndex The first slot of the set.
+	 * @param theTag The tag searched for.
+	 * @return The slot holding the tag, or -1 if it is not cached.
+	 */
+	public int find(final int theIndex, final int theTag) {
+		for (int i = theIndex; i < theIndex + numOfWays; i++) {
+			if (tags[i] == theTag) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Searches the ways of a set for a slot a line can be filled into without evicting 
+	 * another line.
+	 * 
+	 * @param theIndex The first slot of the set.
+	 * @param theTag The tag of the line.
+	 * @return The slot already holding the tag, otherwise the first empty way, or -1 if every
+	 * way holds another line.
+	 */
+	public int slotFor(final int theIndex, final int theTag) {
+		int slot = find(theIndex, theTag);
+		return slot != -1 ? slot : find(theIndex, NO_TAG);
+	}
+	
+	/**
+	 * @param theIndex A slot of the cache.
+	 * @return True if the slot holds a line that has not been invalidated.
+	 */
+	public boolean holds(final int theIndex) {
+		return states[theIndex] != EMPTY && states[theIndex] != INVALID;
+	}
+	
+	/**
+	 * Rebuilds the address a slot's line is cached under from its tag and set.
+	 * 
+	 * @param theIndex A slot of the cache.
+	 * @return The first address of the line held in the slot.
+	 */
+	public int address(final int theIndex) {
+		return (tags[theIndex] << tagShift) | ((theIndex >> waysShift) << offsetShift);
+	}
+	
+	/**
+	 * Adds the line number (address divided by the line size) of every line held to a set.
+	 * 
+	 * @param theLines The set added to.
+	 */
+	public void lines(final Set<Integer> theLines) {
+		for (int i = 0; i < cacheSize; i++) {
+			if (holds(i)) {
+				theLines.add(address(i) >> offsetShift);
+			}
+		}
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		Checkpoint.write(theOut, tags);
+		Checkpoint.write(theOut, states);
+		Checkpoint.write(theOut, addresses);
+		Checkpoint.write(theOut, ioValues);
+		Checkpoint.write(theOut, valid);
+		Checkpoint.write(theOut, dirty);
+		Checkpoint.write(theOut, prefetched);
+		policy.save(theOut);
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		Checkpoint.read(theIn, tags);
+		Checkpoint.read(theIn, states);
+		Checkpoint.read(theIn, addresses);
+		Checkpoint.read(theIn, ioValues);
+		Checkpoint.read(theIn, valid);
+		Checkpoint.read(theIn, dirty);
+		Checkpoint.read(theIn, prefetched);
+		policy.restore(theIn);
+	}
+	
+	/**
+	 * @param theIndex A slot of the cache.
+	 * @return The instruction address held in the slot.
+	 */
+	public int iAddress(final int theIndex) {
+		return (int) (addresses[theIndex] >> 32);
+	}
+	
+	/**
+	 * @param theIndex A slot of the cache.
+	 * @return The I/O value held in the slot.
+	 */
+	public int ioValue(final int theIndex) {
+		return ioValues[theIndex];
+	}
+	
+	/**
+	 * @param theIndex A slot of the cache.
+	 * @return The data address held in the slot.
+	 */
+	public int dAddress(final int theIndex) {
+		return (int) addresses[theIndex];
+	}
+	
+	/**
+	 * @param theIndex A slot of the cache.
+	 * @return The number of dirty sectors in the slot, those to be written back on eviction.
+	 */
+	public int dirtySectors(final int theIndex) {
+		return Integer.bitCount(dirty[theIndex]);
+	}
+	
+	/**
+	 * Copies the item held in a slot into the passed MemoryInfo.
+	 * 
+	 * @param theIndex A slot of the cache.
+	 * @param theMem The MemoryInfo to fill.
+	 * @return theMem, for convenience.
+	 */
+	public MemoryInfo read(final int theIndex, final MemoryInfo theMem) {
+		return theMem.set(iAddress(theIndex), ioValue(theIndex), dAddress(theIndex));
+	}
+	
+	/**
+	 * Packs an instruction and data address into a single long.
+	 * 
+	 * @param theIAddress The instruction address.
+	 * @param theDAddress The data address.
+	 * @return The packed addresses.
+	 */
+	private static long pack(final int theIAddress, final int theDAddress) {
+		return ((long) theIAddress << 32) | (theDAddress & 0xFFFFFFFFL);
+	}
+}
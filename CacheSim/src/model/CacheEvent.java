@@ -1,13 +1,22 @@
-package model;
-
-/**
- * Simple enum class to help in identifying different events that occur during the simulation
- * of the cache.
- * 
- * @author Erik Tedder
- */
-public enum CacheEvent {	
-	DATA_WRITE,
-	MODIFIED,
-	COMPLETE;
-}
+package model;
+
+/**
+ * Simple enum class to help in identifying different events that occur during the simulation
+ * of the cache. Each event is carried on the coherence bus as a BusMessage.
+ * 
+ * @author Erik Tedder
+ */
+public enum CacheEvent {	
+	/** A reference missed in L1 and L2 and needs to be serviced by the other CPUs or L3. */
+	MISS,
+	/** An item evicted from L2 needs to be placed into L3 (address in iAddress). */
+	L3_FILL,
+	/** A data item is written out to memory. */
+	DATA_WRITE,
+	/** An item changed MESI state (see the message's start and end states). */
+	MODIFIED,
+	/** A CPU prefetches the line holding dAddress into its L2, without stalling. */
+	PREFETCH,
+	/** A CPU has finished its trace. */
+	COMPLETE;
+}
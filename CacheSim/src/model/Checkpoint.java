@@ -0,0 +1,351 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Checkpoints of a simulation, written to a file at intervals and restored to resume the
+ * simulation or to start other experiments from its warmed caches.
+ * 
+ * <p>A checkpoint is captured by saving the simulation's Checkpointable state into memory
+ * while it is stopped between epochs, a copy of a few arrays per cache. The copy is then
+ * compressed and written on a background thread while the simulation carries on, into a
+ * temporary file moved over the previous checkpoint once complete, so the file always holds
+ * the latest complete checkpoint. A capture due while the previous checkpoint is still being
+ * written is skipped rather than stopping the simulation to wait for it.
+ * 
+ * <p>Checkpoints are gzipped, opening with MAGIC and VERSION followed by the state, all in
+ * the big-endian layout of DataOutput.
+ * 
+ * @author Erik Tedder
+ */
+public class Checkpoint {
+	
+	/** Magic number opening every checkpoint ("CCKP"). */
+	public static final int MAGIC = 0x43434B50;
+	/** Version of the checkpoint layout. */
+	public static final int VERSION = 2;
+	/** Default references performed by all CPUs between checkpoints. */
+	public static final long INTERVAL = 1 << 20;
+	/** Extension of the temporary file a checkpoint is written to. */
+	private static final String TEMPORARY_EXTENSION = ".tmp";
+	
+	/** The checkpoint file. */
+	private final Path file;
+	/** Writes checkpoints in the background. */
+	private final ExecutorService writer;
+	/** The checkpoint being written, null if none has been. */
+	private Future<Void> pending;
+	/** Checkpoints written. */
+	private int written;
+	/** Checkpoints skipped as the previous one was still being written. */
+	private int skipped;
+	
+	/**
+	 * Constructs a writer of checkpoints to a file.
+	 * 
+	 * @param theFileName The checkpoint file, replaced by each checkpoint.
+	 */
+	public Checkpoint(final String theFileName) {
+		file = Paths.get(theFileName);
+		writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable theRunnable) {
+				Thread thread = new Thread(theRunnable, "checkpoint " + theFileName);
+				//an unfinished checkpoint must not keep a failed simulation alive
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * @return True if no checkpoint is being written, so another may be captured.
+	 */
+	public boolean isIdle() {
+		return pending == null || pending.isDone();
+	}
+	
+	/**
+	 * Captures state and writes it in the background, unless a checkpoint is still being
+	 * written. Must be called while the state is not being changed.
+	 * 
+	 * @param theState The state checkpointed.
+	 * @return True if the checkpoint was captured, false if skipped.
+	 * @throws IOException If the state cannot be saved, or the previous checkpoint failed.
+	 */
+	public boolean write(final Checkpointable theState) throws IOException {
+		if (!isIdle()) {
+			skipped++;
+			return false;
+		}
+		finish();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		theState.save(out);
+		out.flush();
+		final byte[] captured = bytes.toByteArray();
+		pending = writer.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_EXTENSION);
+				OutputStream compressed = new GZIPOutputStream(new BufferedOutputStream(
+						new FileOutputStream(temporary.toFile())));
+				try {
+					compressed.write(captured);
+				} finally {
+					compressed.close();
+				}
+				Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				return null;
+			}
+		});
+		written++;
+		return true;
+	}
+	
+	/**
+	 * Waits for the checkpoint being written, if any.
+	 * 
+	 * @throws IOException If the checkpoint could not be written.
+	 */
+	public void finish() throws IOException {
+		if (pending == null) {
+			return;
+		}
+		try {
+			pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted writing checkpoint " + file, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed writing checkpoint " + file, e.getCause());
+		} finally {
+			pending = null;
+		}
+	}
+	
+	/**
+	 * Waits for the checkpoint being written, then stops the background thread.
+	 * 
+	 * @throws IOException If the checkpoint could not be written.
+	 */
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			writer.shutdown();
+		}
+	}
+	
+	/**
+	 * @return Checkpoints captured.
+	 */
+	public int written() {
+		return written;
+	}
+	
+	/**
+	 * @return Checkpoints skipped as the previous one was still being written.
+	 */
+	public int skipped() {
+		return skipped;
+	}
+	
+	/**
+	 * Restores state from a checkpoint file.
+	 * 
+	 * @param theFileName The checkpoint file.
+	 * @param theState The state restored, constructed as the state checkpointed was.
+	 * @throws IOException If the file cannot be read, is not a checkpoint or does not match
+	 * the state.
+	 */
+	public static void read(final String theFileName, final Checkpointable theState)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(theFileName))));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(theFileName + " is not a checkpoint");
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint version " + version);
+			}
+			theState.restore(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Writes an array, preceded by its length.
+	 * 
+	 * @param theOut The checkpoint written to.
+	 * @param theArray The array.
+	 * @throws IOException If the checkpoint cannot be written.
+	 */
+	static void write(final DataOutput theOut, final int[] theArray) throws IOException {
+		theOut.writeInt(theArray.length);
+		for (int value : theArray) {
+			theOut.writeInt(value);
+		}
+	}
+	
+	/**
+	 * Writes an array, preceded by its length.
+	 * 
+	 * @param theOut The checkpoint written to.
+	 * @param theArray The array.
+	 * @throws IOException If the checkpoint cannot be written.
+	 */
+	static void write(final DataOutput theOut, final long[] theArray) throws IOException {
+		theOut.writeInt(theArray.length);
+		for (long value : theArray) {
+			theOut.writeLong(value);
+		}
+	}
+	
+	/**
+	 * Writes an array, preceded by its length.
+	 * 
+	 * @param theOut The checkpoint written to.
+	 * @param theArray The array.
+	 * @throws IOException If the checkpoint cannot be written.
+	 */
+	static void write(final DataOutput theOut, final byte[] theArray) throws IOException {
+		theOut.writeInt(theArray.length);
+		theOut.write(theArray);
+	}
+	
+	/**
+	 * Writes an array, preceded by its length.
+	 * 
+	 * @param theOut The checkpoint written to.
+	 * @param theArray The array.
+	 * @throws IOException If the checkpoint cannot be written.
+	 */
+	static void write(final DataOutput theOut, final boolean[] theArray) throws IOException {
+		theOut.writeInt(theArray.length);
+		for (boolean value : theArray) {
+			theOut.writeBoolean(value);
+		}
+	}
+	
+	/**
+	 * Reads an array written by write into an array of the same length.
+	 * 
+	 * @param theIn The checkpoint read from.
+	 * @param theArray The array read into.
+	 * @throws IOException If the checkpoint cannot be read or the lengths differ.
+	 */
+	static void read(final DataInput theIn, final int[] theArray) throws IOException {
+		length(theIn, theArray.length);
+		for (int i = 0; i < theArray.length; i++) {
+			theArray[i] = theIn.readInt();
+		}
+	}
+	
+	/**
+	 * Reads an array written by write into an array of the same length.
+	 * 
+	 * @param theIn The checkpoint read from.
+	 * @param theArray The array read into.
+	 * @throws IOException If the checkpoint cannot be read or the lengths differ.
+	 */
+	static void read(final DataInput theIn, final long[] theArray) throws IOException {
+		length(theIn, theArray.length);
+		for (int i = 0; i < theArray.length; i++) {
+			theArray[i] = theIn.readLong();
+		}
+	}
+	
+	/**
+	 * Reads an array written by write into an array of the same length.
+	 * 
+	 * @param theIn The checkpoint read from.
+	 * @param theArray The array read into.
+	 * @throws IOException If the checkpoint cannot be read or the lengths differ.
+	 */
+	static void read(final DataInput theIn, final byte[] theArray) throws IOException {
+		length(theIn, theArray.length);
+		theIn.readFully(theArray);
+	}
+	
+	/**
+	 * Reads an array written by write into an array of the same length.
+	 * 
+	 * @param theIn The checkpoint read from.
+	 * @param theArray The array read into.
+	 * @throws IOException If the checkpoint cannot be read or the lengths differ.
+	 */
+	static void read(final DataInput theIn, final boolean[] theArray) throws IOException {
+		length(theIn, theArray.length);
+		for (int i = 0; i < theArray.length; i++) {
+			theArray[i] = theIn.readBoolean();
+		}
+	}
+	
+	/**
+	 * Reads the length of an array, checking it matches the array read into.
+	 * 
+	 * @param theIn The checkpoint read from.
+	 * @param theLength The length of the array read into.
+	 * @throws IOException If the checkpoint cannot be read or the lengths differ.
+	 */
+	private static void length(final DataInput theIn, final int theLength) throws IOException {
+		int length = theIn.readInt();
+		if (length != theLength) {
+			throw new IOException("Checkpointed array of " + length + " elements does not "
+					+ "match " + theLength);
+		}
+	}
+	
+	/**
+	 * Writes the value of a counter.
+	 * 
+	 * @param theOut The checkpoint written to.
+	 * @param theCounter The counter.
+	 * @throws IOException If the checkpoint cannot be written.
+	 */
+	static void write(final DataOutput theOut, final StripedCounter theCounter)
+			throws IOException {
+		theOut.writeLong(theCounter.sum());
+	}
+	
+	/**
+	 * Reads the value of a counter written by write.
+	 * 
+	 * @param theIn The checkpoint read from.
+	 * @param theCounter The counter set.
+	 * @throws IOException If the checkpoint cannot be read.
+	 */
+	static void read(final DataInput theIn, final StripedCounter theCounter)
+			throws IOException {
+		theCounter.set(theIn.readLong());
+	}
+}
@@ -0,0 +1,31 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * State saved into a Checkpoint and restored from one. State is only ever restored into an 
+ * object constructed with the same configuration as the one saved, so only what changes 
+ * while simulating is written, never the geometry or configuration itself.
+ * 
+ * @author Erik Tedder
+ */
+public interface Checkpointable {
+	
+	/**
+	 * Writes the state. Must not be called while the state is being changed.
+	 * 
+	 * @param theOut The checkpoint written to.
+	 * @throws IOException If the checkpoint cannot be written.
+	 */
+	void save(DataOutput theOut) throws IOException;
+	
+	/**
+	 * Replaces the state with the state read.
+	 * 
+	 * @param theIn The checkpoint read from, positioned where save() began writing.
+	 * @throws IOException If the checkpoint cannot be read or does not match this object.
+	 */
+	void restore(DataInput theIn) throws IOException;
+}
@@ -0,0 +1,113 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer, single-consumer queue carrying a CPU's events to the simulator.
+ * The queue is a ring of preallocated BusMessages: the CPU thread publishes by filling the
+ * slot at the tail and advancing it, the simulator consumes by delivering the slots up to 
+ * the tail and advancing the head. Neither side takes a lock or allocates, so CPUs never 
+ * serialize on one another while raising events.
+ * 
+ * <p>When the ring is full the producer yields until the consumer has made room.
+ * 
+ * @author Erik Tedder
+ */
+public class CoherenceBus implements BusListener {
+
+	/** Default number of messages the bus holds. */
+	public static final int DEFAULT_CAPACITY = 4096;
+	
+	/** The message slots. */
+	private final BusMessage[] slots;
+	/** Mask turning a sequence number into a slot. */
+	private final int mask;
+	/** Sequence number of the next message to consume. */
+	private final AtomicLong head = new AtomicLong();
+	/** Sequence number of the next message to publish. */
+	private final AtomicLong tail = new AtomicLong();
+	/** The producer's last read of head, so it rarely has to read the consumer's counter. */
+	private long cachedHead;
+	
+	public CoherenceBus() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Constructs a bus.
+	 * 
+	 * @param theCapacity The number of messages the bus holds, a power of two.
+	 * @throws IllegalArgumentException If the capacity is not a power of two.
+	 */
+	public CoherenceBus(final int theCapacity) {
+		if (Integer.bitCount(theCapacity) != 1) {
+			throw new IllegalArgumentException("Bus capacity must be a power of two");
+		}
+		slots = new BusMessage[theCapacity];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = new BusMessage();
+		}
+		mask = theCapacity - 1;
+	}
+	
+	/**
+	 * @return The number of messages that can be published before the bus is full. Must only
+	 * be called by the producing thread.
+	 */
+	public int remaining() {
+		return slots.length - (int) (tail.get() - head.get());
+	}
+	
+	/**
+	 * Publishes a message onto the bus. Must only be called by the producing thread.
+	 */
+	@Override
+	public void onMessage(final CacheEvent theEvent, final int theCpu, final int theIAddress, 
+			final int theIOValue, final int theDAddress, final byte theStartState, 
+			final byte theEndState) {
+		long sequence = tail.get();
+		while (sequence - cachedHead >= slots.length) {
+			cachedHead = head.get();
+			if (sequence - cachedHead >= slots.length) {
+				//bus is full, give the consumer a chance to catch up
+				Thread.yield();
+			}
+		}
+		BusMessage message = slots[(int) sequence & mask];
+		message.event = theEvent;
+		message.cpu = theCpu;
+		message.iAddress = theIAddress;
+		message.ioValue = theIOValue;
+		message.dAddress = theDAddress;
+		message.startState = theStartState;
+		message.endState = theEndState;
+		//ordered store, makes the filled slot visible before the new tail
+		tail.lazySet(sequence + 1);
+	}
+	
+	/**
+	 * Delivers waiting messages, in order, to a listener. Must only be called by the 
+	 * consuming thread.
+	 * 
+	 * @param theListener The listener to deliver to.
+	 * @param theMax The most messages to deliver.
+	 * @return The number of messages delivered.
+	 */
+	public int drainTo(final BusListener theListener, final int theMax) {
+		long first = head.get();
+		int count = (int) Math.min(tail.get() - first, theMax);
+		for (int i = 0; i < count; i++) {
+			slots[(int) (first + i) & mask].deliverTo(theListener);
+		}
+		//release the slots back to the producer
+		head.lazySet(first + count);
+		return count;
+	}
+	
+	/**
+	 * @return True if no messages are waiting.
+	 */
+	public boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+}
@@ -0,0 +1,367 @@
+package model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Byte-level parser of CSV traces. Lines are scanned directly out of a ByteBuffer and each 
+ * "iAddress,ioValue,dAddress" field decoded in place, empty fields standing for -1, so no 
+ * Strings or other objects are created per line. Multi-threaded traces may carry the thread
+ * of each record in a fourth column, read only for a ThreadedTraceSink. Any further columns 
+ * are ignored and blank lines skipped; lines may end in "\n" or "\r\n".
+ * 
+ * <p>Large files are split into chunks on line boundaries, each chunk memory-mapped and 
+ * parsed on its own thread, and the chunks' records joined in file order.
+ * 
+ * @author Erik Tedder
+ */
+public class CsvParser {
+	
+	/** Files smaller than this are parsed on the calling thread. */
+	private static final long MIN_PARALLEL_SIZE = 1 << 20;
+	/** Largest chunk mapped at once. */
+	private static final long MAX_CHUNK = 1 << 30;
+	/** Size of the buffer used when streaming a file. */
+	private static final int BLOCK_SIZE = 1 << 16;
+	/** Rough number of bytes per line, used to size each chunk's trace. */
+	private static final int BYTES_PER_LINE = 16;
+	
+	private CsvParser() {
+		//static methods only
+	}
+	
+	/**
+	 * Reads a complete CSV trace file into memory.
+	 * 
+	 * @param theFileName The name of the CSV trace.
+	 * @param theParallelism The most threads parsing at once.
+	 * @return The trace read.
+	 * @throws IOException If the file cannot be read.
+	 * @throws NumberFormatException If a line is malformed.
+	 */
+	public static ArrayTrace read(final String theFileName, final int theParallelism) 
+			throws IOException {
+		RandomAccessFile file = new RandomAccessFile(theFileName, "r");
+		try {
+			final FileChannel channel = file.getChannel();
+			long size = channel.size();
+			int chunks = (int) Math.max(size < MIN_PARALLEL_SIZE ? 1 : theParallelism, 
+					(size + MAX_CHUNK - 1) / MAX_CHUNK);
+			final long[] bounds = new long[chunks + 1];
+			bounds[chunks] = size;
+			for (int k = 1; k < chunks; k++) {
+				bounds[k] = lineStart(channel, Math.max(size / chunks * k, bounds[k - 1]), size);
+			}
+			if (chunks == 1) {
+				return parseChunk(channel, 0, size);
+			}
+			
+			List<Callable<ArrayTrace>> tasks = new ArrayList<Callable<ArrayTrace>>();
+			for (int k = 0; k < chunks; k++) {
+				final int chunk = k;
+				tasks.add(new Callable<ArrayTrace>() {
+					@Override
+					public ArrayTrace call() throws IOException {
+						return parseChunk(channel, bounds[chunk], bounds[chunk + 1]);
+					}
+				});
+			}
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(chunks, 
+					Math.max(theParallelism, 1)));
+			try {
+				List<ArrayTrace> parts = new ArrayList<ArrayTrace>();
+				long total = 0;
+				for (Future<ArrayTrace> part : pool.invokeAll(tasks)) {
+					parts.add(part.get());
+					total += part.get().size();
+				}
+				ArrayTrace trace = new ArrayTrace((int) Math.min(total, Integer.MAX_VALUE));
+				for (ArrayTrace part : parts) {
+					trace.addAll(part);
+				}
+				return trace;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted reading " + theFileName);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		} finally {
+			file.close();
+		}
+	}
+	
+	/**
+	 * Parses a CSV trace from a channel a block at a time, so only a block of the file is 
+	 * held in memory.
+	 * 
+	 * @param theChannel The channel read until its end.
+	 * @param theSink Receives each record.
+	 * @throws IOException If the channel cannot be read or a line does not fit in a block.
+	 * @throws NumberFormatException If a line is malformed.
+	 */
+	public static void stream(final ReadableByteChannel theChannel, final TraceSink theSink)
+			throws IOException {
+		stream(theChannel, theSink, null);
+	}
+	
+	/**
+	 * Parses a multi-threaded CSV trace from a channel a block at a time, reading the thread
+	 * of each record from the fourth column.
+	 * 
+	 * @param theChannel The channel read until its end.
+	 * @param theSink Receives each record.
+	 * @throws IOException If the channel cannot be read or a line does not fit in a block.
+	 * @throws NumberFormatException If a line is malformed.
+	 */
+	public static void streamThreaded(final ReadableByteChannel theChannel, 
+			final ThreadedTraceSink theSink) throws IOException {
+		stream(theChannel, null, theSink);
+	}
+	
+	/**
+	 * Parses a CSV trace from a channel into whichever sink is not null.
+	 * 
+	 * @param theChannel The channel read until its end.
+	 * @param theSink Receives each record, or null.
+	 * @param theThreadedSink Receives each record and its thread, or null.
+	 * @throws IOException If the channel cannot be read or a line does not fit in a block.
+	 */
+	private static void stream(final ReadableByteChannel theChannel, final TraceSink theSink,
+			final ThreadedTraceSink theThreadedSink) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+		//offset within the file of the buffer's first byte
+		long base = 0;
+		while (theChannel.read(buffer) >= 0) {
+			int consumed = parse(buffer, 0, buffer.position(), false, base, theSink, 
+					theThreadedSink);
+			base += consumed;
+			//move the partial last line to the front
+			buffer.limit(buffer.position());
+			buffer.position(consumed);
+			buffer.compact();
+			if (!buffer.hasRemaining()) {
+				throw new IOException("Trace line longer than " + BLOCK_SIZE + " bytes");
+			}
+		}
+		parse(buffer, 0, buffer.position(), true, base, theSink, theThreadedSink);
+	}
+	
+	/**
+	 * Parses the lines held in part of a buffer. The buffer's position and limit are not 
+	 * used or changed.
+	 * 
+	 * @param theBuffer The buffer.
+	 * @param theFrom Index of the first byte.
+	 * @param theTo Index after the last byte.
+	 * @param theEnd True if theTo is the end of the trace, so a last line without a line 
+	 * ending is parsed rather than left for the next call.
+	 * @param theSink Receives each record.
+	 * @return Index after the last line parsed.
+	 * @throws NumberFormatException If a line is malformed.
+	 */
+	public static int parse(final ByteBuffer theBuffer, final int theFrom, final int theTo,
+			final boolean theEnd, final TraceSink theSink) {
+		return parse(theBuffer, theFrom, theTo, theEnd, 0, theSink, null);
+	}
+	
+	/**
+	 * Parses the lines held in part of a buffer into whichever sink is not null.
+	 * 
+	 * @param theBuffer The buffer.
+	 * @param theFrom Index of the first byte.
+	 * @param theTo Index after the last byte.
+	 * @param theEnd True if theTo is the end of the trace.
+	 * @param theBase Offset within the file of the buffer's first byte, for error messages.
+	 * @param theSink Receives each record, or null.
+	 * @param theThreadedSink Receives each record and its thread, or null.
+	 * @return Index after the last line parsed.
+	 */
+	private static int parse(final ByteBuffer theBuffer, final int theFrom, final int theTo,
+			final boolean theEnd, final long theBase, final TraceSink theSink, 
+			final ThreadedTraceSink theThreadedSink) {
+		int start = theFrom;
+		while (start < theTo) {
+			int end = indexOf(theBuffer, '\n', start, theTo);
+			if (end == theTo && !theEnd) {
+				return start;
+			}
+			parseLine(theBuffer, start, end, theBase, theSink, theThreadedSink);
+			start = end + 1;
+		}
+		return theTo;
+	}
+	
+	/**
+	 * Parses a single line.
+	 * 
+	 * @param theBuffer The buffer holding the line.
+	 * @param theFrom Index of the line's first byte.
+	 * @param theTo Index of the line's ending.
+	 * @param theBase Offset within the file of the buffer's first byte.
+	 * @param theSink Receives the record, or null.
+	 * @param theThreadedSink Receives the record and its thread, or null.
+	 */
+	private static void parseLine(final ByteBuffer theBuffer, final int theFrom, 
+			final int theTo, final long theBase, final TraceSink theSink, 
+			final ThreadedTraceSink theThreadedSink) {
+		int end = theTo;
+		if (end > theFrom && theBuffer.get(end - 1) == '\r') {
+			end--;
+		}
+		if (end == theFrom) {
+			return;
+		}
+		int first = indexOf(theBuffer, ',', theFrom, end);
+		int second = indexOf(theBuffer, ',', first + 1, end);
+		if (second >= end) {
+			throw new NumberFormatException("Trace line at byte " + (theBase + theFrom) 
+					+ " has fewer than three fields");
+		}
+		int third = indexOf(theBuffer, ',', second + 1, end);
+		int iAddress = parseField(theBuffer, theFrom, first, theBase);
+		int ioValue = parseField(theBuffer, first + 1, second, theBase);
+		int dAddress = parseField(theBuffer, second + 1, third, theBase);
+		if (theSink != null) {
+			theSink.add(iAddress, ioValue, dAddress);
+		} else {
+			//a missing thread column reads as an empty field
+			int thread = third >= end ? -1 
+					: parseField(theBuffer, third + 1, indexOf(theBuffer, ',', third + 1, end), 
+							theBase);
+			theThreadedSink.add(thread, iAddress, ioValue, dAddress);
+		}
+	}
+	
+	/**
+	 * Decodes a decimal field, an empty field standing for -1.
+	 * 
+	 * @param theBuffer The buffer holding the field.
+	 * @param theFrom Index of the field's first byte.
+	 * @param theTo Index after the field's last byte.
+	 * @param theBase Offset within the file of the buffer's first byte.
+	 * @return The value of the field.
+	 * @throws NumberFormatException If the field is not an int.
+	 */
+	private static int parseField(final ByteBuffer theBuffer, final int theFrom, 
+			final int theTo, final long theBase) {
+		if (theFrom == theTo) {
+			return -1;
+		}
+		int i = theFrom;
+		boolean negative = theBuffer.get(i) == '-';
+		if (negative) {
+			i++;
+		}
+		if (i == theTo) {
+			throw malformed(theBase + theFrom);
+		}
+		long value = 0;
+		for (; i < theTo; i++) {
+			int digit = theBuffer.get(i) - '0';
+			if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+				throw malformed(theBase + theFrom);
+			}
+			value = value * 10 + digit;
+		}
+		value = negative ? -value : value;
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw malformed(theBase + theFrom);
+		}
+		return (int) value;
+	}
+	
+	/**
+	 * @param theOffset Offset within the file of the malformed field.
+	 * @return The exception reporting it.
+	 */
+	private static NumberFormatException malformed(final long theOffset) {
+		return new NumberFormatException("Malformed trace field at byte " + theOffset);
+	}
+	
+	/**
+	 * Finds a byte within part of a buffer.
+	 * 
+	 * @param theBuffer The buffer.
+	 * @param theByte The byte searched for.
+	 * @param theFrom Index searched from.
+	 * @param theTo Index searched to, exclusive.
+	 * @return Index of the byte, or theTo if it is not found.
+	 */
+	private static int indexOf(final ByteBuffer theBuffer, final char theByte, 
+			final int theFrom, final int theTo) {
+		int i = theFrom;
+		while (i < theTo && theBuffer.get(i) != theByte) {
+			i++;
+		}
+		return i;
+	}
+	
+	/**
+	 * Memory-maps and parses one chunk of a file.
+	 * 
+	 * @param theChannel The file.
+	 * @param theFrom Offset of the chunk, the start of a line.
+	 * @param theTo Offset after the chunk, the start of a line or the end of the file.
+	 * @return The records of the chunk.
+	 * @throws IOException If the chunk cannot be mapped.
+	 */
+	private static ArrayTrace parseChunk(final FileChannel theChannel, final long theFrom, 
+			final long theTo) throws IOException {
+		int length = (int) (theTo - theFrom);
+		ArrayTrace trace = new ArrayTrace(length / BYTES_PER_LINE);
+		if (length > 0) {
+			ByteBuffer chunk = theChannel.map(FileChannel.MapMode.READ_ONLY, theFrom, length);
+			parse(chunk, 0, length, true, theFrom, trace, null);
+		}
+		return trace;
+	}
+	
+	/**
+	 * Finds the start of the first line beginning at or after an offset.
+	 * 
+	 * @param theChannel The file.
+	 * @param theOffset The offset, greater than 0.
+	 * @param theSize The size of the file.
+	 * @return Offset of the line, or theSize if there is none.
+	 * @throws IOException If the file cannot be read.
+	 */
+	private static long lineStart(final FileChannel theChannel, final long theOffset, 
+			final long theSize) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		//a line starts at theOffset if the byte before it ends a line
+		long position = theOffset - 1;
+		while (position < theSize) {
+			buffer.clear();
+			int read = theChannel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			int newline = indexOf(buffer, '\n', 0, read);
+			if (newline < read) {
+				return position + newline + 1;
+			}
+			position += read;
+		}
+		return theSize;
+	}
+}
@@ -0,0 +1,97 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Priority queue of timed events for the discrete-event timing engine. Each event is the 
+ * time a CPU is next ready to issue, packed with the CPU's index into a single long so the 
+ * queue is a binary heap of primitives and never allocates once grown. Events due at the 
+ * same time come out in CPU order, keeping runs deterministic.
+ * 
+ * @author Erik Tedder
+ */
+public class EventQueue {
+	
+	/** Bits of each event holding the CPU's index. */
+	private static final int CPU_BITS = 16;
+	/** Most CPUs the queue can order. */
+	public static final int MAX_CPUS = 1 << CPU_BITS;
+	
+	/** The heap of events. */
+	private long[] heap;
+	/** Number of events queued. */
+	private int size;
+	
+	/**
+	 * Constructs an empty queue.
+	 * 
+	 * @param theCapacity The number of events expected, one per CPU.
+	 */
+	public EventQueue(final int theCapacity) {
+		heap = new long[Math.max(theCapacity, 1)];
+	}
+	
+	/**
+	 * Schedules a CPU.
+	 * 
+	 * @param theTime The cycle the CPU is ready at.
+	 * @param theCpu The index of the CPU, less than MAX_CPUS.
+	 * @throws IllegalArgumentException If the CPU index is out of range.
+	 */
+	public void add(final long theTime, final int theCpu) {
+		if (theCpu < 0 || theCpu >= MAX_CPUS) {
+			throw new IllegalArgumentException("CPU index " + theCpu + " out of range");
+		}
+		if (size == heap.length) {
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		long event = theTime << CPU_BITS | theCpu;
+		int i = size++;
+		while (i > 0 && heap[(i - 1) >> 1] > event) {
+			heap[i] = heap[(i - 1) >> 1];
+			i = (i - 1) >> 1;
+		}
+		heap[i] = event;
+	}
+	
+	/**
+	 * @return True if no events are queued.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * @return The time of the earliest event.
+	 */
+	public long peekTime() {
+		return heap[0] >>> CPU_BITS;
+	}
+	
+	/**
+	 * Removes the earliest event.
+	 * 
+	 * @return The index of its CPU.
+	 */
+	public int poll() {
+		int cpu = (int) (heap[0] & (MAX_CPUS - 1));
+		long last = heap[--size];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if (heap[child] >= last) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		return cpu;
+	}
+}
@@ -0,0 +1,29 @@
+package model;
+
+/**
+ * The inclusion policies of the hierarchy formed by each CPU's L1i, L1d and L2 and the
+ * shared L3.
+ *
+ * @author Erik Tedder
+ */
+public enum Inclusion {
+
+	/**
+	 * Non-inclusive non-exclusive, the simulator's original behaviour. Lines are filled into
+	 * L1, and L1 victims move to L2 and L2 victims to L3, but a line may be held at several
+	 * levels at once and nothing is invalidated when a level below evicts it.
+	 */
+	NINE,
+	/**
+	 * Every line held by a CPU's L1 is also held by its L2, and every line held by any L2 by
+	 * L3. Lines are filled into every level on the way to L1, and a line evicted from a
+	 * level is back-invalidated from the levels above it.
+	 */
+	INCLUSIVE,
+	/**
+	 * Each line is held by at most one of a CPU's levels and L3. Lines are filled into L1
+	 * alone and move down a level when evicted, while a hit in L2 or L3 moves the line up
+	 * into L1.
+	 */
+	EXCLUSIVE
+}
@@ -0,0 +1,67 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * True least recently used replacement. Every slot is stamped with the value of a counter 
+ * advanced on each hit and fill, so recording a use is a single store and the victim is the
+ * way of the set with the oldest stamp.
+ * 
+ * @author Erik Tedder
+ */
+public class LruReplacement implements ReplacementPolicy {
+	
+	/** The number of ways in each set. */
+	private final int numOfWays;
+	/** Time each slot was last used. */
+	private final long[] stamps;
+	/** The current time, advanced on every use. */
+	private long clock;
+	
+	/**
+	 * Constructs LRU bookkeeping for a cache.
+	 * 
+	 * @param theCacheSize Number of entries within the cache.
+	 * @param theNumOfWays The associativity of the cache.
+	 */
+	public LruReplacement(final int theCacheSize, final int theNumOfWays) {
+		numOfWays = theNumOfWays;
+		stamps = new long[theCacheSize];
+	}
+	
+	@Override
+	public void touch(final int theSlot) {
+		stamps[theSlot] = ++clock;
+	}
+	
+	@Override
+	public void fill(final int theSlot) {
+		stamps[theSlot] = ++clock;
+	}
+	
+	@Override
+	public int victim(final int theIndex) {
+		int victim = theIndex;
+		int end = theIndex + numOfWays;
+		for (int i = theIndex + 1; i < end; i++) {
+			if (stamps[i] < stamps[victim]) {
+				victim = i;
+			}
+		}
+		return victim;
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		Checkpoint.write(theOut, stamps);
+		theOut.writeLong(clock);
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		Checkpoint.read(theIn, stamps);
+		clock = theIn.readLong();
+	}
+}
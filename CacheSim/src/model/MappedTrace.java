@@ -0,0 +1,117 @@
+package model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Trace backed by a memory-mapped binary trace file (see TraceFile for the layout). Records 
+ * are read straight out of the mapping, so the size of a trace is bounded by the disk rather
+ * than the heap. Files larger than a single mapping can hold are mapped in several regions.
+ * 
+ * @author Erik Tedder
+ */
+public class MappedTrace implements Trace {
+
+	/** Largest number of records placed within a single mapped region. */
+	private static final int RECORDS_PER_REGION = Integer.MAX_VALUE / TraceFile.RECORD_SIZE;
+	
+	/** The mapped regions of the file. */
+	private final MappedByteBuffer[] regions;
+	/** Number of records within the file. */
+	private final long count;
+	
+	/**
+	 * Maps the passed binary trace file.
+	 * 
+	 * @param theFileName Name of the binary trace file.
+	 * @throws IOException If the file cannot be read or is not a binary trace.
+	 */
+	public MappedTrace(final String theFileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(theFileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			ByteBuffer header = ByteBuffer.allocate(TraceFile.HEADER_SIZE).order(TraceFile.ORDER);
+			while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+				//keep reading until the header is full
+			}
+			header.flip();
+			count = TraceFile.readHeader(header);
+			if (TraceFile.HEADER_SIZE + count * TraceFile.RECORD_SIZE > channel.size()) {
+				throw new IOException("Truncated trace file " + theFileName);
+			}
+			
+			regions = new MappedByteBuffer[(int) ((count + RECORDS_PER_REGION - 1) / RECORDS_PER_REGION)];
+			for (int i = 0; i < regions.length; i++) {
+				long first = (long) i * RECORDS_PER_REGION;
+				long records = Math.min(RECORDS_PER_REGION, count - first);
+				regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, 
+						TraceFile.HEADER_SIZE + first * TraceFile.RECORD_SIZE,
+						records * TraceFile.RECORD_SIZE);
+				regions[i].order(TraceFile.ORDER);
+			}
+		} finally {
+			//the mappings remain valid once the file is closed
+			file.close();
+		}
+	}
+	
+	@Override
+	public long size() {
+		return count;
+	}
+	
+	@Override
+	public TraceCursor cursor() {
+		return new Cursor();
+	}
+	
+	/**
+	 * Cursor reading records directly from the mapped regions.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private class Cursor implements TraceCursor {
+		/** Index of the region currently being read. */
+		private int region = -1;
+		/** This cursor's view of the current region. */
+		private ByteBuffer buffer;
+		/** Byte offset of the current record within the region. */
+		private int offset;
+		/** Records left before the end of the trace. */
+		private long remaining = count;
+		
+		@Override
+		public boolean next() {
+			if (remaining == 0) {
+				return false;
+			}
+			remaining--;
+			offset += TraceFile.RECORD_SIZE;
+			if (buffer == null || offset >= buffer.limit()) {
+				region++;
+				//each cursor reads through its own view so cursors never share buffer state
+				buffer = regions[region].duplicate().order(TraceFile.ORDER);
+				offset = 0;
+			}
+			return true;
+		}
+		
+		@Override
+		public int iAddress() {
+			return buffer.getInt(offset);
+		}
+		
+		@Override
+		public int ioValue() {
+			return buffer.getInt(offset + 4);
+		}
+		
+		@Override
+		public int dAddress() {
+			return buffer.getInt(offset + 8);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package model;
+
+/**
+ * The models of main memory a simulation can be timed with.
+ * 
+ * @author Erik Tedder
+ */
+public enum Memory {
+	
+	/** 
+	 * A fixed latency for each tier, every write costing the far tier's, the simulator's 
+	 * original behaviour. 
+	 */
+	FLAT {
+		@Override
+		public MemoryController create(final int theBoundary, final int theNearLatency, 
+				final int theFarLatency) {
+			return null;
+		}
+	},
+	/** A MemoryController per tier, with queues, banks, bandwidth and write combining. */
+	CONTROLLER {
+		@Override
+		public MemoryController create(final int theBoundary, final int theNearLatency, 
+				final int theFarLatency) {
+			return new MemoryController(theBoundary, theNearLatency, theFarLatency);
+		}
+	};
+	
+	/**
+	 * Creates the controller of this model.
+	 * 
+	 * @param theBoundary First address of the far tier.
+	 * @param theNearLatency Cycles to read the near tier.
+	 * @param theFarLatency Cycles to read the far tier.
+	 * @return The new controller, or null for FLAT.
+	 */
+	public abstract MemoryController create(int theBoundary, int theNearLatency, 
+			int theFarLatency);
+}
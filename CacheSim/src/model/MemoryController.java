@@ -0,0 +1,405 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Timing model of main memory's two tiers, each behind a controller of its own: the near
+ * tier holds addresses below a boundary and the far tier every other address. Requests are
+ * timed against the clock of the CPU making them, so the cost of one depends on every other
+ * CPU's traffic.
+ * 
+ * <p>Each tier has BANKS banks, consecutive ROW_SIZE rows being interleaved between them,
+ * and each bank keeps its last row open. A request to the open row costs the tier's latency
+ * less a third spent activating and precharging, while any other row costs the full latency
+ * and holds its bank for the activation. Every request then moves its BURST_SIZE bytes over
+ * the tier's channel, which carries one burst at a time, limiting the tier's bandwidth. At
+ * most QUEUE_DEPTH requests may be outstanding in each tier, later ones queueing for the
+ * earliest to complete. A request waits for its queue slot, bank and channel in turn, and
+ * the CPU stalls for that wait as well as for the access itself.
+ * 
+ * <p>Requests do not arrive in the order of their cycles except on the timed engine, as each
+ * CPU keeps its own clock. Every resource is therefore booked at the cycle of the request
+ * rather than after the last one serviced: a request only queues behind the requests
+ * outstanding at its cycle, only waits for a bank not issued a request since its cycle, and
+ * books its burst in a calendar of BUCKET_CYCLES buckets, each carrying as many bursts as
+ * its cycles allow. A CPU whose clock is behind the others' thereby contends only with the
+ * traffic of its own time.
+ * 
+ * <p>Writes to memory are posted into each tier's write-combining buffer of WRITE_BUFFER
+ * bursts, writes to a burst already buffered being combined with it, and the CPU carries on
+ * at once. Buffered bursts are issued in order in the background, at most one per burst's
+ * cycles, so only a CPU writing into a full buffer stalls, until its oldest burst has been
+ * issued. Writing through thereby costs bandwidth, and delays the reads behind it, rather
+ * than a full memory access per store.
+ * 
+ * @author Erik Tedder
+ */
+public class MemoryController implements Checkpointable {
+	
+	/** Number of tiers. */
+	public static final int TIERS = 2;
+	/** Tier holding addresses below the boundary. */
+	public static final int NEAR = 0;
+	/** Tier holding addresses from the boundary on. */
+	public static final int FAR = 1;
+	/** Names of the tiers, in order. */
+	public static final String[] TIER_NAMES = {"near", "far"};
+	/** Banks of each tier, a power of two. */
+	public static final int BANKS = 8;
+	/** Bytes of each row, a power of two. */
+	public static final int ROW_SIZE = 2048;
+	/** Bytes moved by each request, a power of two. */
+	public static final int BURST_SIZE = 64;
+	/** Cycles each tier's channel is busy moving a burst, bounding its bandwidth. */
+	public static final int[] BURST_CYCLES = {8, 32};
+	/** Most requests outstanding in each tier. */
+	public static final int QUEUE_DEPTH = 16;
+	/** Bursts held by each tier's write-combining buffer. */
+	public static final int WRITE_BUFFER = 8;
+	/** Cycles of each bucket of a channel's calendar. */
+	public static final int BUCKET_CYCLES = 256;
+	/** Buckets of a channel's calendar, reaching back over a million cycles. */
+	public static final int CALENDAR = 4096;
+	
+	/** Names of the statistics counted for each tier, in the order they are reported. */
+	public static final String[] STATISTICS = {"reads", "writes", "combined", "rowhits",
+		"rowmisses", "queuecycles"};
+	/** Reads serviced. */
+	private static final int READS = 0;
+	/** Bursts written to memory. */
+	private static final int WRITES = 1;
+	/** Writes combined into a burst already buffered. */
+	private static final int COMBINED = 2;
+	/** Requests to an open row. */
+	private static final int ROW_HITS = 3;
+	/** Requests activating a row. */
+	private static final int ROW_MISSES = 4;
+	/** Cycles CPUs waited for a queue slot, bank or channel. */
+	private static final int QUEUE_CYCLES = 5;
+	/** Row held by a bank with none open. */
+	private static final int NO_ROW = -1;
+	
+	/** First address of the far tier. */
+	private final int boundary;
+	/** The tiers. */
+	private final Tier[] tiers = new Tier[TIERS];
+	
+	/**
+	 * Constructs an idle controller, every row closed.
+	 * 
+	 * @param theBoundary First address of the far tier.
+	 * @param theNearLatency Cycles to read a closed row of the near tier.
+	 * @param theFarLatency Cycles to read a closed row of the far tier.
+	 */
+	public MemoryController(final int theBoundary, final int theNearLatency,
+			final int theFarLatency) {
+		boundary = theBoundary;
+		tiers[NEAR] = new Tier(theNearLatency, BURST_CYCLES[NEAR]);
+		tiers[FAR] = new Tier(theFarLatency, BURST_CYCLES[FAR]);
+	}
+	
+	/**
+	 * @param theAddress An address.
+	 * @return The tier holding the address.
+	 */
+	public int tier(final int theAddress) {
+		return theAddress < boundary ? NEAR : FAR;
+	}
+	
+	/**
+	 * Reads the burst holding an address.
+	 * 
+	 * @param theAddress The address read.
+	 * @param theCycle The requesting CPU's clock.
+	 * @return Cycles until the data arrives.
+	 */
+	public int read(final int theAddress, final long theCycle) {
+		Tier tier = tiers[tier(theAddress)];
+		synchronized (tier) {
+			tier.drain(theCycle);
+			tier.counts[READS].increment();
+			return (int) (tier.access(theAddress, theCycle, true) - theCycle);
+		}
+	}
+	
+	/**
+	 * Posts a write of the burst holding an address.
+	 * 
+	 * @param theAddress The address written.
+	 * @param theCycle The writing CPU's clock.
+	 * @return Cycles the CPU stalls until its write is buffered.
+	 */
+	public int write(final int theAddress, final long theCycle) {
+		Tier tier = tiers[tier(theAddress)];
+		synchronized (tier) {
+			tier.drain(theCycle);
+			return (int) (tier.post(theAddress / BURST_SIZE, theCycle) - theCycle);
+		}
+	}
+	
+	/**
+	 * @param theTier A tier, NEAR or FAR.
+	 * @param theStatistic Index of a statistic within STATISTICS.
+	 * @return The statistic's count for the tier.
+	 */
+	public long count(final int theTier, final int theStatistic) {
+		return tiers[theTier].counts[theStatistic].sum();
+	}
+	
+	/**
+	 * @param theTier A tier, NEAR or FAR.
+	 * @return Cycles the tier's channel has spent moving bursts.
+	 */
+	public long busyCycles(final int theTier) {
+		Tier tier = tiers[theTier];
+		return (tier.counts[READS].sum() + tier.counts[WRITES].sum()) * tier.burst;
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		for (Tier tier : tiers) {
+			synchronized (tier) {
+				Checkpoint.write(theOut, tier.rows);
+				Checkpoint.write(theOut, tier.bankIssued);
+				Checkpoint.write(theOut, tier.bankFree);
+				theOut.writeLong(tier.issued);
+				Checkpoint.write(theOut, tier.queueIssued);
+				Checkpoint.write(theOut, tier.queueDone);
+				theOut.writeInt(tier.queueHead);
+				Checkpoint.write(theOut, tier.buckets);
+				Checkpoint.write(theOut, tier.booked);
+				Checkpoint.write(theOut, tier.buffer);
+				Checkpoint.write(theOut, tier.posted);
+				theOut.writeInt(tier.bufferHead);
+				theOut.writeInt(tier.buffered);
+				for (StripedCounter count : tier.counts) {
+					Checkpoint.write(theOut, count);
+				}
+			}
+		}
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		for (Tier tier : tiers) {
+			synchronized (tier) {
+				Checkpoint.read(theIn, tier.rows);
+				Checkpoint.read(theIn, tier.bankIssued);
+				Checkpoint.read(theIn, tier.bankFree);
+				tier.issued = theIn.readLong();
+				Checkpoint.read(theIn, tier.queueIssued);
+				Checkpoint.read(theIn, tier.queueDone);
+				tier.queueHead = theIn.readInt();
+				Checkpoint.read(theIn, tier.buckets);
+				Checkpoint.read(theIn, tier.booked);
+				Checkpoint.read(theIn, tier.buffer);
+				Checkpoint.read(theIn, tier.posted);
+				tier.bufferHead = theIn.readInt();
+				tier.buffered = theIn.readInt();
+				for (StripedCounter count : tier.counts) {
+					Checkpoint.read(theIn, count);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The banks, channel, queue and write-combining buffer of one tier. Callers synchronize
+	 * on the tier.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private static class Tier {
+		/** Cycles to read a closed row. */
+		private final int latency;
+		/** Cycles to read the open row. */
+		private final int rowHitLatency;
+		/** Cycles a bank is held activating a row. */
+		private final int activation;
+		/** Cycles the channel is busy moving a burst. */
+		private final int burst;
+		/** Bursts the channel moves in each bucket of its calendar. */
+		private final int burstsPerBucket;
+		/** The row open in each bank. */
+		private final int[] rows = new int[BANKS];
+		/** Cycle each bank was last issued a request at. */
+		private final long[] bankIssued = new long[BANKS];
+		/** Cycle each bank is next free at. */
+		private final long[] bankFree = new long[BANKS];
+		/** Cycle the latest request was issued to its bank at. */
+		private long issued;
+		/** Cycle each of the latest QUEUE_DEPTH requests was issued at. */
+		private final long[] queueIssued = new long[QUEUE_DEPTH];
+		/** Cycle each of the latest QUEUE_DEPTH requests completes at. */
+		private final long[] queueDone = new long[QUEUE_DEPTH];
+		/** Index of the oldest request within the queue. */
+		private int queueHead;
+		/** Bucket of the calendar held by each of its slots. */
+		private final long[] buckets = new long[CALENDAR];
+		/** Bursts booked in each slot's bucket. */
+		private final int[] booked = new int[CALENDAR];
+		/** Bursts buffered to be written, oldest first. */
+		private final int[] buffer = new int[WRITE_BUFFER];
+		/** Cycle each buffered burst was posted at. */
+		private final long[] posted = new long[WRITE_BUFFER];
+		/** Index of the oldest burst within buffer. */
+		private int bufferHead;
+		/** Number of bursts buffered. */
+		private int buffered;
+		/** Statistics of the tier, indexed as STATISTICS. */
+		private final StripedCounter[] counts = new StripedCounter[STATISTICS.length];
+		
+		Tier(final int theLatency, final int theBurst) {
+			latency = theLatency;
+			activation = theLatency / 3;
+			rowHitLatency = theLatency - activation;
+			burst = theBurst;
+			burstsPerBucket = BUCKET_CYCLES / theBurst;
+			Arrays.fill(rows, NO_ROW);
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = new StripedCounter();
+			}
+		}
+		
+		/**
+		 * Times a request through the queue, its bank and the channel.
+		 * 
+		 * @param theAddress An address of the burst requested.
+		 * @param theCycle The cycle the request is made at.
+		 * @param theWaited Whether a CPU waits for the data, its queueing being counted.
+		 * @return The cycle the request completes at, having been issued at issued.
+		 */
+		private long access(final int theAddress, final long theCycle, 
+				final boolean theWaited) {
+			int row = theAddress / ROW_SIZE;
+			int bank = row & (BANKS - 1);
+			long start = queueSlot(theCycle);
+			//a bank issued a request since this one was made is taken to have served it first
+			if (start >= bankIssued[bank]) {
+				start = Math.max(start, bankFree[bank]);
+			}
+			issued = start;
+			bankIssued[bank] = start;
+			int access;
+			if (rows[bank] == row) {
+				counts[ROW_HITS].increment();
+				access = rowHitLatency;
+				bankFree[bank] = start;
+			} else {
+				counts[ROW_MISSES].increment();
+				access = latency;
+				rows[bank] = row;
+				bankFree[bank] = start + activation;
+			}
+			long done = book(start + access);
+			queueIssued[queueHead] = start;
+			queueDone[queueHead] = done;
+			queueHead = (queueHead + 1) % QUEUE_DEPTH;
+			if (theWaited) {
+				counts[QUEUE_CYCLES].add(done - theCycle - access);
+			}
+			return done;
+		}
+		
+		/**
+		 * @param theCycle The cycle a request is made at.
+		 * @return The first cycle from then on at which fewer than QUEUE_DEPTH of the latest 
+		 * requests are outstanding.
+		 */
+		private long queueSlot(final long theCycle) {
+			long earliest = Long.MAX_VALUE;
+			for (int i = 0; i < QUEUE_DEPTH; i++) {
+				if (queueIssued[i] > theCycle || queueDone[i] <= theCycle) {
+					return theCycle;
+				}
+				earliest = Math.min(earliest, queueDone[i]);
+			}
+			return earliest;
+		}
+		
+		/**
+		 * Books a burst in the channel's calendar, in the first bucket from the one its data
+		 * is ready in with room for it.
+		 * 
+		 * @param theReady The cycle the burst's data is ready to move at.
+		 * @return The cycle the burst has been moved at.
+		 */
+		private long book(final long theReady) {
+			for (long bucket = theReady / BUCKET_CYCLES; ; bucket++) {
+				int slot = (int) (bucket % CALENDAR);
+				if (buckets[slot] > bucket) {
+					//older than the calendar reaches, nothing left to contend with
+					return theReady;
+				}
+				if (buckets[slot] < bucket) {
+					buckets[slot] = bucket;
+					booked[slot] = 0;
+				}
+				if (booked[slot] < burstsPerBucket) {
+					booked[slot]++;
+					return Math.max(theReady, bucket * BUCKET_CYCLES + booked[slot] * burst);
+				}
+			}
+		}
+		
+		/**
+		 * Buffers a burst to be written, first issuing the oldest if the buffer is full.
+		 * 
+		 * @param theBurst The burst written.
+		 * @param theCycle The cycle the write is made at.
+		 * @return The cycle the write is buffered at.
+		 */
+		private long post(final int theBurst, final long theCycle) {
+			for (int i = 0; i < buffered; i++) {
+				if (buffer[(bufferHead + i) % WRITE_BUFFER] == theBurst) {
+					counts[COMBINED].increment();
+					return theCycle;
+				}
+			}
+			long cycle = theCycle;
+			if (buffered == WRITE_BUFFER) {
+				cycle = writeOldest(theCycle);
+				counts[QUEUE_CYCLES].add(cycle - theCycle);
+			}
+			buffer[(bufferHead + buffered) % WRITE_BUFFER] = theBurst;
+			posted[(bufferHead + buffered) % WRITE_BUFFER] = cycle;
+			buffered++;
+			return cycle;
+		}
+		
+		/**
+		 * Issues the buffered bursts that would have been written in the background before
+		 * a request, one a burst's cycles after the request issued before it.
+		 * 
+		 * @param theCycle The cycle of the request.
+		 */
+		private void drain(final long theCycle) {
+			while (buffered != 0) {
+				long cycle = Math.max(posted[bufferHead], issued + burst);
+				if (cycle >= theCycle) {
+					return;
+				}
+				writeOldest(cycle);
+			}
+		}
+		
+		/**
+		 * Issues the oldest buffered burst to memory.
+		 * 
+		 * @param theCycle The cycle the write is issued from.
+		 * @return The cycle the write leaves the buffer, once issued to its bank.
+		 */
+		private long writeOldest(final long theCycle) {
+			int written = buffer[bufferHead];
+			bufferHead = (bufferHead + 1) % WRITE_BUFFER;
+			buffered--;
+			counts[WRITES].increment();
+			//nothing waits for the data written
+			access(written * BURST_SIZE, theCycle, false);
+			return issued;
+		}
+	}
+}
@@ -1,22 +1,38 @@
-package model;
-
-public class MemoryInfo {
-	
-	protected int iAddress;
-	protected int ioValue;
-	protected int dAddress;
-	
-	public MemoryInfo(final int theInstructionAddress, final int theIOValue, 
-			final int theDataAddress) {
-		iAddress = theInstructionAddress;
-		ioValue = theIOValue;
-		dAddress = theDataAddress;
-	}
-	
-	public MemoryInfo() {
-		iAddress = -1;
-		ioValue = -1;
-		dAddress = -1;
-	}
-
-}
+package model;
+
+public class MemoryInfo {
+	
+	protected int iAddress;
+	protected int ioValue;
+	protected int dAddress;
+	
+	public MemoryInfo(final int theInstructionAddress, final int theIOValue, 
+			final int theDataAddress) {
+		iAddress = theInstructionAddress;
+		ioValue = theIOValue;
+		dAddress = theDataAddress;
+	}
+	
+	public MemoryInfo() {
+		iAddress = -1;
+		ioValue = -1;
+		dAddress = -1;
+	}
+	
+	/**
+	 * Overwrites this MemoryInfo so a single instance can be reused between records.
+	 * 
+	 * @param theInstructionAddress The instruction address.
+	 * @param theIOValue The I/O value.
+	 * @param theDataAddress The data address.
+	 * @return This MemoryInfo.
+	 */
+	public MemoryInfo set(final int theInstructionAddress, final int theIOValue, 
+			final int theDataAddress) {
+		iAddress = theInstructionAddress;
+		ioValue = theIOValue;
+		dAddress = theDataAddress;
+		return this;
+	}
+
+}
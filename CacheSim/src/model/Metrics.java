@@ -0,0 +1,195 @@
+package model;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the statistics of a running Simulator. The simulator is registered with the 
+ * platform MBean server under "model:type=Simulator,id=" followed by a sequence number, and 
+ * a daemon thread takes a snapshot every period, printing the hits and misses per million
+ * references performed since the previous one. Snapshots read the simulator's 
+ * StripedCounters without stopping its CPUs, so a long simulation may be watched as it 
+ * progresses. The MBean's attributes are read from the latest snapshot, which is still
+ * taken every PERIOD when no intervals are printed.
+ * 
+ * @author Erik Tedder
+ */
+public class Metrics implements MetricsMBean, Runnable {
+	
+	/** Default milliseconds between intervals. */
+	public static final long PERIOD = 1000;
+	/** Number of simulators published, numbering their MBeans. */
+	private static int published;
+	
+	/** The simulator published. */
+	private final Simulator simulator;
+	/** Milliseconds between printed intervals, 0 for none. */
+	private final long period;
+	/** Name registered under, null if registration failed. */
+	private ObjectName name;
+	/** The thread taking snapshots, null once stopped. */
+	private Thread sampler;
+	
+	/** The latest snapshot. */
+	private volatile SimResult latest;
+	/** Hits per million references during the last interval. */
+	private volatile long intervalHits;
+	/** Misses per million references during the last interval. */
+	private volatile long intervalMisses;
+	
+	/**
+	 * Constructs the metrics of a simulator, published once started.
+	 * 
+	 * @param theSimulator The simulator.
+	 * @param thePeriod Milliseconds between printed intervals, or 0 to only publish the 
+	 * MBean.
+	 */
+	public Metrics(final Simulator theSimulator, final long thePeriod) {
+		simulator = theSimulator;
+		period = thePeriod;
+		latest = theSimulator.snapshot();
+	}
+	
+	/**
+	 * Registers the MBean and starts taking snapshots.
+	 */
+	public void start() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			synchronized (Metrics.class) {
+				name = new ObjectName("model:type=Simulator,id=" + published++);
+			}
+			server.registerMBean(this, name);
+		} catch (JMException e) {
+			System.err.println("ERROR REGISTERING METRICS: " + e.getMessage());
+			name = null;
+		}
+		sampler = new Thread(this, "metrics");
+		sampler.setDaemon(true);
+		sampler.start();
+	}
+	
+	/**
+	 * Stops taking snapshots and unregisters the MBean.
+	 */
+	public void stop() {
+		if (sampler != null) {
+			sampler.interrupt();
+			sampler = null;
+		}
+		if (name != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			} catch (JMException e) {
+				System.err.println("ERROR UNREGISTERING METRICS: " + e.getMessage());
+			}
+			name = null;
+		}
+	}
+	
+	/**
+	 * Takes a snapshot every period, or every PERIOD if none, until interrupted.
+	 */
+	@Override
+	public void run() {
+		long started = System.currentTimeMillis();
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				Thread.sleep(period > 0 ? period : PERIOD);
+				sample(System.currentTimeMillis() - started);
+			}
+		} catch (InterruptedException e) {
+			//stopped
+		}
+	}
+	
+	/**
+	 * Takes a snapshot, printing the rates since the previous one if printing intervals.
+	 * 
+	 * @param theElapsed Milliseconds since sampling started.
+	 */
+	private void sample(final long theElapsed) {
+		SimResult previous = latest;
+		SimResult current = simulator.snapshot();
+		latest = current;
+		long references = current.references - previous.references;
+		intervalHits = perMillion(current.hits() - previous.hits(), references);
+		intervalMisses = perMillion(current.misses() - previous.misses(), references);
+		if (period > 0) {
+			System.out.format("[%6.1fs] References %d Hits/M %d Misses/M %d\n", 
+					theElapsed / 1000.0, current.references, intervalHits, intervalMisses);
+		}
+	}
+	
+	/**
+	 * @param theCount An event count.
+	 * @param theReferences The references the events occurred during.
+	 * @return The events per million references, 0 if there were no references.
+	 */
+	private static long perMillion(final long theCount, final long theReferences) {
+		return theReferences == 0 ? 0 : theCount * 1000000 / theReferences;
+	}
+	
+	@Override
+	public long getReferences() {
+		return latest.references;
+	}
+
+	@Override
+	public long getL1Hits() {
+		return latest.l1Hits;
+	}
+
+	@Override
+	public long getL1Misses() {
+		return latest.l1Misses;
+	}
+
+	@Override
+	public long getL2Hits() {
+		return latest.l2Hits;
+	}
+
+	@Override
+	public long getL2Misses() {
+		return latest.l2Misses;
+	}
+
+	@Override
+	public long getL3Hits() {
+		return latest.l3Hits;
+	}
+
+	@Override
+	public long getL3Misses() {
+		return latest.l3Misses;
+	}
+
+	@Override
+	public float getHitPercentage() {
+		return latest.hitPercentage();
+	}
+
+	@Override
+	public long getCycles() {
+		return latest.cycles;
+	}
+
+	@Override
+	public long getMakespan() {
+		return latest.makespan;
+	}
+
+	@Override
+	public long getIntervalHitsPerMillion() {
+		return intervalHits;
+	}
+
+	@Override
+	public long getIntervalMissesPerMillion() {
+		return intervalMisses;
+	}
+}
@@ -0,0 +1,47 @@
+package model;
+
+/**
+ * The management interface of a running simulation, as published over JMX by Metrics. 
+ * Every attribute is read from the latest snapshot of the simulation's statistics, so may
+ * be watched live from a console such as jconsole.
+ * 
+ * @author Erik Tedder
+ */
+public interface MetricsMBean {
+	
+	/** @return References performed by all CPUs so far. */
+	long getReferences();
+	
+	/** @return L1 hits so far. */
+	long getL1Hits();
+	
+	/** @return L1 misses so far. */
+	long getL1Misses();
+	
+	/** @return L2 hits so far. */
+	long getL2Hits();
+	
+	/** @return L2 misses so far. */
+	long getL2Misses();
+	
+	/** @return L3 hits so far. */
+	long getL3Hits();
+	
+	/** @return L3 misses so far. */
+	long getL3Misses();
+	
+	/** @return Percentage of lookups so far that hit. */
+	float getHitPercentage();
+	
+	/** @return Cycles spent on misses so far. */
+	long getCycles();
+	
+	/** @return Clock of the slowest CPU so far. */
+	long getMakespan();
+	
+	/** @return Hits per million references during the last interval. */
+	long getIntervalHitsPerMillion();
+	
+	/** @return Misses per million references during the last interval. */
+	long getIntervalMissesPerMillion();
+}
@@ -0,0 +1,53 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Next-line prefetching: each miss prefetches the degree lines following the line missed.
+ * 
+ * @author Erik Tedder
+ */
+public class NextLinePrefetcher implements Prefetcher {
+	
+	/** Bytes in each line. */
+	private final int lineSize;
+	/** Lines prefetched on each miss. */
+	private final int degree;
+	
+	/**
+	 * Constructs a next-line prefetcher.
+	 * 
+	 * @param theLineSize Bytes in each line, a power of two.
+	 * @param theDegree Lines prefetched on each miss.
+	 */
+	public NextLinePrefetcher(final int theLineSize, final int theDegree) {
+		lineSize = theLineSize;
+		degree = theDegree;
+	}
+	
+	@Override
+	public int miss(final int thePc, final int theAddress, final int[] theTargets) {
+		int line = theAddress & -lineSize;
+		for (int i = 0; i < degree; i++) {
+			theTargets[i] = line + (i + 1) * lineSize;
+		}
+		return degree;
+	}
+	
+	@Override
+	public int degree() {
+		return degree;
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		//nothing is learnt
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		//nothing is learnt
+	}
+}
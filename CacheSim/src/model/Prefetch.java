@@ -0,0 +1,47 @@
+package model;
+
+/**
+ * The prefetchers a CPU can be built with.
+ * 
+ * @author Erik Tedder
+ */
+public enum Prefetch {
+	
+	/** No prefetching, the simulator's original behaviour. */
+	NONE {
+		@Override
+		public Prefetcher create(final int theLineSize, final int theDegree) {
+			return null;
+		}
+	},
+	/** The lines following each line missed. */
+	NEXT_LINE {
+		@Override
+		public Prefetcher create(final int theLineSize, final int theDegree) {
+			return new NextLinePrefetcher(theLineSize, theDegree);
+		}
+	},
+	/** A constant stride learnt for each instruction. */
+	STRIDE {
+		@Override
+		public Prefetcher create(final int theLineSize, final int theDegree) {
+			return new StridePrefetcher(theLineSize, theDegree);
+		}
+	},
+	/** The lines ahead of misses moving through memory in one direction. */
+	STREAM {
+		@Override
+		public Prefetcher create(final int theLineSize, final int theDegree) {
+			return new StreamPrefetcher(theLineSize, theDegree);
+		}
+	};
+	
+	/**
+	 * Creates a prefetcher of this kind.
+	 * 
+	 * @param theLineSize Bytes in each line of the cache prefetched into.
+	 * @param theDegree The most addresses prefetched on a single miss.
+	 * @return The new prefetcher, or null for NONE.
+	 */
+	public abstract Prefetcher create(int theLineSize, int theDegree);
+}
@@ -0,0 +1,27 @@
+package model;
+
+/**
+ * Predicts the addresses a CPU will reference next, so they can be fetched into its L2 ahead
+ * of demand. A prefetcher is trained on every reference missing L1 and keeps its own tables
+ * in primitive arrays sized at construction, so training never allocates. A prefetcher 
+ * saves its tables into checkpoints, a prefetcher of the same kind and degree restoring them.
+ * 
+ * @author Erik Tedder
+ */
+public interface Prefetcher extends Checkpointable {
+	
+	/**
+	 * Trains on a reference that missed L1, choosing the addresses to prefetch.
+	 * 
+	 * @param thePc The instruction address of the reference.
+	 * @param theAddress The address missed.
+	 * @param theTargets Array of at least degree() ints to copy the addresses into.
+	 * @return The number of addresses to prefetch.
+	 */
+	int miss(int thePc, int theAddress, int[] theTargets);
+	
+	/**
+	 * @return The most addresses a single miss prefetches.
+	 */
+	int degree();
+}
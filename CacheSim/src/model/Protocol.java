@@ -0,0 +1,163 @@
+package model;
+
+/**
+ * The coherence protocols keeping the CPUs' caches coherent, each a table-driven state
+ * machine over the states of Cache. Every fill, write, snoop and invalidation of a line in
+ * a CPU's caches moves it to the state its protocol's table gives.
+ *
+ * <p>A protocol is written as a row of entries for each state of Cache, in the order of
+ * Cache.STATE_NAMES, and a column for each event. Each entry names the next state by its
+ * letter, followed by s if a snooped line supplies its data, w if it is written back and o
+ * if a write must invalidate the other CPUs' copies. The rows are built into a table
+ * holding an entry for every state and event, indexed by state &lt;&lt; EVENT_BITS | event.
+ * Each entry is the next state in its low bits, together with the actions the transition
+ * takes: SUPPLY if a snooped line supplies its data to the requester, WRITE_BACK if it is
+ * written back to memory, and INVALIDATE_OTHERS if a write must invalidate the other CPUs'
+ * copies. Looking a transition up is therefore a shift, an or and an array read whatever
+ * the protocol, with no branching on states.
+ *
+ * <p>Every protocol lets a line held Modified, Exclusive or Shared supply a snooped read.
+ * MOESI snoops a Modified line into Owned, which goes on supplying the data without writing
+ * it back. MESIF fills a line supplied by, or alongside, other CPUs into Forward, which
+ * alone of the sharers supplies it, the newest copy taking over the role. A read only
+ * Shared copies hold is then fetched from memory. Under every protocol, a Modified or 
+ * Owned line invalidated by another CPU's write is written back first.
+ *
+ * @author Erik Tedder
+ */
+public enum Protocol {
+
+	/** Modified, Exclusive, Shared and Invalid, writing back snooped Modified lines. */
+	MESI("MESI",
+		//FILL FILL_SHARED WRITE SNOOP INVALIDATE
+		"M     M           M     Ssw   Iw", //M
+		"E     E           Mo    Ss    I", //E
+		"S     S           Mo    Ss    I", //S
+		"E     S           M     I     I", //I
+		"O     O           Mo    Os    Iw", //O, unused
+		"F     F           Mo    Ss    I"  //F, unused
+	),
+	/** MESI with Owned, snooped Modified lines supplying their data without writing back. */
+	MOESI("MOESI",
+		//FILL FILL_SHARED WRITE SNOOP INVALIDATE
+		"M     M           M     Os    Iw", //M
+		"E     E           Mo    Ss    I", //E
+		"S     S           Mo    Ss    I", //S
+		"E     S           M     I     I", //I
+		"O     O           Mo    Os    Iw", //O
+		"F     F           Mo    Ss    I"  //F, unused
+	),
+	/** MESI with Forward, a single sharer supplying snooped reads. */
+	MESIF("MESIF",
+		//FILL FILL_SHARED WRITE SNOOP INVALIDATE
+		"M     M           M     Ssw   Iw", //M
+		"E     E           Mo    Ss    I", //E
+		"S     S           Mo    S     I", //S
+		"E     F           M     I     I", //I
+		"O     O           Mo    Os    Iw", //O, unused
+		"F     F           Mo    Ss    I"  //F
+	);
+
+	/** A line is filled that no other CPU holds. */
+	public static final int FILL = 0;
+	/** A line is filled that other CPUs hold. */
+	public static final int FILL_SHARED = 1;
+	/** The CPU holding a line writes to it. */
+	public static final int WRITE = 2;
+	/** Another CPU reads a line held. */
+	public static final int SNOOP = 3;
+	/** Another CPU writes to a line held. */
+	public static final int INVALIDATE = 4;
+	/** Bits of a table index holding the event. */
+	public static final int EVENT_BITS = 3;
+
+	/** Mask of an entry's next state. */
+	private static final int STATE_MASK = 0x7;
+	/** Action of a snooped line supplying its data. */
+	public static final int SUPPLY = 0x8;
+	/** Action of a snooped or invalidated line being written back to memory. */
+	public static final int WRITE_BACK = 0x10;
+	/** Action of a write invalidating the other CPUs' copies. */
+	public static final int INVALIDATE_OTHERS = 0x20;
+
+	/** Name of each state used, in the order they are reported. */
+	private final String stateNames;
+	/** The transition table, indexed by state << EVENT_BITS | event. */
+	private final byte[] table = new byte[(STATE_MASK + 1) << EVENT_BITS];
+
+	/**
+	 * Builds a protocol's table. Events beyond INVALIDATE leave a line unchanged, and
+	 * EMPTY slots, whose state masks to STATE_MASK, take Invalid's transitions.
+	 *
+	 * @param theStateNames Name of each state used, one of Cache.STATE_NAMES each.
+	 * @param theRows The entries of each state's events, separated by spaces.
+	 */
+	private Protocol(final String theStateNames, final String... theRows) {
+		stateNames = theStateNames;
+		for (int state = 0; state <= STATE_MASK; state++) {
+			String[] row = theRows[state < theRows.length ? state : Cache.INVALID].split(" +");
+			for (int event = 0; event < 1 << EVENT_BITS; event++) {
+				table[state << EVENT_BITS | event] = (byte) (event < row.length 
+						? parse(row[event]) : state < theRows.length ? state : Cache.INVALID);
+			}
+		}
+	}
+
+	/**
+	 * @param theEntry An entry of a row, the next state's letter followed by its actions.
+	 * @return The entry as held in the table.
+	 * @throws IllegalArgumentException If theEntry names no state or action.
+	 */
+	private static int parse(final String theEntry) {
+		int entry = Cache.STATE_NAMES.indexOf(theEntry.charAt(0));
+		if (entry < 0) {
+			throw new IllegalArgumentException("No state " + theEntry.charAt(0));
+		}
+		for (int i = 1; i < theEntry.length(); i++) {
+			switch (theEntry.charAt(i)) {
+			case 's': entry |= SUPPLY; break;
+			case 'w': entry |= WRITE_BACK; break;
+			case 'o': entry |= INVALIDATE_OTHERS; break;
+			default: throw new IllegalArgumentException("No action " + theEntry.charAt(i));
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * @param theState The state of a line.
+	 * @param theEvent The event befalling it.
+	 * @return The table's entry, the next state masked with any actions taken.
+	 */
+	public int entry(final byte theState, final int theEvent) {
+		return table[(theState & STATE_MASK) << EVENT_BITS | theEvent];
+	}
+
+	/**
+	 * @param theState The state of a line.
+	 * @param theEvent The event befalling it.
+	 * @return The line's next state.
+	 */
+	public byte next(final byte theState, final int theEvent) {
+		return (byte) (entry(theState, theEvent) & STATE_MASK);
+	}
+
+	/**
+	 * @param theEntry An entry of the table, as from entry().
+	 * @return The entry's next state.
+	 */
+	public static byte state(final int theEntry) {
+		return (byte) (theEntry & STATE_MASK);
+	}
+
+	/**
+	 * @return The states this protocol uses, in the order they are reported.
+	 */
+	public byte[] states() {
+		byte[] states = new byte[stateNames.length()];
+		for (int i = 0; i < states.length; i++) {
+			states[i] = (byte) Cache.STATE_NAMES.indexOf(stateNames.charAt(i));
+		}
+		return states;
+	}
+}
@@ -0,0 +1,84 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Tree pseudo-LRU replacement. Each set keeps a binary tree of numOfWays - 1 bits packed into
+ * a long, node n having children 2n and 2n + 1 and bit 0 unused. Each bit points towards the
+ * half of its subtree that was used less recently, so a use flips the bits along one path and
+ * finding the victim follows one path, both in log2(numOfWays) steps.
+ * 
+ * @author Erik Tedder
+ */
+public class PseudoLruReplacement implements ReplacementPolicy {
+	
+	/** Most ways a set's tree can track. */
+	public static final int MAX_WAYS = 64;
+	
+	/** Shift turning a slot into its set. */
+	private final int waysShift;
+	/** The tree of each set. */
+	private final long[] trees;
+	
+	/**
+	 * Constructs pseudo-LRU bookkeeping for a cache.
+	 * 
+	 * @param theCacheSize Number of entries within the cache.
+	 * @param theNumOfWays The associativity of the cache, a power of two.
+	 * @throws IllegalArgumentException If theNumOfWays is larger than MAX_WAYS.
+	 */
+	public PseudoLruReplacement(final int theCacheSize, final int theNumOfWays) {
+		if (theNumOfWays > MAX_WAYS) {
+			throw new IllegalArgumentException("Pseudo-LRU supports at most " + MAX_WAYS 
+					+ " ways");
+		}
+		waysShift = Integer.numberOfTrailingZeros(theNumOfWays);
+		trees = new long[theCacheSize >> waysShift];
+	}
+	
+	@Override
+	public void touch(final int theSlot) {
+		int set = theSlot >> waysShift;
+		long tree = trees[set];
+		int node = 1;
+		for (int level = waysShift - 1; level >= 0; level--) {
+			int right = (theSlot >> level) & 1;
+			//point the node away from the half just used
+			if (right == 1) {
+				tree &= ~(1L << node);
+			} else {
+				tree |= 1L << node;
+			}
+			node = (node << 1) | right;
+		}
+		trees[set] = tree;
+	}
+	
+	@Override
+	public void fill(final int theSlot) {
+		touch(theSlot);
+	}
+	
+	@Override
+	public int victim(final int theIndex) {
+		long tree = trees[theIndex >> waysShift];
+		int node = 1;
+		for (int level = 0; level < waysShift; level++) {
+			node = (node << 1) | (int) ((tree >> node) & 1);
+		}
+		//the leaves below the last level are the ways of the set
+		return theIndex + node - (1 << waysShift);
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		Checkpoint.write(theOut, trees);
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		Checkpoint.read(theIn, trees);
+	}
+}
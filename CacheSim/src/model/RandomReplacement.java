@@ -0,0 +1,55 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Random replacement, evicting a uniformly chosen way of the set.
+ * 
+ * @author Erik Tedder
+ */
+public class RandomReplacement implements ReplacementPolicy {
+	
+	/** The number of ways in each set. */
+	private final int numOfWays;
+	/** Random number generator choosing the victims. */
+	private final Random r;
+	
+	/**
+	 * Constructs random replacement for a cache.
+	 * 
+	 * @param theNumOfWays The associativity of the cache.
+	 * @param theRandom Random number generator choosing the victims.
+	 */
+	public RandomReplacement(final int theNumOfWays, final Random theRandom) {
+		numOfWays = theNumOfWays;
+		r = theRandom;
+	}
+	
+	@Override
+	public void touch(final int theSlot) {
+		//recency is not tracked
+	}
+	
+	@Override
+	public void fill(final int theSlot) {
+		//recency is not tracked
+	}
+	
+	@Override
+	public int victim(final int theIndex) {
+		return theIndex + r.nextInt(numOfWays);
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		//the generator is shared with the cache's owner, which saves it
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		//the generator is shared with the cache's owner, which restores it
+	}
+}
@@ -0,0 +1,63 @@
+package model;
+
+import java.util.Random;
+
+/**
+ * The replacement policies a Cache can be built with.
+ * 
+ * @author Erik Tedder
+ */
+public enum Replacement {
+	
+	/** True least recently used. */
+	LRU {
+		@Override
+		public ReplacementPolicy create(final int theCacheSize, final int theNumOfWays, 
+				final Random theRandom) {
+			return new LruReplacement(theCacheSize, theNumOfWays);
+		}
+	},
+	/** Tree pseudo-LRU. */
+	PLRU {
+		@Override
+		public ReplacementPolicy create(final int theCacheSize, final int theNumOfWays, 
+				final Random theRandom) {
+			return new PseudoLruReplacement(theCacheSize, theNumOfWays);
+		}
+	},
+	/** Static re-reference interval prediction. */
+	SRRIP {
+		@Override
+		public ReplacementPolicy create(final int theCacheSize, final int theNumOfWays, 
+				final Random theRandom) {
+			return new RripReplacement(theCacheSize, theNumOfWays, false);
+		}
+	},
+	/** Bimodal re-reference interval prediction. */
+	BRRIP {
+		@Override
+		public ReplacementPolicy create(final int theCacheSize, final int theNumOfWays, 
+				final Random theRandom) {
+			return new RripReplacement(theCacheSize, theNumOfWays, true);
+		}
+	},
+	/** A uniformly random way, the simulator's original behaviour. */
+	RANDOM {
+		@Override
+		public ReplacementPolicy create(final int theCacheSize, final int theNumOfWays, 
+				final Random theRandom) {
+			return new RandomReplacement(theNumOfWays, theRandom);
+		}
+	};
+	
+	/**
+	 * Creates the bookkeeping for a cache using this policy.
+	 * 
+	 * @param theCacheSize Number of entries within the cache.
+	 * @param theNumOfWays The associativity of the cache.
+	 * @param theRandom Random number generator for policies choosing at random.
+	 * @return The new policy.
+	 */
+	public abstract ReplacementPolicy create(int theCacheSize, int theNumOfWays, 
+			Random theRandom);
+}
@@ -0,0 +1,34 @@
+package model;
+
+/**
+ * Chooses which way of a set a Cache evicts. A policy keeps its own bookkeeping for every slot
+ * of the cache in primitive arrays sized at construction, so recording hits and fills and 
+ * choosing victims never allocates. A policy saves that bookkeeping into checkpoints, a
+ * policy of the same size restoring it.
+ * 
+ * @author Erik Tedder
+ */
+public interface ReplacementPolicy extends Checkpointable {
+	
+	/**
+	 * Records a hit on a slot.
+	 * 
+	 * @param theSlot The slot hit.
+	 */
+	void touch(int theSlot);
+	
+	/**
+	 * Records an item being inserted into a slot.
+	 * 
+	 * @param theSlot The slot filled.
+	 */
+	void fill(int theSlot);
+	
+	/**
+	 * Chooses the slot to evict from a full set.
+	 * 
+	 * @param theIndex The first slot of the set.
+	 * @return The slot to evict.
+	 */
+	int victim(int theIndex);
+}
@@ -0,0 +1,60 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * A Random whose state can be checkpointed. java.util.Random keeps its seed private, so this
+ * generator runs the same linear congruential generator, as specified by Random, on a seed 
+ * of its own. Given the same seed it produces exactly the same numbers as Random, so runs 
+ * are unchanged by using it.
+ * 
+ * @author Erik Tedder
+ */
+public class RestorableRandom extends Random implements Checkpointable {
+	
+	/** Serial version, as Random is Serializable. */
+	private static final long serialVersionUID = 1L;
+	/** Multiplier of the generator. */
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	/** Increment of the generator. */
+	private static final long ADDEND = 0xBL;
+	/** Mask of the generator's 48 bits of state. */
+	private static final long MASK = (1L << 48) - 1;
+	
+	/** The generator's state. Not initialised here, as Random's constructor sets it. */
+	private long seed;
+	
+	/**
+	 * Constructs a generator.
+	 * 
+	 * @param theSeed The initial seed.
+	 */
+	public RestorableRandom(final long theSeed) {
+		super(theSeed);
+	}
+	
+	@Override
+	public synchronized void setSeed(final long theSeed) {
+		super.setSeed(theSeed);
+		seed = (theSeed ^ MULTIPLIER) & MASK;
+	}
+	
+	@Override
+	protected int next(final int theBits) {
+		seed = (seed * MULTIPLIER + ADDEND) & MASK;
+		return (int) (seed >>> (48 - theBits));
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		theOut.writeLong(seed);
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		seed = theIn.readLong();
+	}
+}
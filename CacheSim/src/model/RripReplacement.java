@@ -0,0 +1,97 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Re-reference interval prediction (RRIP) replacement with 2-bit prediction values. A hit 
+ * predicts a near re-reference, and the victim is the first way predicted to be re-referenced
+ * in the distant future, every way of the set being aged until one is. Static RRIP inserts 
+ * items with a long interval; bimodal RRIP inserts with a distant interval but for one fill
+ * in every BIMODAL_PERIOD, which keeps scanning traces from flushing the cache.
+ * 
+ * @author Erik Tedder
+ */
+public class RripReplacement implements ReplacementPolicy {
+	
+	/** Prediction of an item being re-referenced in the distant future. */
+	public static final byte DISTANT = 3;
+	/** Prediction of an item being re-referenced after a long interval. */
+	public static final byte LONG = DISTANT - 1;
+	/** Prediction of an item being re-referenced soon. */
+	public static final byte NEAR = 0;
+	/** Bimodal insertion gives one fill in this many a long rather than distant interval. */
+	public static final int BIMODAL_PERIOD = 32;
+	
+	/** The number of ways in each set. */
+	private final int numOfWays;
+	/** Whether insertion is bimodal. */
+	private final boolean bimodal;
+	/** Predicted re-reference interval of each slot. */
+	private final byte[] intervals;
+	/** Fills made, choosing the bimodal fills to insert with a long interval. */
+	private int fills;
+	
+	/**
+	 * Constructs RRIP bookkeeping for a cache.
+	 * 
+	 * @param theCacheSize Number of entries within the cache.
+	 * @param theNumOfWays The associativity of the cache.
+	 * @param theBimodal True for bimodal RRIP, false for static RRIP.
+	 */
+	public RripReplacement(final int theCacheSize, final int theNumOfWays, 
+			final boolean theBimodal) {
+		numOfWays = theNumOfWays;
+		bimodal = theBimodal;
+		intervals = new byte[theCacheSize];
+		Arrays.fill(intervals, DISTANT);
+	}
+	
+	@Override
+	public void touch(final int theSlot) {
+		intervals[theSlot] = NEAR;
+	}
+	
+	@Override
+	public void fill(final int theSlot) {
+		//bimodal insertion is throttled by a counter rather than a random draw
+		if (bimodal && ++fills % BIMODAL_PERIOD != 0) {
+			intervals[theSlot] = DISTANT;
+		} else {
+			intervals[theSlot] = LONG;
+		}
+	}
+	
+	@Override
+	public int victim(final int theIndex) {
+		int end = theIndex + numOfWays;
+		int oldest = theIndex;
+		for (int i = theIndex + 1; i < end; i++) {
+			if (intervals[i] > intervals[oldest]) {
+				oldest = i;
+			}
+		}
+		//age the whole set at once by however far the oldest way is from distant
+		int age = DISTANT - intervals[oldest];
+		if (age > 0) {
+			for (int i = theIndex; i < end; i++) {
+				intervals[i] += age;
+			}
+		}
+		return oldest;
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		Checkpoint.write(theOut, intervals);
+		theOut.writeInt(fills);
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		Checkpoint.read(theIn, intervals);
+		fills = theIn.readInt();
+	}
+}
@@ -0,0 +1,162 @@
+package model;
+
+/**
+ * Estimates of a simulation's statistics from detailed windows sampled at intervals through
+ * its traces, in the manner of SMARTS. Between windows each CPU is fast-forwarded, only the
+ * contents of the caches being kept warm, so a window starts from the state a full detailed
+ * run would have reached, give or take coherence. Fast-forwarding costs nearly as much as
+ * simulating a miss in detail, so a warmup shorter than the gap between windows may be 
+ * given, the references before it being skipped outright. The warmup must be long enough
+ * to refill the caches, or the windows start cold and overstate the misses.
+ * 
+ * <p>Each window contributes one observation per statistic: the statistic's change over the
+ * window per reference performed. The mean of those observations estimates the statistic's
+ * rate over the whole trace, and multiplied by every reference of the trace, detailed or
+ * fast-forwarded, its total. Confidence intervals follow from the observations' standard
+ * error, assuming enough windows for the mean to be normally distributed.
+ * 
+ * @author Erik Tedder
+ */
+public class Sampling {
+	
+	/** Names of the statistics estimated, in the order they are reported. */
+	public static final String[] STATISTICS = {"l1hits", "l1misses", "l2hits", "l2misses",
+		"l3hits", "l3misses", "cycles", "corecycles"};
+	/** Index of the sum of every CPU's clock among the statistics. */
+	public static final int CORE_CYCLES = 7;
+	/** Confidence of the intervals, in percent. */
+	public static final int CONFIDENCE = 95;
+	/** Standard normal quantile giving intervals of CONFIDENCE. */
+	public static final double Z = 1.96;
+	
+	/** References each CPU performs between the starts of consecutive windows. */
+	public final long period;
+	/** References each CPU performs in detail in each window. */
+	public final int window;
+	/** References each CPU is fast-forwarded through, warming its caches, before a window. */
+	public final long warmup;
+	/** Number of windows observed. */
+	private int windows;
+	/** References performed in detail. */
+	private long detailed;
+	/** References fast-forwarded through or skipped. */
+	private long forwarded;
+	/** Sum of each statistic's observations. */
+	private final double[] sums = new double[STATISTICS.length];
+	/** Sum of the squares of each statistic's observations. */
+	private final double[] squares = new double[STATISTICS.length];
+	
+	/**
+	 * Constructs an empty sample.
+	 * 
+	 * @param thePeriod References each CPU performs between the starts of windows.
+	 * @param theWindow References each CPU performs in detail in each window.
+	 * @param theWarmup References each CPU is fast-forwarded through before each window, 
+	 * those before them being skipped.
+	 * @throws IllegalArgumentException If the window is not positive, or the window and 
+	 * warmup together exceed the period.
+	 */
+	public Sampling(final long thePeriod, final int theWindow, final long theWarmup) {
+		if (theWindow < 1 || theWarmup < 0 || theWindow + theWarmup > thePeriod) {
+			throw new IllegalArgumentException("Window (" + theWindow + ") must be positive "
+					+ "and with the warmup (" + theWarmup + ") no longer than the period (" 
+					+ thePeriod + ")");
+		}
+		period = thePeriod;
+		window = theWindow;
+		warmup = theWarmup;
+	}
+	
+	/**
+	 * Records references fast-forwarded through or skipped before a window.
+	 * 
+	 * @param theReferences The references fast-forwarded through or skipped.
+	 */
+	public void forwarded(final long theReferences) {
+		forwarded += theReferences;
+	}
+	
+	/**
+	 * Observes a window from the results of the simulation before and after it. A window in
+	 * which no reference was performed is ignored.
+	 * 
+	 * @param theBefore The results before the window.
+	 * @param theAfter The results after the window.
+	 */
+	public void add(final SimResult theBefore, final SimResult theAfter) {
+		long references = theAfter.references - theBefore.references;
+		if (references == 0) {
+			return;
+		}
+		long[] before = values(theBefore), after = values(theAfter);
+		for (int i = 0; i < STATISTICS.length; i++) {
+			double rate = (double) (after[i] - before[i]) / references;
+			sums[i] += rate;
+			squares[i] += rate * rate;
+		}
+		detailed += references;
+		windows++;
+	}
+	
+	/**
+	 * @param theResult Results of a simulation.
+	 * @return The values of the statistics estimated, in the order of STATISTICS.
+	 */
+	private static long[] values(final SimResult theResult) {
+		return new long[] {theResult.l1Hits, theResult.l1Misses, theResult.l2Hits,
+				theResult.l2Misses, theResult.l3Hits, theResult.l3Misses, theResult.cycles,
+				theResult.coreCycles};
+	}
+	
+	/**
+	 * @return The number of windows observed.
+	 */
+	public int windows() {
+		return windows;
+	}
+	
+	/**
+	 * @return The references performed in detail.
+	 */
+	public long detailed() {
+		return detailed;
+	}
+	
+	/**
+	 * @return Every reference of the traces, detailed, fast-forwarded or skipped.
+	 */
+	public long references() {
+		return detailed + forwarded;
+	}
+	
+	/**
+	 * @param theStatistic Index of a statistic within STATISTICS.
+	 * @return The statistic's mean rate per reference over the windows.
+	 */
+	public double mean(final int theStatistic) {
+		return sums[theStatistic] / Math.max(windows, 1);
+	}
+	
+	/**
+	 * @param theStatistic Index of a statistic within STATISTICS.
+	 * @return Half the width of the confidence interval of the statistic's mean rate, NaN
+	 * with fewer than two windows.
+	 */
+	public double halfWidth(final int theStatistic) {
+		if (windows < 2) {
+			return Double.NaN;
+		}
+		double mean = mean(theStatistic);
+		double variance = Math.max((squares[theStatistic] - windows * mean * mean)
+				/ (windows - 1), 0);
+		return Z * Math.sqrt(variance / windows);
+	}
+	
+	/**
+	 * @param theStatistic Index of a statistic within STATISTICS.
+	 * @return The statistic's estimated total over every reference of the traces.
+	 */
+	public double estimate(final int theStatistic) {
+		return mean(theStatistic) * references();
+	}
+}
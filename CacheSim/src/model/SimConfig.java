@@ -0,0 +1,386 @@
+package model;
+
+/**
+ * Immutable configuration of a simulation: the geometry and latency of each cache level, the
+ * line size and sectors shared by every level, the prefetcher, the inclusion policy, the 
+ * coherence protocol, the memory model, the write policy, the number of CPUs, the coherence
+ * mode and each level's replacement policy. 
+ * Every setting is a named parameter, so configurations can be read from and written to text
+ * by name, which is how Sweep builds its grids and result tables.
+ * 
+ * @author Erik Tedder
+ */
+public class SimConfig {
+	
+	/** Default size of L1i and L1d. */
+	public static final int L1_SIZE = 16;
+	/** Default latency of L1. */
+	public static final int L1_LATENCY = 2;
+	/** Default size of L2. */
+	public static final int L2_SIZE = 64;
+	/** Default latency of L2. */
+	public static final int L2_LATENCY = 12;
+	/** Default size of L3. */
+	public static final int L3_SIZE = 256;
+	/** Default latency of L3. */
+	public static final int L3_LATENCY = 25;
+	/** Default associativity of every level. */
+	public static final int NUM_OF_WAYS = 8;
+	/** Default write policy, 1 for write back and 0 for write through. */
+	public static final int WRITE_BACK = 1;
+	/** Default number of CPUs. */
+	public static final int CPU_TOTAL = 2;
+	/** Default bytes in each line, every address being a line of its own. */
+	public static final int LINE_SIZE = 1;
+	/** Default sectors in each line. */
+	public static final int SECTORS = 1;
+	/** Default prefetcher. */
+	public static final Prefetch PREFETCH = Prefetch.NONE;
+	/** Default lines prefetched per miss. */
+	public static final int PREFETCH_DEGREE = 2;
+	/** Default inclusion policy. */
+	public static final Inclusion INCLUSION = Inclusion.NINE;
+	/** Default coherence protocol. */
+	public static final Protocol PROTOCOL = Protocol.MESI;
+	/** Default memory model. */
+	public static final Memory MEMORY = Memory.FLAT;
+	
+	/** Names of the parameters, in the order they are written out. */
+	public static final String[] PARAMETERS = {"cpus", "l1size", "l1latency", "l2size", 
+		"l2latency", "l3size", "l3latency", "ways", "writeback", "directory", "l1policy", 
+		"l2policy", "l3policy", "linesize", "sectors", "prefetch", "prefetchdegree", "inclusion",
+		"protocol", "memory"};
+	
+	/** Number of CPUs. */
+	public final int cpuTotal;
+	/** Size of each CPU's L1i and L1d. */
+	public final int l1Size;
+	/** Latency of L1. */
+	public final int l1Latency;
+	/** Size of each CPU's L2. */
+	public final int l2Size;
+	/** Latency of L2. */
+	public final int l2Latency;
+	/** Size of the shared L3. */
+	public final int l3Size;
+	/** Latency of L3. */
+	public final int l3Latency;
+	/** Associativity of every level. */
+	public final int numOfWays;
+	/** 1 for write back, 0 for write through. */
+	public final int writeBack;
+	/** True to snoop through a snoop filter, false to broadcast snoops. */
+	public final boolean directory;
+	/** Replacement policy of L1i and L1d. */
+	public final Replacement l1Replacement;
+	/** Replacement policy of L2. */
+	public final Replacement l2Replacement;
+	/** Replacement policy of L3. */
+	public final Replacement l3Replacement;
+	/** Bytes in each line of every level. */
+	public final int lineSize;
+	/** Sectors in each line of every level. */
+	public final int sectors;
+	/** Prefetcher of each CPU's L2. */
+	public final Prefetch prefetch;
+	/** Most lines prefetched per miss. */
+	public final int prefetchDegree;
+	/** Inclusion policy of the hierarchy. */
+	public final Inclusion inclusion;
+	/** Coherence protocol. */
+	public final Protocol protocol;
+	/** Model of main memory. */
+	public final Memory memory;
+	
+	/**
+	 * Constructs the default configuration.
+	 */
+	public SimConfig() {
+		this(CPU_TOTAL, L1_SIZE, L1_LATENCY, L2_SIZE, L2_LATENCY, L3_SIZE, L3_LATENCY, 
+				NUM_OF_WAYS, WRITE_BACK, false, Replacement.RANDOM, Replacement.RANDOM, 
+				Replacement.RANDOM);
+	}
+	
+	/**
+	 * Constructs a configuration of one byte lines.
+	 * 
+	 * @param theCpuTotal Number of CPUs.
+	 * @param theL1Size Size of L1.
+	 * @param theL1Latency Latency of L1.
+	 * @param theL2Size Size of L2.
+	 * @param theL2Latency Latency of L2.
+	 * @param theL3Size Size of L3.
+	 * @param theL3Latency Latency of L3.
+	 * @param theNumOfWays Associativity of every level.
+	 * @param theWB 1 for write back, 0 for write through.
+	 * @param theDirectory True to snoop through a snoop filter, false to broadcast snoops.
+	 * @param theL1Replacement Replacement policy of L1.
+	 * @param theL2Replacement Replacement policy of L2.
+	 * @param theL3Replacement Replacement policy of L3.
+	 * @throws IllegalArgumentException If theCpuTotal is less than one.
+	 */
+	public SimConfig(final int theCpuTotal, final int theL1Size, final int theL1Latency, 
+			final int theL2Size, final int theL2Latency, final int theL3Size, 
+			final int theL3Latency, final int theNumOfWays, final int theWB, 
+			final boolean theDirectory, final Replacement theL1Replacement, 
+			final Replacement theL2Replacement, final Replacement theL3Replacement) {
+		this(theCpuTotal, theL1Size, theL1Latency, theL2Size, theL2Latency, theL3Size, 
+				theL3Latency, theNumOfWays, theWB, theDirectory, theL1Replacement, 
+				theL2Replacement, theL3Replacement, LINE_SIZE, SECTORS, PREFETCH, 
+				PREFETCH_DEGREE);
+	}
+	
+	/**
+	 * Constructs a configuration with a non-inclusive non-exclusive hierarchy.
+	 * 
+	 * @param theCpuTotal Number of CPUs.
+	 * @param theL1Size Size of L1, in lines.
+	 * @param theL1Latency Latency of L1.
+	 * @param theL2Size Size of L2, in lines.
+	 * @param theL2Latency Latency of L2.
+	 * @param theL3Size Size of L3, in lines.
+	 * @param theL3Latency Latency of L3.
+	 * @param theNumOfWays Associativity of every level.
+	 * @param theWB 1 for write back, 0 for write through.
+	 * @param theDirectory True to snoop through a snoop filter, false to broadcast snoops.
+	 * @param theL1Replacement Replacement policy of L1.
+	 * @param theL2Replacement Replacement policy of L2.
+	 * @param theL3Replacement Replacement policy of L3.
+	 * @param theLineSize Bytes in each line of every level.
+	 * @param theSectors Sectors in each line of every level.
+	 * @param thePrefetch Prefetcher of each CPU's L2.
+	 * @param thePrefetchDegree Most lines prefetched per miss.
+	 * @throws IllegalArgumentException If theCpuTotal is less than one.
+	 */
+	public SimConfig(final int theCpuTotal, final int theL1Size, final int theL1Latency, 
+			final int theL2Size, final int theL2Latency, final int theL3Size, 
+			final int theL3Latency, final int theNumOfWays, final int theWB, 
+			final boolean theDirectory, final Replacement theL1Replacement, 
+			final Replacement theL2Replacement, final Replacement theL3Replacement, 
+			final int theLineSize, final int theSectors, final Prefetch thePrefetch, 
+			final int thePrefetchDegree) {
+		this(theCpuTotal, theL1Size, theL1Latency, theL2Size, theL2Latency, theL3Size, 
+				theL3Latency, theNumOfWays, theWB, theDirectory, theL1Replacement, 
+				theL2Replacement, theL3Replacement, theLineSize, theSectors, thePrefetch, 
+				thePrefetchDegree, INCLUSION);
+	}
+	
+	/**
+	 * Constructs a configuration kept coherent by MESI.
+	 * 
+	 * @param theCpuTotal Number of CPUs.
+	 * @param theL1Size Size of L1, in lines.
+	 * @param theL1Latency Latency of L1.
+	 * @param theL2Size Size of L2, in lines.
+	 * @param theL2Latency Latency of L2.
+	 * @param theL3Size Size of L3, in lines.
+	 * @param theL3Latency Latency of L3.
+	 * @param theNumOfWays Associativity of every level.
+	 * @param theWB 1 for write back, 0 for write through.
+	 * @param theDirectory True to snoop through a snoop filter, false to broadcast snoops.
+	 * @param theL1Replacement Replacement policy of L1.
+	 * @param theL2Replacement Replacement policy of L2.
+	 * @param theL3Replacement Replacement policy of L3.
+	 * @param theLineSize Bytes in each line of every level.
+	 * @param theSectors Sectors in each line of every level.
+	 * @param thePrefetch Prefetcher of each CPU's L2.
+	 * @param thePrefetchDegree Most lines prefetched per miss.
+	 * @param theInclusion Inclusion policy of the hierarchy.
+	 * @throws IllegalArgumentException If theCpuTotal is less than one.
+	 */
+	public SimConfig(final int theCpuTotal, final int theL1Size, final int theL1Latency, 
+			final int theL2Size, final int theL2Latency, final int theL3Size, 
+			final int theL3Latency, final int theNumOfWays, final int theWB, 
+			final boolean theDirectory, final Replacement theL1Replacement, 
+			final Replacement theL2Replacement, final Replacement theL3Replacement, 
+			final int theLineSize, final int theSectors, final Prefetch thePrefetch, 
+			final int thePrefetchDegree, final Inclusion theInclusion) {
+		this(theCpuTotal, theL1Size, theL1Latency, theL2Size, theL2Latency, theL3Size, 
+				theL3Latency, theNumOfWays, theWB, theDirectory, theL1Replacement, 
+				theL2Replacement, theL3Replacement, theLineSize, theSectors, thePrefetch, 
+				thePrefetchDegree, theInclusion, PROTOCOL);
+	}
+	
+	/**
+	 * Constructs a configuration timing memory with a flat latency per tier.
+	 * 
+	 * @param theCpuTotal Number of CPUs.
+	 * @param theL1Size Size of L1, in lines.
+	 * @param theL1Latency Latency of L1.
+	 * @param theL2Size Size of L2, in lines.
+	 * @param theL2Latency Latency of L2.
+	 * @param theL3Size Size of L3, in lines.
+	 * @param theL3Latency Latency of L3.
+	 * @param theNumOfWays Associativity of every level.
+	 * @param theWB 1 for write back, 0 for write through.
+	 * @param theDirectory True to snoop through a snoop filter, false to broadcast snoops.
+	 * @param theL1Replacement Replacement policy of L1.
+	 * @param theL2Replacement Replacement policy of L2.
+	 * @param theL3Replacement Replacement policy of L3.
+	 * @param theLineSize Bytes in each line of every level.
+	 * @param theSectors Sectors in each line of every level.
+	 * @param thePrefetch Prefetcher of each CPU's L2.
+	 * @param thePrefetchDegree Most lines prefetched per miss.
+	 * @param theInclusion Inclusion policy of the hierarchy.
+	 * @param theProtocol Coherence protocol.
+	 * @throws IllegalArgumentException If theCpuTotal is less than one.
+	 */
+	public SimConfig(final int theCpuTotal, final int theL1Size, final int theL1Latency, 
+			final int theL2Size, final int theL2Latency, final int theL3Size, 
+			final int theL3Latency, final int theNumOfWays, final int theWB, 
+			final boolean theDirectory, final Replacement theL1Replacement, 
+			final Replacement theL2Replacement, final Replacement theL3Replacement, 
+			final int theLineSize, final int theSectors, final Prefetch thePrefetch, 
+			final int thePrefetchDegree, final Inclusion theInclusion, 
+			final Protocol theProtocol) {
+		this(theCpuTotal, theL1Size, theL1Latency, theL2Size, theL2Latency, theL3Size, 
+				theL3Latency, theNumOfWays, theWB, theDirectory, theL1Replacement, 
+				theL2Replacement, theL3Replacement, theLineSize, theSectors, thePrefetch, 
+				thePrefetchDegree, theInclusion, theProtocol, MEMORY);
+	}
+	
+	/**
+	 * Constructs a configuration.
+	 * 
+	 * @param theCpuTotal Number of CPUs.
+	 * @param theL1Size Size of L1, in lines.
+	 * @param theL1Latency Latency of L1.
+	 * @param theL2Size Size of L2, in lines.
+	 * @param theL2Latency Latency of L2.
+	 * @param theL3Size Size of L3, in lines.
+	 * @param theL3Latency Latency of L3.
+	 * @param theNumOfWays Associativity of every level.
+	 * @param theWB 1 for write back, 0 for write through.
+	 * @param theDirectory True to snoop through a snoop filter, false to broadcast snoops.
+	 * @param theL1Replacement Replacement policy of L1.
+	 * @param theL2Replacement Replacement policy of L2.
+	 * @param theL3Replacement Replacement policy of L3.
+	 * @param theLineSize Bytes in each line of every level.
+	 * @param theSectors Sectors in each line of every level.
+	 * @param thePrefetch Prefetcher of each CPU's L2.
+	 * @param thePrefetchDegree Most lines prefetched per miss.
+	 * @param theInclusion Inclusion policy of the hierarchy.
+	 * @param theProtocol Coherence protocol.
+	 * @param theMemory Model of main memory.
+	 * @throws IllegalArgumentException If theCpuTotal is less than one.
+	 */
+	public SimConfig(final int theCpuTotal, final int theL1Size, final int theL1Latency, 
+			final int theL2Size, final int theL2Latency, final int theL3Size, 
+			final int theL3Latency, final int theNumOfWays, final int theWB, 
+			final boolean theDirectory, final Replacement theL1Replacement, 
+			final Replacement theL2Replacement, final Replacement theL3Replacement, 
+			final int theLineSize, final int theSectors, final Prefetch thePrefetch, 
+			final int thePrefetchDegree, final Inclusion theInclusion, 
+			final Protocol theProtocol, final Memory theMemory) {
+		if (theCpuTotal < 1) {
+			throw new IllegalArgumentException("At least one CPU is required");
+		}
+		cpuTotal = theCpuTotal;
+		l1Size = theL1Size;
+		l1Latency = theL1Latency;
+		l2Size = theL2Size;
+		l2Latency = theL2Latency;
+		l3Size = theL3Size;
+		l3Latency = theL3Latency;
+		numOfWays = theNumOfWays;
+		writeBack = theWB;
+		directory = theDirectory;
+		l1Replacement = theL1Replacement;
+		l2Replacement = theL2Replacement;
+		l3Replacement = theL3Replacement;
+		lineSize = theLineSize;
+		sectors = theSectors;
+		prefetch = thePrefetch;
+		prefetchDegree = thePrefetchDegree;
+		inclusion = theInclusion;
+		protocol = theProtocol;
+		memory = theMemory;
+	}
+	
+	/**
+	 * Copies this configuration with one parameter changed.
+	 * 
+	 * @param theName Name of the parameter, one of PARAMETERS.
+	 * @param theValue The new value as text.
+	 * @return The new configuration.
+	 * @throws IllegalArgumentException If the parameter or its value is not recognised.
+	 */
+	public SimConfig with(final String theName, final String theValue) {
+		int cpus = cpuTotal, l1s = l1Size, l1l = l1Latency, l2s = l2Size, l2l = l2Latency;
+		int l3s = l3Size, l3l = l3Latency, ways = numOfWays, wb = writeBack;
+		int line = lineSize, sec = sectors, degree = prefetchDegree;
+		Prefetch pf = prefetch;
+		Inclusion inc = inclusion;
+		Protocol pro = protocol;
+		Memory mem = memory;
+		boolean dir = directory;
+		Replacement l1r = l1Replacement, l2r = l2Replacement, l3r = l3Replacement;
+		switch (theName) {
+			case "cpus": cpus = Integer.parseInt(theValue); break;
+			case "l1size": l1s = Integer.parseInt(theValue); break;
+			case "l1latency": l1l = Integer.parseInt(theValue); break;
+			case "l2size": l2s = Integer.parseInt(theValue); break;
+			case "l2latency": l2l = Integer.parseInt(theValue); break;
+			case "l3size": l3s = Integer.parseInt(theValue); break;
+			case "l3latency": l3l = Integer.parseInt(theValue); break;
+			case "ways": ways = Integer.parseInt(theValue); break;
+			case "writeback": wb = Integer.parseInt(theValue); break;
+			case "directory": dir = Boolean.parseBoolean(theValue); break;
+			case "l1policy": l1r = Replacement.valueOf(theValue.toUpperCase()); break;
+			case "l2policy": l2r = Replacement.valueOf(theValue.toUpperCase()); break;
+			case "l3policy": l3r = Replacement.valueOf(theValue.toUpperCase()); break;
+			case "linesize": line = Integer.parseInt(theValue); break;
+			case "sectors": sec = Integer.parseInt(theValue); break;
+			case "prefetch": pf = Prefetch.valueOf(theValue.toUpperCase()); break;
+			case "prefetchdegree": degree = Integer.parseInt(theValue); break;
+			case "inclusion": inc = Inclusion.valueOf(theValue.toUpperCase()); break;
+			case "protocol": pro = Protocol.valueOf(theValue.toUpperCase()); break;
+			case "memory": mem = Memory.valueOf(theValue.toUpperCase()); break;
+			default:
+				throw new IllegalArgumentException("Unknown parameter " + theName);
+		}
+		return new SimConfig(cpus, l1s, l1l, l2s, l2l, l3s, l3l, ways, wb, dir, l1r, l2r, l3r,
+				line, sec, pf, degree, inc, pro, mem);
+	}
+	
+	/**
+	 * @param theName Name of the parameter, one of PARAMETERS.
+	 * @return The parameter's value as text.
+	 * @throws IllegalArgumentException If the parameter is not recognised.
+	 */
+	public String get(final String theName) {
+		switch (theName) {
+			case "cpus": return String.valueOf(cpuTotal);
+			case "l1size": return String.valueOf(l1Size);
+			case "l1latency": return String.valueOf(l1Latency);
+			case "l2size": return String.valueOf(l2Size);
+			case "l2latency": return String.valueOf(l2Latency);
+			case "l3size": return String.valueOf(l3Size);
+			case "l3latency": return String.valueOf(l3Latency);
+			case "ways": return String.valueOf(numOfWays);
+			case "writeback": return String.valueOf(writeBack);
+			case "directory": return String.valueOf(directory);
+			case "l1policy": return l1Replacement.name().toLowerCase();
+			case "l2policy": return l2Replacement.name().toLowerCase();
+			case "l3policy": return l3Replacement.name().toLowerCase();
+			case "linesize": return String.valueOf(lineSize);
+			case "sectors": return String.valueOf(sectors);
+			case "prefetch": return prefetch.name().toLowerCase();
+			case "prefetchdegree": return String.valueOf(prefetchDegree);
+			case "inclusion": return inclusion.name().toLowerCase();
+			case "protocol": return protocol.name().toLowerCase();
+			case "memory": return memory.name().toLowerCase();
+			default:
+				throw new IllegalArgumentException("Unknown parameter " + theName);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (String name : PARAMETERS) {
+			sb.append(sb.length() == 0 ? "" : " ").append(name).append('=').append(get(name));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,198 @@
+package model;
+
+import java.util.Locale;
+
+/**
+ * Totals of a completed simulation, summed over every CPU and dispatcher.
+ * 
+ * @author Erik Tedder
+ */
+public class SimResult {
+	
+	/** Names of the statistics, in the order they are written out. */
+	public static final String[] STATISTICS = {"l1hits", "l1misses", "l2hits", "l2misses", 
+		"l3hits", "l3misses", "cycles", "hitpercentage", "snoopssent", "snoopssaved", 
+		"invalidationssent", "invalidationssaved", "references", "cpi", "makespan", "linefills", 
+		"sectorfills", "prefetchesissued", "prefetchesuseful", "prefetcheslate", 
+		"prefetchesuseless", "backinvalidations", "residentlines", "memreads", "memwrites", 
+		"writescombined", "rowhits", "rowmisses", "queuecycles"};
+	
+	/** The configuration simulated. */
+	public final SimConfig config;
+	/** L1 hits of every CPU. */
+	public final long l1Hits;
+	/** L1 misses of every CPU. */
+	public final long l1Misses;
+	/** L2 hits of every CPU. */
+	public final long l2Hits;
+	/** L2 misses of every CPU. */
+	public final long l2Misses;
+	/** L3 hits. */
+	public final long l3Hits;
+	/** L3 misses. */
+	public final long l3Misses;
+	/** Cycles stalled on misses and memory accesses. */
+	public final long cycles;
+	/** Snoops sent to CPUs. */
+	public final long snoopsSent;
+	/** Snoops saved by the snoop filter. */
+	public final long snoopsSaved;
+	/** Invalidations sent to CPUs. */
+	public final long invalidationsSent;
+	/** Invalidations saved by the snoop filter. */
+	public final long invalidationsSaved;
+	/** Trace references performed by every CPU. */
+	public final long references;
+	/** Sum of every CPU's clock. */
+	public final long coreCycles;
+	/** The latest CPU clock, the cycles until every CPU had finished. */
+	public final long makespan;
+	/** Lines filled into L1 by every CPU. */
+	public final long lineFills;
+	/** Sectors filled into lines already held in L1 by every CPU. */
+	public final long sectorFills;
+	/** Prefetches issued by every CPU. */
+	public final long prefetchesIssued;
+	/** Prefetched lines referenced after being filled. */
+	public final long prefetchesUseful;
+	/** Prefetched lines referenced before being filled. */
+	public final long prefetchesLate;
+	/** Prefetched lines evicted without being referenced. */
+	public final long prefetchesUseless;
+	/** Lines invalidated in a CPU because a level below evicted them. */
+	public final long backInvalidations;
+	/**
+	 * Distinct lines held by every cache at the end, the hierarchy's effective capacity. 0 in
+	 * snapshots taken while the simulation runs.
+	 */
+	public final long residentLines;
+	/** Reads serviced by a MemoryController, 0 for flat memory. */
+	public final long memReads;
+	/** Bursts a MemoryController wrote to memory. */
+	public final long memWrites;
+	/** Writes a MemoryController combined into a burst already buffered. */
+	public final long writesCombined;
+	/** Memory requests to an open row. */
+	public final long rowHits;
+	/** Memory requests activating a row. */
+	public final long rowMisses;
+	/** Cycles CPUs waited for a memory queue slot, bank or channel. */
+	public final long queueCycles;
+	/** Coherence state changes, transitions[from][to], indexed by the states of Cache. */
+	public final long[][] transitions;
+	
+	/**
+	 * Constructs the result of a simulation.
+	 * 
+	 * @param theConfig The configuration simulated.
+	 * @param theCounts l1 hits, l1 misses, l2 hits, l2 misses, l3 hits, l3 misses, cycles, 
+	 * snoops sent, snoops saved, invalidations sent, invalidations saved, references, core 
+	 * cycles, makespan, line fills, sector fills, prefetches issued, useful prefetches, late 
+	 * prefetches, useless prefetches, back-invalidations, resident lines, memory reads, 
+	 * memory writes, combined writes, row hits, row misses and queueing cycles, in that 
+	 * order.
+	 * @param theTransitions Coherence state changes, theTransitions[from][to].
+	 */
+	public SimResult(final SimConfig theConfig, final long[] theCounts, 
+			final long[][] theTransitions) {
+		config = theConfig;
+		l1Hits = theCounts[0];
+		l1Misses = theCounts[1];
+		l2Hits = theCounts[2];
+		l2Misses = theCounts[3];
+		l3Hits = theCounts[4];
+		l3Misses = theCounts[5];
+		cycles = theCounts[6];
+		snoopsSent = theCounts[7];
+		snoopsSaved = theCounts[8];
+		invalidationsSent = theCounts[9];
+		invalidationsSaved = theCounts[10];
+		references = theCounts[11];
+		coreCycles = theCounts[12];
+		makespan = theCounts[13];
+		lineFills = theCounts[14];
+		sectorFills = theCounts[15];
+		prefetchesIssued = theCounts[16];
+		prefetchesUseful = theCounts[17];
+		prefetchesLate = theCounts[18];
+		prefetchesUseless = theCounts[19];
+		backInvalidations = theCounts[20];
+		residentLines = theCounts[21];
+		memReads = theCounts[22];
+		memWrites = theCounts[23];
+		writesCombined = theCounts[24];
+		rowHits = theCounts[25];
+		rowMisses = theCounts[26];
+		queueCycles = theCounts[27];
+		transitions = theTransitions;
+	}
+	
+	/**
+	 * @return Hits at every level.
+	 */
+	public long hits() {
+		return l1Hits + l2Hits + l3Hits;
+	}
+	
+	/**
+	 * @return Misses at every level.
+	 */
+	public long misses() {
+		return l1Misses + l2Misses + l3Misses;
+	}
+	
+	/**
+	 * @return Percentage of lookups that hit.
+	 */
+	public float hitPercentage() {
+		return ((float) hits() / (hits() + misses())) * 100;
+	}
+	
+	/**
+	 * @return Cycles per reference, averaged over every CPU.
+	 */
+	public double cpi() {
+		return (double) coreCycles / Math.max(references, 1);
+	}
+	
+	/**
+	 * @param theName Name of the statistic, one of STATISTICS.
+	 * @return The statistic's value as text.
+	 * @throws IllegalArgumentException If the statistic is not recognised.
+	 */
+	public String get(final String theName) {
+		switch (theName) {
+			case "l1hits": return String.valueOf(l1Hits);
+			case "l1misses": return String.valueOf(l1Misses);
+			case "l2hits": return String.valueOf(l2Hits);
+			case "l2misses": return String.valueOf(l2Misses);
+			case "l3hits": return String.valueOf(l3Hits);
+			case "l3misses": return String.valueOf(l3Misses);
+			case "cycles": return String.valueOf(cycles);
+			case "hitpercentage": return String.format(Locale.ROOT, "%.4f", hitPercentage());
+			case "snoopssent": return String.valueOf(snoopsSent);
+			case "snoopssaved": return String.valueOf(snoopsSaved);
+			case "invalidationssent": return String.valueOf(invalidationsSent);
+			case "invalidationssaved": return String.valueOf(invalidationsSaved);
+			case "references": return String.valueOf(references);
+			case "cpi": return String.format(Locale.ROOT, "%.4f", cpi());
+			case "makespan": return String.valueOf(makespan);
+			case "linefills": return String.valueOf(lineFills);
+			case "sectorfills": return String.valueOf(sectorFills);
+			case "prefetchesissued": return String.valueOf(prefetchesIssued);
+			case "prefetchesuseful": return String.valueOf(prefetchesUseful);
+			case "prefetcheslate": return String.valueOf(prefetchesLate);
+			case "prefetchesuseless": return String.valueOf(prefetchesUseless);
+			case "backinvalidations": return String.valueOf(backInvalidations);
+			case "residentlines": return String.valueOf(residentLines);
+			case "memreads": return String.valueOf(memReads);
+			case "memwrites": return String.valueOf(memWrites);
+			case "writescombined": return String.valueOf(writesCombined);
+			case "rowhits": return String.valueOf(rowHits);
+			case "rowmisses": return String.valueOf(rowMisses);
+			case "queuecycles": return String.valueOf(queueCycles);
+			default:
+				throw new IllegalArgumentException("Unknown statistic " + theName);
+		}
+	}
+}
@@ -1,291 +1,1496 @@
-package model;
-
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Observable;
-import java.util.Observer;
-import java.util.Random;
-
-/**
- * Caching Simulator program that reads in address traces and allocates them appropriately to 
- * cache locations. 
- * 
- * @author Erik Tedder
- */
-public class Simulator implements Observer {
-	/* Necessary constants for the CPU states. */
-	private final static int FIRST_MEM_SIZE = 0x800000;
-	private final static int L1_SIZE = 16;
-	private final static int L1_LATENCY = 2;
-	private final static int L2_SIZE = 64;
-	private final static int L2_LATENCY = 12;
-	private final static int L3_SIZE = 256;
-	private final static int L3_LATENCY = 25;
-	private final static int FIRST_MEM_LATENCY = 120;
-	private final static int SECOND_MEM_LATENCY = 400;
-	private final static int NUM_OF_WAYS = 8;
-	private final static int CPU_TOTAL = 2;
-	private final static int WRITE_BACK = 1;
-	/**	String name of the file for memory trace. */
-	private final static String TRACE_FILE = "trace-5k.csv";
-	
-	/** The shared level 3 cache for the CPUs. */
-	protected Cache L3;
-	/** L3 miss counter. */
-	private int l3missNum;
-	/** L3 hit counter. */
-	private int l3hitNum;
-	
-	/**
-	 * Matrix to represent the changes of MESI states. Will have 0 be M, 1 is Exclusive, 2 is
-	 * Shared, and 4 is Invalid. Each row is the starting value and the column is the ending 
-	 * value. ie mesiTransitions[1][2] value is the number of times going from Exclusive to
-	 * Shared.
-	 */
-	private int[][] mesi = new int[4][4];
-	
-	/** Counter for memory latency. */
-	private int memCycles;
-	
-	/** Counter to denote when the threads are complete. */
-	private int threadsComplete;
-	/** List for the TRACE_FILE. */
-	private ArrayList<MemoryInfo> trace;
-	/** Random number generator for assigning positions at random. */
-	private Random r = new Random();
-	
-	/** Cpu 1. */
-	private CPU cpu1;
-	/** Cpu 2. */
-	private CPU cpu2;
-	
-	/**
-	 * Some constructor.
-	 */
-	public Simulator() {
-		l3missNum = 0;
-		l3hitNum = 0;
-		memCycles = 0;
-		threadsComplete = 0;		
-		//Construct the L3
-		L3 = new Cache(L3_SIZE, L3_LATENCY, NUM_OF_WAYS);
-		//Initialize the trace array
-		trace = new ArrayList<MemoryInfo>();
-		
-		//Read in the trace file
-		try {
-			BufferedReader br = new BufferedReader(new FileReader(TRACE_FILE));
-			String line = br.readLine();
-			//read in each line and tokenize			
-			while (line != null) {
-				String[] tokens = line.split(",", -1);
-				
-				int add, io, data;				
-				
-				add = Integer.parseInt(tokens[0]);
-				
-				if (tokens[1].equals("")) {
-					io = -1;
-				} else {
-					io = Integer.parseInt(tokens[1]);
-				}
-				
-				if (tokens[2].equals("")) {
-					data = -1;
-				} else {
-					data = Integer.parseInt(tokens[2]);
-				}						
-				
-				trace.add(new MemoryInfo(add, io, data));
-				
-				line = br.readLine();
-			}
-			br.close();
-		} catch (FileNotFoundException e) {
-			System.err.println("ERROR READING FILE");
-		} catch (IOException e) {
-			System.err.println("ISSUE READING LINE");
-		}	
-	
-		
-		//Construct the CPUs
-		cpu1 = new CPU(trace, L1_SIZE, L1_LATENCY, L2_SIZE, L2_LATENCY, NUM_OF_WAYS, WRITE_BACK, 1);
-		cpu2 = new CPU(trace, L1_SIZE, L1_LATENCY, L2_SIZE, L2_LATENCY, NUM_OF_WAYS, WRITE_BACK, 2);
-		//Set this simulator to observe them
-		cpu1.addObserver(this);
-		cpu2.addObserver(this);
-		//start both CPUs
-		cpu1.start();
-		cpu2.start();	
-	}
-
-	/**
-	 * Testing purposes currently. 
-	 * 
-	 * @param theArgs Command-line inputs (not applicable to this program).
-	 */
-	public static void main(String... theArgs) {		
-		Simulator s = new Simulator();		
-	}
-
-	/**
-	 * Called when a change has been made within the CPU.
-	 */
-	@Override
-	public void update(Observable o, Object arg) {		
-		//Called when an item is not found within the L1 or L2 caches
-		if (arg instanceof MemoryInfo) {
-			//Take argument passed and cast it to a MemoryInfo object
-			MemoryInfo m = (MemoryInfo) arg;
-			//CPU1 made this call
-			if (((CPU) o).cpuNumber == 1) {				
-				if (m.ioValue == 0) { //read instruction
-					//cpu2 does contain this item
-					if(cpu2.snoop(m).iAddress != -1) {
-						cpu1.add(cpu2.snoop(m), 'S');
-						//increment transition counter by 2 since snoop sets value to be S as well
-						mesi[1][2] = mesi[1][2] + 2;
-					} else { //cpu2 doesnt have this, fetch from memory
-						if (m.dAddress < FIRST_MEM_SIZE) {
-							memCycles += FIRST_MEM_LATENCY;
-						} else {
-							memCycles += SECOND_MEM_LATENCY;
-						}
-						//add into CPU1's L1d
-						cpu1.add(m, 'E');
-					}				
-				} else { //not a read instruction
-					int index = m.iAddress & (L3_SIZE/NUM_OF_WAYS - 1);
-					int tag = m.iAddress >> (int)(Math.log(L3_SIZE/NUM_OF_WAYS) / Math.log(2));
-					boolean found = false;
-					//look through L3 set for item
-					for (int i = 0; i < NUM_OF_WAYS && i + index < L3.cacheSize; i++) {
-						if (L3.entries[index + i].tag == tag) {							
-							l3hitNum++;
-							found = true;
-						} 
-					}
-					//not found in L3, denote a L3 miss and make cpu1 add to its L1
-					if (!found) {
-						l3missNum++;
-						cpu1.add(m, 'E');
-					}
-				}				
-			} else { //CPU 2 made this call
-				//trying to do a read
-				if (m.ioValue == 0) {
-					//cpu1 does contain this item
-					if(cpu1.snoop(m).iAddress != -1) {
-						cpu2.add(cpu1.snoop(m), 'S');
-						//increment transition counter by 2 since snoop sets value to be S as well
-						mesi[1][2] = mesi[1][2] + 2;
-					} else {
-						if (m.dAddress < FIRST_MEM_SIZE) {
-							memCycles += FIRST_MEM_LATENCY;
-						} else {
-							memCycles += SECOND_MEM_LATENCY;
-						}
-						//add into CPU2's L1d
-						cpu2.add(m, 'E');
-					}
-				} else { //not a read instruction
-					int index = m.iAddress & (L3_SIZE/NUM_OF_WAYS - 1);
-					int tag = m.iAddress >> (int)(Math.log(L3_SIZE/NUM_OF_WAYS) / Math.log(2));
-					boolean found = false;
-					//Look in L3 set to see if it is contained
-					for (int i = 0; i < NUM_OF_WAYS && i + index < L3.cacheSize; i++) {
-						if (L3.entries[index + i].tag == tag) {							
-							l3hitNum++;
-							found = true;
-						} 
-					}
-					//Not found in L3. Increment miss counter and make cpu2 insert into L1
-					if (!found) {
-						l3missNum++;
-						cpu2.add(m, 'E');
-					}
-				}
-			}
-		}
-		
-		//Observed CPU has an item needing to be placed into L3
-		if (arg instanceof Integer) {
-			//boolean flag for denoting item has been placed
-			boolean placed = false;
-			//calculate index and tag for the L3 cache
-			int index = (int)arg & (L3_SIZE/NUM_OF_WAYS - 1);
-			int tag = (int)arg >> (int)(Math.log(L3_SIZE/NUM_OF_WAYS) / Math.log(2));
-			//Scan L3 cache within the set to see if there are any available slots
-			for (int i = 0; i < NUM_OF_WAYS && i + index < L3.cacheSize; i++) {
-				if(L3.entries[index + i].tag == -1) {
-					L3.insert(new MemoryInfo((Integer)arg, -1, -1), index + i, tag, 'E');
-					//Item was placed in L3
-					placed = true;
-				}
-			}
-			//Item was not placed in an empty slot, something needs to be evicted
-			if (!placed) {
-				L3.insert(new MemoryInfo((Integer)arg, -1, -1), index + r.nextInt(NUM_OF_WAYS), tag, 'E');
-			}
-		}
-		
-		//a CPU has done a data-write call
-		if (arg == CacheEvent.DATA_WRITE) {
-			memCycles += SECOND_MEM_LATENCY;
-		}
-		
-		//a CPU has modified its data
-		if (arg instanceof CacheModification) {
-			CacheModification cm = (CacheModification)arg;
-			//update mesi trackers
-			if (cm.startState == 'E') {
-				if (cm.endState == 'M') {
-					mesi[1][0] = mesi[1][0] + 1;
-					if (((CPU)o).cpuNumber == 1) {
-						cpu2.invalidateData(cm.mem);
-					} else {
-						cpu1.invalidateData(cm.mem);
-					}
-				} else if (cm.endState == 'I') {
-					mesi[1][3] = mesi[1][3] + 1;
-				}
-			} else if (cm.startState == 'S') {
-				if (cm.endState == 'M') {
-					mesi[2][0] = mesi[2][0] + 1;
-					if (((CPU)o).cpuNumber == 1) {
-						cpu2.invalidateData(cm.mem);
-					} else {
-						cpu1.invalidateData(cm.mem);
-					}
-				} else if (cm.endState == 'I') {
-					mesi[2][3] = mesi[2][3] + 1;
-				}
-			}
-		}
-		
-		//Threads have completed
-		if (arg == CacheEvent.COMPLETE) {
-			//Running count of how many threads have completed so far
-			if (threadsComplete != CPU_TOTAL) {
-				threadsComplete++;
-			}
-			
-			//When all threads/CPUs have completed their calculations, print out final values.
-			if (threadsComplete == CPU_TOTAL) {
-				System.out.format("\n[L3] Hits: %d Misses: %d\n\n", l3hitNum, l3missNum);
-				int hits = l3hitNum + cpu1.l1hitNum + cpu1.l2hitNum + cpu2.l1hitNum + cpu2.l2hitNum;
-				int misses = l3missNum + cpu1.l1missNum + cpu1.l2missNum + cpu2.l1missNum + cpu2.l2missNum;
-				int cycles = l3missNum * L3_LATENCY + cpu1.l1missNum * L1_LATENCY + cpu1.l2missNum * L2_LATENCY + cpu2.l1missNum * L1_LATENCY + cpu2.l2missNum * L2_LATENCY;
-				System.out.format("Total hits: %d Total Misses: %d Total Cycles: %d\n", hits, misses, cycles + memCycles);
-				float hitP = ((float)hits/(hits+misses)) * 100;
-				float missP = ((float)misses/(hits+misses)) * 100;
-				System.out.format("Hit Percentage: %.2f%% Miss Percentage: %.2f%%\n\n", hitP, missP);
-				System.out.format("MESI STATE CHANGES\nE to S %d\nE to I %d\nE to M %d\n", mesi[1][2], mesi[1][3], mesi[1][0]);
-				System.out.format("S to I %d\nS to M %d", mesi[2][3], mesi[2][0]);
-			}
-		}
-	}
-}
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caching Simulator program that reads in address traces and allocates them appropriately to 
+ * cache locations. 
+ * 
+ * <p>Each CPU runs its trace on its own thread and publishes the events it raises onto its 
+ * CoherenceBus. The buses are serviced by dispatch threads, one for every CPUS_PER_DISPATCHER
+ * CPUs (up to the number of host processors), each owning a fixed subset of the CPUs. Misses
+ * are serviced by snooping every other CPU, or in directory mode only the CPUs a SnoopFilter
+ * records as possibly holding the item. Lines move between states as the configured 
+ * Protocol's table directs, every transition being counted. Statistics are StripedCounters
+ * shared by every thread, so none are lost to contention and a snapshot() may be taken at
+ * any time while a simulation runs, which Metrics publishes over JMX and samples at
+ * intervals.
+ * 
+ * <p>Free-running CPUs race one another, so results vary between runs. runLockStep() instead
+ * advances every CPU by QUANTUM references in parallel, waits for all of them at a barrier, 
+ * then services every event raised during the quantum on a single thread in CPU order. CPUs
+ * only touch their own caches while running, and all random choices are seeded, so 
+ * identical inputs always produce identical results.
+ * 
+ * <p>runTimed() is a discrete-event timing engine. Each CPU has its own clock, a cycle to 
+ * issue each reference plus the latency of every miss it stalls on. An EventQueue holds the
+ * cycle each CPU is next ready at, and the earliest ready CPU performs its next reference, 
+ * its misses being serviced at once, before being rescheduled at its new clock. References 
+ * from different CPUs, and so their coherence traffic, are thereby interleaved in cycle 
+ * order. Every mode reports each CPU's CPI and stall breakdown.
+ * 
+ * <p>runSampled() simulates traces too long to run in detail. Every CPU is fast-forwarded
+ * through most of its trace, only the contents of the caches being updated, or skips it, and
+ * is simulated in lock-step for a window of references at regular intervals. The statistics
+ * are extrapolated from the windows, with confidence intervals, by Sampling.
+ * 
+ * <p>The hierarchy of each CPU's caches and L3 follows the configured Inclusion. The original
+ * non-inclusive non-exclusive hierarchy only looks instructions up in L3, while inclusive
+ * and exclusive hierarchies hold data lines in L3 too and look up every miss no other CPU 
+ * supplies. Each reports the lines back-invalidated to keep it inclusive and the distinct 
+ * lines held by all caches at the end, the hierarchy's effective capacity.
+ * 
+ * <p>Lock-step and timed runs may write a Checkpoint of the whole simulation between epochs
+ * at intervals, and a simulation constructed with the same configuration and traces may be
+ * restored from it, either to resume a long run or to start other experiments from its
+ * warmed caches. A restored run finishes with exactly the results of an uninterrupted one.
+ * 
+ * @author Erik Tedder
+ */
+public class Simulator implements Checkpointable {
+	/* Necessary constants for the CPU states. */
+	private final static int FIRST_MEM_SIZE = 0x800000;
+	private final static int FIRST_MEM_LATENCY = 120;
+	private final static int SECOND_MEM_LATENCY = 400;
+	/**	String name of the default file for memory trace (CSV or binary). */
+	private final static String TRACE_FILE = "trace-5k.csv";
+	/** Most messages drained from one CPU's bus before moving on to the next. */
+	private final static int DISPATCH_BATCH = 256;
+	/** Number of CPUs serviced by each dispatch thread. */
+	private final static int CPUS_PER_DISPATCHER = 2;
+	/** 
+	 * Most references each CPU performs per lock-step epoch. Their events must fit on its 
+	 * bus, a CPU that prefetches ending its step early once the bus or its prefetches in 
+	 * flight are full.
+	 */
+	private final static int QUANTUM = CoherenceBus.DEFAULT_CAPACITY / CPU.MAX_EVENTS_PER_ACCESS;
+	/** Seed of the random number generator for L3. */
+	private final static long L3_SEED = 3;
+	/** References each CPU simulates in detail per sampled window, unless configured. */
+	public final static int SAMPLE_WINDOW = 1000;
+	
+	/** The shared level 3 cache for the CPUs. Dispatchers synchronize on it. */
+	protected Cache L3;
+	
+	/** The configuration simulated. */
+	private final SimConfig config;
+	/** The memory trace replayed by each CPU, traces[i] being CPU number i + 1's. */
+	private final Trace[] traces;
+	/** Random number generator for random replacement in L3. */
+	private final RestorableRandom r = new RestorableRandom(L3_SEED);
+	/** Records which CPUs may hold each data item, null when snoops are broadcast. */
+	private final SnoopFilter snoopFilter;
+	/** Times requests to memory, null when memory is flat. */
+	private final MemoryController memory;
+	
+	/** The CPUs, cpus[i] being CPU number i + 1. */
+	private final CPU[] cpus;
+	/** The dispatchers servicing the CPUs' buses. */
+	private Dispatcher[] dispatchers;
+	/** Number of dispatchers still running. The last to finish reports the results. */
+	private final AtomicInteger dispatchersRunning = new AtomicInteger();
+	/** Publishes live metrics while running, null unless enabled. */
+	private Metrics metrics;
+	/** Writes checkpoints while running, null unless enabled. */
+	private Checkpoint checkpoint;
+	/** References performed by all CPUs between checkpoints. */
+	private long checkpointInterval;
+	/** References performed by all CPUs since the last checkpoint. */
+	private long sinceCheckpoint;
+	
+	/* Statistics shared by every dispatcher, striped so none contend or lose updates. */
+	/** L3 miss counter. */
+	private final StripedCounter l3missNum = new StripedCounter();
+	/** L3 hit counter. */
+	private final StripedCounter l3hitNum = new StripedCounter();
+	/** Counter for memory latency. */
+	private final StripedCounter memCycles = new StripedCounter();
+	/**
+	 * Matrix to represent the changes of coherence states, indexed by the states of Cache. 
+	 * Each row is the starting value and the column is the ending value. ie 
+	 * transitions[1][2] value is the number of times going from Exclusive to Shared. Lines
+	 * filled count as leaving Invalid.
+	 */
+	private final StripedCounter[][] transitions = 
+			new StripedCounter[Cache.STATES][Cache.STATES];
+	/** Number of snoops sent to CPUs. */
+	private final StripedCounter snoopsSent = new StripedCounter();
+	/** Number of snoops the snoop filter avoided sending. */
+	private final StripedCounter snoopsSaved = new StripedCounter();
+	/** Number of invalidations sent to CPUs. */
+	private final StripedCounter invalidationsSent = new StripedCounter();
+	/** Number of invalidations the snoop filter avoided sending. */
+	private final StripedCounter invalidationsSaved = new StripedCounter();
+	
+	/**
+	 * Some constructor.
+	 */
+	public Simulator() {
+		this(TRACE_FILE);
+	}
+	
+	/**
+	 * Constructs a simulator replaying the passed trace file with the default configuration.
+	 * 
+	 * @param theTraceFile Name of the trace file.
+	 */
+	public Simulator(final String theTraceFile) {
+		this(readTrace(theTraceFile), new SimConfig());
+	}
+	
+	/**
+	 * Constructs a simulator replaying the passed trace file with the default cache sizes. 
+	 * 
+	 * @param theTraceFile Name of the trace file.
+	 * @param theCpuTotal The number of CPUs simulated.
+	 * @param theDirectory True to only snoop the CPUs a snoop filter records as sharers, 
+	 * false to broadcast snoops to every CPU.
+	 * @throws IllegalArgumentException If theCpuTotal is less than one.
+	 */
+	public Simulator(final String theTraceFile, final int theCpuTotal, 
+			final boolean theDirectory) {
+		this(theTraceFile, theCpuTotal, theDirectory, Replacement.RANDOM, Replacement.RANDOM,
+				Replacement.RANDOM);
+	}
+	
+	/**
+	 * Constructs a simulator replaying the passed trace file, choosing the replacement policy
+	 * of each cache level.
+	 * 
+	 * @param theTraceFile Name of the trace file.
+	 * @param theCpuTotal The number of CPUs simulated.
+	 * @param theDirectory True to only snoop the CPUs a snoop filter records as sharers, 
+	 * false to broadcast snoops to every CPU.
+	 * @param theL1Replacement Replacement policy of each CPU's L1i and L1d.
+	 * @param theL2Replacement Replacement policy of each CPU's L2.
+	 * @param theL3Replacement Replacement policy of the shared L3.
+	 * @throws IllegalArgumentException If theCpuTotal is less than one.
+	 */
+	public Simulator(final String theTraceFile, final int theCpuTotal, 
+			final boolean theDirectory, final Replacement theL1Replacement, 
+			final Replacement theL2Replacement, final Replacement theL3Replacement) {
+		this(readTrace(theTraceFile), new SimConfig(theCpuTotal, SimConfig.L1_SIZE, 
+				SimConfig.L1_LATENCY, SimConfig.L2_SIZE, SimConfig.L2_LATENCY, 
+				SimConfig.L3_SIZE, SimConfig.L3_LATENCY, SimConfig.NUM_OF_WAYS, 
+				SimConfig.WRITE_BACK, theDirectory, theL1Replacement, theL2Replacement, 
+				theL3Replacement));
+	}
+	
+	/**
+	 * Constructs a simulator replaying a trace that has already been read. The trace is only 
+	 * read from, so one trace can be shared by any number of simulators. The simulation is 
+	 * run by start(), runLockStep() or simulate().
+	 * 
+	 * @param theTrace The trace replayed by every CPU.
+	 * @param theConfig The configuration simulated.
+	 */
+	public Simulator(final Trace theTrace, final SimConfig theConfig) {
+		this(shared(theTrace, theConfig.cpuTotal), theConfig);
+	}
+	
+	/**
+	 * Constructs a simulator in which each CPU replays its own trace, such as the shards of
+	 * a multi-threaded trace or a trace per core.
+	 * 
+	 * @param theTraces The trace of each CPU, theTraces[i] being CPU number i + 1's.
+	 * @param theConfig The configuration simulated.
+	 * @throws IllegalArgumentException If there is not one trace per CPU.
+	 */
+	public Simulator(final Trace[] theTraces, final SimConfig theConfig) {
+		if (theTraces.length != theConfig.cpuTotal) {
+			throw new IllegalArgumentException(theTraces.length + " traces given for " 
+					+ theConfig.cpuTotal + " CPUs");
+		}
+		config = theConfig;
+		traces = theTraces;
+		for (StripedCounter[] row : transitions) {
+			for (int to = 0; to < row.length; to++) {
+				row[to] = new StripedCounter();
+			}
+		}
+		snoopFilter = config.directory ? new SnoopFilter(config.cpuTotal, config.lineSize) 
+				: null;
+		memory = config.memory.create(FIRST_MEM_SIZE, FIRST_MEM_LATENCY, SECOND_MEM_LATENCY);
+		//Construct the L3
+		L3 = new Cache(config.l3Size, config.l3Latency, config.numOfWays, config.lineSize, 
+				config.sectors, config.l3Replacement, r);
+		
+		//Construct the CPUs
+		cpus = new CPU[config.cpuTotal];
+		for (int i = 0; i < cpus.length; i++) {
+			cpus[i] = new CPU(traces[i], config.l1Size, config.l1Latency, config.l2Size, 
+					config.l2Latency, config.numOfWays, config.writeBack, i + 1, 
+					config.lineSize, config.sectors, 
+					config.prefetch.create(config.lineSize, config.prefetchDegree), 
+					config.inclusion, config.protocol, config.l1Replacement, 
+					config.l2Replacement);
+		}
+	}
+	
+	/**
+	 * @param theTrace A trace.
+	 * @param theCpuTotal The number of CPUs.
+	 * @return An array with theTrace for each CPU.
+	 */
+	private static Trace[] shared(final Trace theTrace, final int theCpuTotal) {
+		Trace[] traces = new Trace[theCpuTotal];
+		Arrays.fill(traces, theTrace);
+		return traces;
+	}
+	
+	/**
+	 * Splits a multi-threaded CSV trace file between CPUs by its thread column.
+	 * 
+	 * @param theTraceFile Name of the CSV trace file.
+	 * @param theCpuTotal The number of CPUs.
+	 * @return The trace of each CPU, all empty if the file could not be read.
+	 */
+	public static Trace[] shardTrace(final String theTraceFile, final int theCpuTotal) {
+		try {
+			return TraceFile.shard(theTraceFile, theCpuTotal);
+		} catch (FileNotFoundException e) {
+			System.err.println("ERROR READING FILE");
+		} catch (IOException e) {
+			System.err.println("ISSUE READING LINE");
+		}
+		return shared(new ArrayTrace(), theCpuTotal);
+	}
+	
+	/**
+	 * Reads a trace file. Files ending in TraceFile.BINARY_EXTENSION are memory-mapped, 
+	 * anything else is read as CSV.
+	 * 
+	 * @param theTraceFile Name of the trace file.
+	 * @return The trace, empty if the file could not be read.
+	 */
+	public static Trace readTrace(final String theTraceFile) {
+		try {
+			return TraceFile.open(theTraceFile);
+		} catch (FileNotFoundException e) {
+			System.err.println("ERROR READING FILE");
+		} catch (IOException e) {
+			System.err.println("ISSUE READING LINE");
+		}
+		return new ArrayTrace();
+	}
+	
+	/**
+	 * Starts streaming a CSV trace file in the background.
+	 * 
+	 * @param theTraceFile Name of the CSV trace file.
+	 * @param theCpuTotal The number of CPUs that will replay the trace.
+	 * @return The trace, empty if the file could not be opened.
+	 */
+	public static Trace streamTrace(final String theTraceFile, final int theCpuTotal) {
+		try {
+			return new StreamingTrace(theTraceFile, theCpuTotal);
+		} catch (IOException e) {
+			System.err.println("ERROR READING FILE");
+		}
+		return new ArrayTrace();
+	}
+	
+	/**
+	 * Starts the CPUs free-running on their own threads, along with the dispatch threads 
+	 * servicing their buses. Returns immediately, the results are printed once all CPUs
+	 * have completed.
+	 */
+	public void start() {
+		//Share the CPUs out between the dispatchers
+		int dispatcherTotal = Math.min((cpus.length + CPUS_PER_DISPATCHER - 1) 
+				/ CPUS_PER_DISPATCHER, Runtime.getRuntime().availableProcessors());
+		dispatchers = new Dispatcher[Math.max(dispatcherTotal, 1)];
+		for (int i = 0; i < dispatchers.length; i++) {
+			dispatchers[i] = new Dispatcher(i, dispatchers.length);
+		}
+		dispatchersRunning.set(dispatchers.length);
+		
+		//start the CPUs, then the dispatch threads servicing their buses
+		for (CPU cpu : cpus) {
+			cpu.start();
+		}
+		for (Dispatcher dispatcher : dispatchers) {
+			new Thread(dispatcher).start();
+		}
+	}
+	
+	/**
+	 * Runs the simulation deterministically, returning once the results have been printed.
+	 * Each epoch advances every CPU by QUANTUM references on a pool of host threads; once 
+	 * all have reached the barrier, the events they raised are serviced in CPU order.
+	 */
+	public void runLockStep() {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(cpus.length, 
+				Runtime.getRuntime().availableProcessors()));
+		try {
+			runEpochs(pool);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("CPU failed during lock-step run", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		dispatcherComplete();
+	}
+	
+	/**
+	 * Runs the simulation deterministically on the calling thread without printing anything.
+	 * The results are identical to those of runLockStep(), whose epochs this follows.
+	 * 
+	 * @return The results of the simulation.
+	 */
+	public SimResult simulate() {
+		try {
+			runEpochs(null);
+		} catch (InterruptedException | ExecutionException e) {
+			//nothing is submitted to a pool, so neither can be thrown
+			throw new IllegalStateException(e);
+		}
+		stopMetrics();
+		return collect(true);
+	}
+	
+	/**
+	 * Runs the simulation on the discrete-event timing engine, returning once the results 
+	 * have been printed.
+	 */
+	public void runTimed() {
+		runEvents();
+		dispatcherComplete();
+	}
+	
+	/**
+	 * Runs the simulation on the discrete-event timing engine without printing anything.
+	 * 
+	 * @return The results of the simulation.
+	 */
+	public SimResult simulateTimed() {
+		runEvents();
+		stopMetrics();
+		return collect(true);
+	}
+	
+	/**
+	 * Runs the simulation sampled, printing the estimated statistics once every CPU has 
+	 * finished its trace.
+	 * 
+	 * @param thePeriod References each CPU performs between the starts of windows.
+	 * @param theWindow References each CPU performs in detail in each window.
+	 * @param theWarmup References each CPU is fast-forwarded through before each window, 
+	 * those before them being skipped.
+	 */
+	public void runSampled(final long thePeriod, final int theWindow, final long theWarmup) {
+		Sampling sampling = simulateSampled(thePeriod, theWindow, theWarmup);
+		report(sampling);
+	}
+	
+	/**
+	 * Runs the simulation sampled on the calling thread without printing anything, every 
+	 * reference between windows being fast-forwarded through.
+	 * 
+	 * @param thePeriod References each CPU performs between the starts of windows.
+	 * @param theWindow References each CPU performs in detail in each window.
+	 * @return The estimates from the windows.
+	 * @throws IllegalArgumentException If the window is not positive or exceeds the period.
+	 */
+	public Sampling simulateSampled(final long thePeriod, final int theWindow) {
+		return simulateSampled(thePeriod, theWindow, thePeriod - theWindow);
+	}
+	
+	/**
+	 * Runs the simulation sampled on the calling thread without printing anything. Each 
+	 * period, every CPU skips all but theWarmup and theWindow references, then is 
+	 * fast-forwarded through theWarmup references, both QUANTUM at a time in CPU order so 
+	 * CPUs sharing a streamed trace never drift further apart than its ring. theWindow 
+	 * references are then simulated in lock-step epochs. The statistics are observed as 
+	 * their change over each window.
+	 * 
+	 * @param thePeriod References each CPU performs between the starts of windows.
+	 * @param theWindow References each CPU performs in detail in each window.
+	 * @param theWarmup References each CPU is fast-forwarded through before each window, 
+	 * those before them being skipped.
+	 * @return The estimates from the windows.
+	 * @throws IllegalArgumentException If the window is not positive, or the window and 
+	 * warmup together exceed the period.
+	 */
+	public Sampling simulateSampled(final long thePeriod, final int theWindow, 
+			final long theWarmup) {
+		Sampling sampling = new Sampling(thePeriod, theWindow, theWarmup);
+		dispatchers = new Dispatcher[] {new Dispatcher(0, 1)};
+		dispatchersRunning.set(1);
+		Warmer warmer = new Warmer();
+		long[] remaining = new long[cpus.length];
+		boolean running = true;
+		while (running) {
+			//skip to the warmup, then fast-forward every CPU to the start of the next window
+			Arrays.fill(remaining, thePeriod - theWindow - theWarmup);
+			for (boolean skipping = true; skipping; ) {
+				skipping = false;
+				for (int i = 0; i < cpus.length; i++) {
+					int skipped = cpus[i].skip((int) Math.min(remaining[i], QUANTUM));
+					remaining[i] -= skipped;
+					sampling.forwarded(skipped);
+					skipping |= skipped != 0 && remaining[i] != 0;
+				}
+			}
+			Arrays.fill(remaining, theWarmup);
+			for (boolean warming = true; warming; ) {
+				warming = false;
+				for (int i = 0; i < cpus.length; i++) {
+					int warmed = cpus[i].warm((int) Math.min(remaining[i], QUANTUM), warmer);
+					remaining[i] -= warmed;
+					sampling.forwarded(warmed);
+					warming |= warmed != 0 && remaining[i] != 0;
+				}
+			}
+			//simulate the window in detail
+			SimResult before = collect(false);
+			Arrays.fill(remaining, theWindow);
+			running = false;
+			for (boolean stepping = true; stepping; ) {
+				stepping = false;
+				for (int i = 0; i < cpus.length; i++) {
+					int performed = remaining[i] == 0 ? 0 
+							: cpus[i].step((int) Math.min(remaining[i], QUANTUM));
+					remaining[i] -= performed;
+					stepping |= performed != 0 && remaining[i] != 0;
+					running |= performed != 0;
+				}
+				for (CPU cpu : cpus) {
+					cpu.getBus().drainTo(dispatchers[0], Integer.MAX_VALUE);
+				}
+			}
+			sampling.add(before, collect(false));
+		}
+		stopMetrics();
+		return sampling;
+	}
+	
+	/**
+	 * Runs the CPUs in the order of their clocks until every CPU has finished its trace.
+	 */
+	private void runEvents() {
+		dispatchers = new Dispatcher[] {new Dispatcher(0, 1)};
+		dispatchersRunning.set(1);
+		
+		EventQueue events = new EventQueue(cpus.length);
+		for (int i = 0; i < cpus.length; i++) {
+			//a restored CPU resumes at its clock, a new one at 0
+			events.add(cpus[i].cycles(), i);
+		}
+		while (!events.isEmpty()) {
+			int next = events.poll();
+			CPU cpu = cpus[next];
+			if (cpu.step(1) != 0) {
+				//service the reference's misses, stalling the CPU for their latency
+				cpu.getBus().drainTo(dispatchers[0], Integer.MAX_VALUE);
+				events.add(cpu.cycles(), next);
+				checkpoint(1);
+			}
+		}
+		finishCheckpoints();
+	}
+	
+	/**
+	 * Runs lock-step epochs until every CPU has finished its trace.
+	 * 
+	 * @param thePool Runs the CPUs' quanta, or null to run them on the calling thread.
+	 * @throws InterruptedException If interrupted while waiting at the barrier.
+	 * @throws ExecutionException If a CPU fails during its quantum.
+	 */
+	private void runEpochs(final ExecutorService thePool) 
+			throws InterruptedException, ExecutionException {
+		//a single dispatcher services every CPU, giving coherence events a fixed order
+		dispatchers = new Dispatcher[] {new Dispatcher(0, 1)};
+		dispatchersRunning.set(1);
+		
+		List<Callable<Integer>> quanta = new ArrayList<Callable<Integer>>();
+		for (final CPU cpu : cpus) {
+			quanta.add(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return cpu.step(QUANTUM);
+				}
+			});
+		}
+		long performed = 1;
+		while (performed != 0) {
+			performed = 0;
+			if (thePool == null) {
+				for (CPU cpu : cpus) {
+					performed += cpu.step(QUANTUM);
+				}
+			} else {
+				//invokeAll returns once every CPU has finished its quantum
+				for (Future<Integer> quantum : thePool.invokeAll(quanta)) {
+					performed += quantum.get();
+				}
+			}
+			for (CPU cpu : cpus) {
+				cpu.getBus().drainTo(dispatchers[0], Integer.MAX_VALUE);
+			}
+			checkpoint(performed);
+		}
+		finishCheckpoints();
+	}
+	
+	/**
+	 * Counts references performed towards the next checkpoint, capturing one once due. Must
+	 * only be called between epochs, while every bus is empty.
+	 * 
+	 * @param theReferences References performed by all CPUs since the last call.
+	 * @throws IllegalStateException If a checkpoint cannot be written.
+	 */
+	private void checkpoint(final long theReferences) {
+		if (checkpoint == null) {
+			return;
+		}
+		sinceCheckpoint += theReferences;
+		try {
+			//a checkpoint still being written postpones the next to the following epoch
+			if (sinceCheckpoint >= checkpointInterval && checkpoint.write(this)) {
+				sinceCheckpoint = 0;
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Checkpoint failed", e);
+		}
+	}
+	
+	/**
+	 * Writes a checkpoint of the finished simulation, if enabled, and waits for it.
+	 * 
+	 * @throws IllegalStateException If the checkpoint cannot be written.
+	 */
+	private void finishCheckpoints() {
+		if (checkpoint == null) {
+			return;
+		}
+		try {
+			checkpoint.finish();
+			checkpoint.write(this);
+			checkpoint.close();
+		} catch (IOException e) {
+			throw new IllegalStateException("Checkpoint failed", e);
+		}
+	}
+	
+	/**
+	 * Testing purposes currently. 
+	 * 
+	 * @param theArgs Command-line inputs, optionally the trace file to replay (or one per
+	 * CPU), the number of CPUs, "directory" to use directory-based coherence, "lockstep" for
+	 * a deterministic run, "timed" for the discrete-event timing engine, "stream" to
+	 * simulate a CSV trace while it is still being read, "shard" to split a trace between
+	 * the CPUs by its thread column, "metrics" to publish live metrics (optionally
+	 * "metrics=" followed by the milliseconds between intervals), "line=" and "sectors="
+	 * followed by the bytes and sectors in each line, "prefetch=" followed by a Prefetch and
+	 * "degree=" by the lines it prefetches per miss, "inclusion=" followed by an Inclusion,
+	 * "protocol=" followed by a Protocol, "memory=" followed by a Memory, "sample=" followed
+	 * by the references between sampled windows and "window=" by the references simulated in
+	 * detail in each, "warmup=" followed by the references fast-forwarded through before
+	 * each window (by default all of them, the rest being skipped), "checkpoint=" followed
+	 * by a file to checkpoint lock-step and timed runs to, every "interval=" references,
+	 * "restore=" followed by a checkpoint to resume from, and "l1=", "l2=" or "l3=" followed
+	 * by a Replacement to set a level's policy.
+	 */
+	public static void main(String... theArgs) {		
+		List<String> traceFiles = new ArrayList<String>();
+		int cpuTotal = SimConfig.CPU_TOTAL;
+		boolean directory = false, lockStep = false, timed = false, stream = false;
+		boolean shard = false;
+		int lineSize = SimConfig.LINE_SIZE, sectors = SimConfig.SECTORS;
+		Prefetch prefetch = SimConfig.PREFETCH;
+		int degree = SimConfig.PREFETCH_DEGREE;
+		Inclusion inclusion = SimConfig.INCLUSION;
+		Protocol protocol = SimConfig.PROTOCOL;
+		Memory memory = SimConfig.MEMORY;
+		long metricsPeriod = -1;
+		long samplePeriod = -1;
+		int window = SAMPLE_WINDOW;
+		long warmup = -1;
+		String checkpointFile = null, restoreFile = null;
+		long interval = Checkpoint.INTERVAL;
+		Replacement[] replacement = {Replacement.RANDOM, Replacement.RANDOM, 
+				Replacement.RANDOM};
+		for (String arg : theArgs) {
+			if (arg.matches("l[123]=\\w+")) {
+				replacement[arg.charAt(1) - '1'] = 
+						Replacement.valueOf(arg.substring(3).toUpperCase());
+			} else if (arg.equals("directory")) {
+				directory = true;
+			} else if (arg.equals("lockstep")) {
+				lockStep = true;
+			} else if (arg.equals("timed")) {
+				timed = true;
+			} else if (arg.equals("stream")) {
+				stream = true;
+			} else if (arg.equals("shard")) {
+				shard = true;
+			} else if (arg.matches("line=\\d+")) {
+				lineSize = Integer.parseInt(arg.substring(5));
+			} else if (arg.matches("sectors=\\d+")) {
+				sectors = Integer.parseInt(arg.substring(8));
+			} else if (arg.matches("prefetch=\\w+")) {
+				prefetch = Prefetch.valueOf(arg.substring(9).toUpperCase());
+			} else if (arg.matches("degree=\\d+")) {
+				degree = Integer.parseInt(arg.substring(7));
+			} else if (arg.matches("inclusion=\\w+")) {
+				inclusion = Inclusion.valueOf(arg.substring(10).toUpperCase());
+			} else if (arg.matches("protocol=\\w+")) {
+				protocol = Protocol.valueOf(arg.substring(9).toUpperCase());
+			} else if (arg.matches("memory=\\w+")) {
+				memory = Memory.valueOf(arg.substring(7).toUpperCase());
+			} else if (arg.matches("sample=\\d+")) {
+				samplePeriod = Long.parseLong(arg.substring(7));
+			} else if (arg.matches("window=\\d+")) {
+				window = Integer.parseInt(arg.substring(7));
+			} else if (arg.matches("warmup=\\d+")) {
+				warmup = Long.parseLong(arg.substring(7));
+			} else if (arg.startsWith("checkpoint=")) {
+				checkpointFile = arg.substring(11);
+			} else if (arg.matches("interval=\\d+")) {
+				interval = Long.parseLong(arg.substring(9));
+			} else if (arg.startsWith("restore=")) {
+				restoreFile = arg.substring(8);
+			} else if (arg.matches("metrics(=\\d+)?")) {
+				metricsPeriod = arg.length() > 8 ? Long.parseLong(arg.substring(8)) 
+						: Metrics.PERIOD;
+			} else if (arg.matches("\\d+")) {
+				cpuTotal = Integer.parseInt(arg);
+			} else {
+				traceFiles.add(arg);
+			}
+		}
+		if (traceFiles.isEmpty()) {
+			traceFiles.add(TRACE_FILE);
+		}
+		
+		Trace[] traces;
+		if (traceFiles.size() > 1) {
+			//a trace per CPU, each streamed or read independently
+			cpuTotal = traceFiles.size();
+			traces = new Trace[cpuTotal];
+			for (int i = 0; i < traces.length; i++) {
+				traces[i] = stream ? streamTrace(traceFiles.get(i), 1) 
+						: readTrace(traceFiles.get(i));
+			}
+		} else if (shard) {
+			traces = shardTrace(traceFiles.get(0), cpuTotal);
+		} else {
+			traces = shared(stream ? streamTrace(traceFiles.get(0), cpuTotal) 
+					: readTrace(traceFiles.get(0)), cpuTotal);
+		}
+		Simulator s = new Simulator(traces, new SimConfig().with("cpus", 
+				String.valueOf(cpuTotal)).with("directory", String.valueOf(directory))
+				.with("l1policy", replacement[0].name()).with("l2policy", replacement[1].name())
+				.with("l3policy", replacement[2].name()).with("linesize", String.valueOf(lineSize))
+				.with("sectors", String.valueOf(sectors)).with("prefetch", prefetch.name())
+				.with("prefetchdegree", String.valueOf(degree))
+				.with("inclusion", inclusion.name()).with("protocol", protocol.name())
+				.with("memory", memory.name()));		
+		if (restoreFile != null) {
+			try {
+				s.restore(restoreFile);
+			} catch (IOException e) {
+				System.err.println("ERROR RESTORING CHECKPOINT: " + e.getMessage());
+				return;
+			}
+		}
+		if (checkpointFile != null) {
+			s.enableCheckpoints(checkpointFile, interval);
+		}
+		if (metricsPeriod >= 0) {
+			s.enableMetrics(metricsPeriod);
+		}
+		if (samplePeriod >= 0) {
+			window = (int) Math.min(window, samplePeriod);
+			s.runSampled(samplePeriod, window, warmup < 0 ? samplePeriod - window 
+					: Math.min(warmup, samplePeriod - window));
+		} else if (timed) {
+			s.runTimed();
+		} else if (lockStep) {
+			s.runLockStep();
+		} else {
+			//a CPU thread failing, as on a malformed streamed trace, would leave its 
+			//dispatcher waiting for it forever, so end the run rather than hang
+			Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+				@Override
+				public void uncaughtException(final Thread theThread, final Throwable theError) {
+					theError.printStackTrace();
+					System.exit(1);
+				}
+			});
+			s.start();
+		}
+	}
+	
+	/**
+	 * Places an item into L3, either evicted from a CPU's L2 or, if L3 is inclusive, filled
+	 * into a CPU. A line evicted from an inclusive L3 is back-invalidated from every CPU.
+	 * 
+	 * @param theAddress The address of the item.
+	 * @param theListener Receives the events raised by back-invalidation.
+	 */
+	private void fillL3(final int theAddress, final BusListener theListener) {
+		//boolean flag for denoting item has been placed
+		boolean placed = false;
+		//calculate index and tag for the L3 cache
+		int index = L3.index(theAddress);
+		int tag = L3.tag(theAddress);
+		synchronized (L3) {
+			if (config.inclusion != Inclusion.NINE) {
+				int slot = L3.slotFor(index, tag);
+				if (slot != -1 && L3.holds(slot)) {
+					L3.touch(slot);
+					return;
+				}
+				if (slot == -1) {
+					slot = L3.victim(index);
+					if (config.inclusion == Inclusion.INCLUSIVE && L3.holds(slot)) {
+						for (CPU cpu : cpus) {
+							cpu.backInvalidate(L3.address(slot), theListener);
+						}
+					}
+				}
+				L3.insert(slot, tag, Cache.EXCLUSIVE, theAddress, -1, -1);
+				return;
+			}
+			//Scan L3 cache within the set for an available slot
+			int free = L3.find(index, Cache.NO_TAG);
+			if (free != -1) {
+				L3.insert(free, tag, Cache.EXCLUSIVE, theAddress, -1, -1);
+				//Item was placed in L3
+				placed = true;
+			}
+			//Item was not placed in an empty slot, something needs to be evicted
+			if (!placed) {
+				L3.insert(L3.victim(index), tag, Cache.EXCLUSIVE, theAddress, -1, -1);
+			}
+		}
+	}
+	
+	/**
+	 * Looks an address up in L3. An exclusive L3 gives the line up to the CPU it is filled 
+	 * into.
+	 * 
+	 * @param theAddress The address.
+	 * @return True if L3 holds the address.
+	 */
+	private boolean probeL3(final int theAddress) {
+		synchronized (L3) {
+			int slot = L3.probe(theAddress);
+			if (slot == -1) {
+				return false;
+			}
+			if (config.inclusion == Inclusion.EXCLUSIVE) {
+				L3.clear(slot);
+			} else {
+				L3.touch(slot);
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * @param theAddress An address.
+	 * @param theCpu The CPU reading the address.
+	 * @return Cycles taken to read the address from memory.
+	 */
+	private int memoryLatency(final int theAddress, final CPU theCpu) {
+		if (memory != null) {
+			return memory.read(theAddress, theCpu.cycles());
+		}
+		return theAddress < FIRST_MEM_SIZE ? FIRST_MEM_LATENCY : SECOND_MEM_LATENCY;
+	}
+	
+	/**
+	 * @param theAddress An address.
+	 * @param theCpu The CPU writing the address.
+	 * @return Cycles the CPU stalls writing the address to memory.
+	 */
+	private int writeLatency(final int theAddress, final CPU theCpu) {
+		if (memory != null) {
+			return memory.write(theAddress, theCpu.cycles());
+		}
+		return SECOND_MEM_LATENCY;
+	}
+	
+	/**
+	 * Called by each dispatcher as it finishes. Once all have, prints out the final values.
+	 */
+	private void dispatcherComplete() {
+		if (dispatchersRunning.decrementAndGet() != 0) {
+			return;
+		}
+		stopMetrics();
+		report(collect(true));
+	}
+	
+	/**
+	 * Stops publishing metrics, if enabled.
+	 */
+	private void stopMetrics() {
+		if (metrics != null) {
+			metrics.stop();
+		}
+	}
+	
+	/**
+	 * Publishes the simulation's statistics as an MBean for the rest of its run, printing
+	 * interval rates every period. Must be called before the simulation is run.
+	 * 
+	 * @param thePeriod Milliseconds between printed intervals, or 0 for none.
+	 */
+	public void enableMetrics(final long thePeriod) {
+		metrics = new Metrics(this, thePeriod);
+		metrics.start();
+	}
+	
+	/**
+	 * Writes a checkpoint of the simulation at intervals while lock-step or timed runs, and
+	 * once they finish. Must be called before the simulation is run.
+	 * 
+	 * @param theFileName The checkpoint file, replaced by each checkpoint.
+	 * @param theInterval References performed by all CPUs between checkpoints.
+	 */
+	public void enableCheckpoints(final String theFileName, final long theInterval) {
+		checkpoint = new Checkpoint(theFileName);
+		checkpointInterval = theInterval;
+	}
+	
+	/**
+	 * Restores the simulation from a checkpoint, to be resumed by running it. Must be called
+	 * before the simulation is run, on a simulator constructed with the configuration and 
+	 * traces of the one checkpointed.
+	 * 
+	 * @param theFileName The checkpoint file.
+	 * @throws IOException If the file cannot be read or was checkpointed from a different
+	 * configuration or longer traces.
+	 */
+	public void restore(final String theFileName) throws IOException {
+		Checkpoint.read(theFileName, this);
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		for (String name : SimConfig.PARAMETERS) {
+			theOut.writeUTF(config.get(name));
+		}
+		r.save(theOut);
+		synchronized (L3) {
+			L3.save(theOut);
+		}
+		if (snoopFilter != null) {
+			snoopFilter.save(theOut);
+		}
+		if (memory != null) {
+			memory.save(theOut);
+		}
+		for (StripedCounter statistic : statistics()) {
+			Checkpoint.write(theOut, statistic);
+		}
+		for (CPU cpu : cpus) {
+			cpu.save(theOut);
+		}
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		for (String name : SimConfig.PARAMETERS) {
+			String value = theIn.readUTF();
+			if (!value.equals(config.get(name))) {
+				throw new IOException("Checkpointed " + name + " " + value + " does not match "
+						+ config.get(name));
+			}
+		}
+		r.restore(theIn);
+		synchronized (L3) {
+			L3.restore(theIn);
+		}
+		if (snoopFilter != null) {
+			snoopFilter.restore(theIn);
+		}
+		if (memory != null) {
+			memory.restore(theIn);
+		}
+		for (StripedCounter statistic : statistics()) {
+			Checkpoint.read(theIn, statistic);
+		}
+		for (CPU cpu : cpus) {
+			cpu.restore(theIn);
+		}
+		//skip every CPU to its position QUANTUM at a time in CPU order, as CPUs sharing a 
+		//streamed trace must stay within its ring of one another
+		for (boolean skipping = true; skipping; ) {
+			skipping = false;
+			for (CPU cpu : cpus) {
+				skipping |= cpu.resume(QUANTUM) != 0;
+			}
+		}
+	}
+	
+	/**
+	 * @return The simulator's own statistics, in the order they are checkpointed.
+	 */
+	private StripedCounter[] statistics() {
+		List<StripedCounter> statistics = new ArrayList<StripedCounter>(Arrays.asList(
+				l3missNum, l3hitNum, memCycles, snoopsSent, snoopsSaved, invalidationsSent,
+				invalidationsSaved));
+		for (StripedCounter[] row : transitions) {
+			statistics.addAll(Arrays.asList(row));
+		}
+		return statistics.toArray(new StripedCounter[statistics.size()]);
+	}
+	
+	/**
+	 * Sums the statistics gathered so far. May be called from any thread while the 
+	 * simulation runs, each counter being read once without stopping the CPUs. The caches
+	 * are not read, so no lines are counted as resident.
+	 * 
+	 * @return The results of the simulation so far.
+	 */
+	public SimResult snapshot() {
+		return collect(false);
+	}
+	
+	/**
+	 * Sums the statistics of every CPU and dispatcher.
+	 * 
+	 * @param theResident Whether to count the distinct lines resident in every cache, which
+	 * reads them all, so is only done once the simulation has finished.
+	 * @return The results of the simulation.
+	 */
+	private SimResult collect(final boolean theResident) {
+		long[] counts = new long[28];
+		for (CPU cpu : cpus) {
+			long l1missNum = cpu.l1missNum.sum(), l2missNum = cpu.l2missNum.sum();
+			long cycles = cpu.cycles();
+			counts[0] += cpu.l1hitNum.sum();
+			counts[1] += l1missNum;
+			counts[2] += cpu.l2hitNum.sum();
+			counts[3] += l2missNum;
+			counts[6] += l1missNum * config.l1Latency + l2missNum * config.l2Latency;
+			counts[11] += cpu.references.sum();
+			counts[12] += cycles;
+			counts[13] = Math.max(counts[13], cycles);
+			counts[14] += cpu.lineFills.sum();
+			counts[15] += cpu.sectorFills.sum();
+			counts[16] += cpu.prefetchesIssued.sum();
+			counts[17] += cpu.prefetchesUseful.sum();
+			counts[18] += cpu.prefetchesLate.sum();
+			counts[19] += cpu.prefetchesUseless.sum();
+			counts[20] += cpu.backInvalidations.sum();
+		}
+		if (theResident) {
+			Set<Integer> lines = new HashSet<Integer>();
+			for (CPU cpu : cpus) {
+				cpu.lines(lines);
+			}
+			synchronized (L3) {
+				L3.lines(lines);
+			}
+			counts[21] = lines.size();
+		}
+		counts[4] = l3hitNum.sum();
+		counts[5] = l3missNum.sum();
+		counts[6] += counts[5] * config.l3Latency + memCycles.sum();
+		counts[7] = snoopsSent.sum();
+		counts[8] = snoopsSaved.sum();
+		counts[9] = invalidationsSent.sum();
+		counts[10] = invalidationsSaved.sum();
+		for (int tier = 0; memory != null && tier < MemoryController.TIERS; tier++) {
+			for (int i = 0; i < MemoryController.STATISTICS.length; i++) {
+				counts[22 + i] += memory.count(tier, i);
+			}
+		}
+		long[][] changes = new long[transitions.length][transitions.length];
+		for (int from = 0; from < transitions.length; from++) {
+			for (int to = 0; to < transitions[from].length; to++) {
+				changes[from][to] = transitions[from][to].sum();
+			}
+		}
+		return new SimResult(config, counts, changes);
+	}
+	
+	/**
+	 * Prints the results of the simulation.
+	 * 
+	 * @param theResult The results.
+	 */
+	private void report(final SimResult theResult) {
+		long[][] transitions = theResult.transitions;
+		byte[] states = config.protocol.states();
+		System.out.format("\n[L3] Hits: %d Misses: %d\n\n", theResult.l3Hits, 
+				theResult.l3Misses);
+		System.out.format("%-5s %10s %10s %10s %10s\n", "CPU", "L1 Hits", "L1 Misses", "L2 Hits",
+				"L2 Misses");
+		for (CPU cpu : cpus) {
+			System.out.format("%-5d %10d %10d %10d %10d\n", cpu.cpuNumber, cpu.l1hitNum.sum(),
+					cpu.l1missNum.sum(), cpu.l2hitNum.sum(), cpu.l2missNum.sum());
+		}
+		System.out.format("\nTotal hits: %d Total Misses: %d Total Cycles: %d\n", 
+				theResult.hits(), theResult.misses(), theResult.cycles);
+		float hitP = theResult.hitPercentage();
+		float missP = 100 - hitP;
+		System.out.format("Hit Percentage: %.2f%% Miss Percentage: %.2f%%\n\n", hitP, missP);
+		System.out.format("%s STATE CHANGES (from row to column)\n%-5s", 
+				config.protocol.name(), "");
+		for (byte to : states) {
+			System.out.format(" %10s", Cache.STATE_NAMES.charAt(to));
+		}
+		for (byte from : states) {
+			System.out.format("\n%-5s", Cache.STATE_NAMES.charAt(from));
+			for (byte to : states) {
+				System.out.format(" %10d", transitions[from][to]);
+			}
+		}
+		System.out.print("\n\n");
+		System.out.format("SNOOP MESSAGES (%s)\nSnoops sent %d saved %d\nInvalidations sent %d "
+				+ "saved %d", snoopFilter == null ? "broadcast" : "directory", 
+				theResult.snoopsSent, theResult.snoopsSaved, theResult.invalidationsSent, 
+				theResult.invalidationsSaved);
+		
+		System.out.format("\n\nTIMING\n%-5s %10s %12s %7s", "CPU", "References", "Cycles", 
+				"CPI");
+		for (Stall stall : Stall.values()) {
+			System.out.format(" %10s", stall);
+		}
+		System.out.println();
+		for (CPU cpu : cpus) {
+			long references = cpu.references.sum();
+			System.out.format("%-5d %10d %12d %7.2f", cpu.cpuNumber, references, 
+					cpu.cycles(), (double) cpu.cycles() / Math.max(references, 1));
+			for (StripedCounter cycles : cpu.stalls) {
+				System.out.format(" %10d", cycles.sum());
+			}
+			System.out.println();
+		}
+		System.out.format("Makespan: %d cycles CPI: %.2f\n", theResult.makespan, 
+				theResult.cpi());
+		System.out.format("\nFILLS (%d byte lines, %d sectors)\nLines %d Sectors %d\n", 
+				config.lineSize, config.sectors, theResult.lineFills, theResult.sectorFills);
+		System.out.format("\nPREFETCH (%s, degree %d)\nIssued %d Useful %d Late %d Useless %d\n",
+				config.prefetch.name().toLowerCase(), config.prefetchDegree, 
+				theResult.prefetchesIssued, theResult.prefetchesUseful, theResult.prefetchesLate, 
+				theResult.prefetchesUseless);
+		System.out.format("\nHIERARCHY (%s)\nBack-invalidations %d Resident lines %d of %d\n",
+				config.inclusion.name().toLowerCase(), theResult.backInvalidations, 
+				theResult.residentLines, config.cpuTotal * (2L * config.l1Size + config.l2Size) 
+				+ config.l3Size);
+		if (memory != null) {
+			System.out.format("\nMEMORY (%s)\n%-5s", config.memory.name().toLowerCase(), 
+					"Tier");
+			for (String statistic : MemoryController.STATISTICS) {
+				System.out.format(" %12s", statistic);
+			}
+			System.out.format(" %12s\n", "utilisation");
+			for (int tier = 0; tier < MemoryController.TIERS; tier++) {
+				System.out.format("%-5s", MemoryController.TIER_NAMES[tier]);
+				for (int i = 0; i < MemoryController.STATISTICS.length; i++) {
+					System.out.format(" %12d", memory.count(tier, i));
+				}
+				System.out.format(" %11.2f%%\n", 100.0 * memory.busyCycles(tier) 
+						/ Math.max(theResult.makespan, 1));
+			}
+		}
+	}
+	
+	/**
+	 * Prints the statistics estimated by a sampled simulation, each as its rate per 
+	 * reference and its total over the traces, with their confidence intervals.
+	 * 
+	 * @param theSampling The estimates.
+	 */
+	private void report(final Sampling theSampling) {
+		long references = theSampling.references();
+		System.out.format("\nSAMPLED (%d windows of %d references every %d per CPU, warmed "
+				+ "for %d)\nReferences %d Detailed %d (%.2f%%)\n", theSampling.windows(), 
+				theSampling.window, theSampling.period, theSampling.warmup, references, 
+				theSampling.detailed(), 100.0 * theSampling.detailed() / Math.max(references, 1));
+		System.out.format("%-12s %14s %12s %18s %16s\n", "Statistic", "Per reference", 
+				"+-" + Sampling.CONFIDENCE + "%", "Estimate", "+-");
+		for (int i = 0; i < Sampling.STATISTICS.length; i++) {
+			double halfWidth = theSampling.halfWidth(i);
+			System.out.format("%-12s %14.4f %12.4f %18.0f %16.0f\n", Sampling.STATISTICS[i], 
+					theSampling.mean(i), halfWidth, theSampling.estimate(i), 
+					halfWidth * references);
+		}
+		System.out.format("CPI: %.2f +- %.2f\n", theSampling.mean(Sampling.CORE_CYCLES), 
+				theSampling.halfWidth(Sampling.CORE_CYCLES));
+	}
+	
+	/**
+	 * Dispatch thread servicing the buses of the CPUs numbered theId + 1, 
+	 * theId + 1 + theStride and so on.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private class Dispatcher implements BusListener, Runnable {
+		/** Index of this dispatcher. */
+		private final int id;
+		/** Distance between the indices of the CPUs serviced. */
+		private final int stride;
+		/** Counter to denote when this dispatcher's CPUs are complete. */
+		private int threadsComplete;
+		/** Number of CPUs serviced by this dispatcher. */
+		private int cpuTotal;
+		/** Sharers read from the snoop filter. */
+		private final long[] sharers;
+		
+		/** Item being serviced. */
+		private final MemoryInfo serviced = new MemoryInfo();
+		/** Result of snooping a CPU. */
+		private final MemoryInfo snooped = new MemoryInfo();
+		/** Item supplied by the first CPU found holding a snooped item the protocol supplies. */
+		private final MemoryInfo supplied = new MemoryInfo();
+		/** Whether a CPU snooped for the item being serviced has supplied it. */
+		private boolean isSupplied;
+		/** Item being invalidated. */
+		private final MemoryInfo invalidated = new MemoryInfo();
+		
+		Dispatcher(final int theId, final int theStride) {
+			id = theId;
+			stride = theStride;
+			sharers = new long[snoopFilter == null ? 0 : snoopFilter.words()];
+			for (int i = id; i < cpus.length; i += stride) {
+				cpuTotal++;
+			}
+		}
+		
+		/**
+		 * Drains this dispatcher's CPUs' buses until all of them have completed.
+		 */
+		@Override
+		public void run() {
+			while (threadsComplete != cpuTotal) {
+				int drained = 0;
+				for (int i = id; i < cpus.length; i += stride) {
+					drained += cpus[i].getBus().drainTo(this, DISPATCH_BATCH);
+				}
+				if (drained == 0) {
+					//nothing waiting, let the CPUs run
+					Thread.yield();
+				}
+			}
+			dispatcherComplete();
+		}
+		
+		/**
+		 * Called for each event raised by a CPU.
+		 */
+		@Override
+		public void onMessage(final CacheEvent theEvent, final int theCpu, 
+				final int theIAddress, final int theIOValue, final int theDAddress, 
+				final byte theStartState, final byte theEndState) {
+			switch (theEvent) {
+				case MISS:
+					//Called when an item is not found within the L1 or L2 caches
+					serviceMiss(cpus[theCpu - 1], 
+							serviced.set(theIAddress, theIOValue, theDAddress));
+					break;
+				case PREFETCH:
+					//a CPU prefetches a line into its L2 from L3 or memory, without stalling
+					prefetch(cpus[theCpu - 1], serviced.set(theIAddress, theIOValue, 
+							theDAddress));
+					break;
+				case L3_FILL:
+					//A CPU has an item needing to be placed into L3
+					fillL3(theIAddress, this);
+					break;
+				case DATA_WRITE:
+					//a CPU has done a data-write call
+					int latency = writeLatency(theDAddress != -1 ? theDAddress : theIAddress, 
+							cpus[theCpu - 1]);
+					memCycles.add(latency);
+					cpus[theCpu - 1].stall(Stall.WRITE, latency);
+					break;
+				case MODIFIED:
+					//a CPU has modified its data
+					updateState(theCpu, theStartState, theEndState, theIAddress, theIOValue, 
+							theDAddress);
+					break;
+				case COMPLETE:
+					//Running count of how many threads have completed so far
+					threadsComplete++;
+					break;
+			}
+		}
+		
+		/**
+		 * Services a miss in a CPU's L1 and L2 caches.
+		 * 
+		 * @param theCpu The CPU that missed.
+		 * @param m The item missed.
+		 */
+		private void serviceMiss(final CPU theCpu, final MemoryInfo m) {
+			if (m.ioValue == 0) { //read instruction
+				//snoop the other CPUs, each holder changing state and the first able supplying
+				int holders = 0;
+				isSupplied = false;
+				if (snoopFilter == null) {
+					for (CPU other : cpus) {
+						if (other != theCpu && snoop(other, m)) {
+							holders++;
+						}
+					}
+				} else {
+					//only snoop the CPUs the filter records as possibly holding the item
+					int probed = 0;
+					snoopFilter.sharers(m.dAddress, sharers);
+					for (int w = 0; w < sharers.length; w++) {
+						for (long word = sharers[w]; word != 0; word &= word - 1) {
+							CPU other = cpus[w * Long.SIZE + Long.numberOfTrailingZeros(word)];
+							if (other != theCpu) {
+								probed++;
+								if (snoop(other, m)) {
+									holders++;
+								} else {
+									snoopFilter.remove(m.dAddress, other.cpuNumber);
+								}
+							}
+						}
+					}
+					snoopsSaved.add(cpus.length - 1 - probed);
+				}
+				//the copy joins any other holders' copies
+				byte state = config.protocol.next(Cache.INVALID, holders > 0 
+						? Protocol.FILL_SHARED : Protocol.FILL);
+				if (isSupplied) {
+					fill(theCpu, supplied, state);
+				} else if (config.inclusion != Inclusion.NINE && probeL3(m.dAddress)) {
+					//a managed hierarchy holds data lines in L3 too
+					l3hitNum.increment();
+					fill(theCpu, m, state);
+				} else { //no other CPU supplies this, fetch from memory
+					if (config.inclusion != Inclusion.NINE) {
+						l3missNum.increment();
+					}
+					int latency = memoryLatency(m.dAddress, theCpu);
+					memCycles.add(latency);
+					theCpu.stall(Stall.MEMORY, latency);
+					//add into the CPU's L1d
+					fill(theCpu, m, state);
+				}				
+			} else { //not a read instruction
+				//look through L3 set for item, a managed hierarchy looking up a write's data
+				if (probeL3(config.inclusion == Inclusion.NINE || m.ioValue == -1 ? m.iAddress 
+						: m.dAddress)) {
+					l3hitNum.increment();
+					//only the original hierarchy leaves the CPU to hit L3 again
+					if (config.inclusion != Inclusion.NINE) {
+						fill(theCpu, m, config.protocol.next(Cache.INVALID, Protocol.FILL));
+					}
+				} else {
+					//not found in L3, denote a L3 miss and make the CPU add to its L1
+					l3missNum.increment();
+					theCpu.stall(Stall.L3, L3.latency);
+					fill(theCpu, m, config.protocol.next(Cache.INVALID, Protocol.FILL));
+				}
+			}
+		}
+		
+		/**
+		 * Services a prefetch of a line into a CPU's L2, from L3 if it holds the line and 
+		 * otherwise from memory, through an inclusive L3.
+		 * 
+		 * @param theCpu The CPU prefetching.
+		 * @param m The item prefetched.
+		 */
+		private void prefetch(final CPU theCpu, final MemoryInfo m) {
+			int latency = L3.latency;
+			if (!probeL3(m.dAddress)) {
+				latency = memoryLatency(m.dAddress, theCpu);
+				if (config.inclusion == Inclusion.INCLUSIVE) {
+					fillL3(m.dAddress, this);
+				}
+			}
+			//no other CPU is snooped, so the line is filled as though they may hold it
+			theCpu.prefetched(m, config.protocol.next(Cache.INVALID, Protocol.FILL_SHARED), 
+					latency, this);
+		}
+		
+		/**
+		 * Snoops a CPU for an item, copying the item into supplied if it is the first holder 
+		 * the protocol lets supply it.
+		 * 
+		 * @param theOther The CPU snooped.
+		 * @param m The item snooped for.
+		 * @return True if the CPU holds the item.
+		 */
+		private boolean snoop(final CPU theOther, final MemoryInfo m) {
+			snoopsSent.increment();
+			int entry = theOther.snoop(m, snooped, this);
+			if (snooped.iAddress == -1) {
+				return false;
+			}
+			if (!isSupplied && (entry & Protocol.SUPPLY) != 0) {
+				isSupplied = true;
+				supplied.set(snooped.iAddress, snooped.ioValue, snooped.dAddress);
+			}
+			return true;
+		}
+		
+		/**
+		 * Adds an item to a CPU, and an inclusive L3, recording the CPU as a sharer of data 
+		 * items.
+		 * 
+		 * @param theCpu The CPU filled.
+		 * @param mem The item added.
+		 * @param theState The MESI state the item is added with.
+		 */
+		private void fill(final CPU theCpu, final MemoryInfo mem, final byte theState) {
+			transitions[Cache.INVALID][theState].increment();
+			theCpu.add(mem, theState, this);
+			if (config.inclusion == Inclusion.INCLUSIVE) {
+				//L3 holds every line held by a CPU, back-invalidating any it evicts
+				fillL3(mem.iAddress, this);
+				if (mem.ioValue != -1) {
+					fillL3(mem.dAddress, this);
+				}
+			}
+			if (snoopFilter != null && mem.ioValue != -1) {
+				snoopFilter.add(mem.dAddress, theCpu.cpuNumber);
+			}
+		}
+		
+		/**
+		 * Records a state change made by a CPU, invalidating the other CPUs' copies when the
+		 * item has been written and the protocol cannot rule out other copies.
+		 * 
+		 * @param theCpu The number of the CPU making the change.
+		 * @param theStartState The starting state.
+		 * @param theEndState The ending state.
+		 * @param theIAddress Instruction address of the item.
+		 * @param theIOValue I/O value of the item.
+		 * @param theDAddress Data address of the item.
+		 */
+		private void updateState(final int theCpu, final byte theStartState, 
+				final byte theEndState, final int theIAddress, final int theIOValue, 
+				final int theDAddress) {
+			transitions[theStartState][theEndState].increment();
+			//only writes end in the state the table gives a written line, which also says 
+			//whether other copies may exist
+			int entry = config.protocol.entry(theStartState, Protocol.WRITE);
+			if (theEndState == Protocol.state(entry) 
+					&& (entry & Protocol.INVALIDATE_OTHERS) != 0) {
+				invalidateOthers(theCpu, theIAddress, theIOValue, theDAddress);
+			}
+		}
+		
+		/**
+		 * Invalidates an item within every CPU other than the one passed.
+		 * 
+		 * @param theCpu The number of the CPU that modified the item.
+		 * @param theIAddress Instruction address of the item.
+		 * @param theIOValue I/O value of the item.
+		 * @param theDAddress Data address of the item.
+		 */
+		private void invalidateOthers(final int theCpu, final int theIAddress, 
+				final int theIOValue, final int theDAddress) {
+			MemoryInfo mem = invalidated.set(theIAddress, theIOValue, theDAddress);
+			if (snoopFilter == null) {
+				for (CPU other : cpus) {
+					if (other.cpuNumber != theCpu) {
+						invalidationsSent.increment();
+						other.invalidateData(mem, this);
+					}
+				}
+				return;
+			}
+			//only invalidate the CPUs the filter records as possibly holding the item
+			int probed = 0;
+			snoopFilter.sharers(theDAddress, sharers);
+			for (int w = 0; w < sharers.length; w++) {
+				for (long word = sharers[w]; word != 0; word &= word - 1) {
+					CPU other = cpus[w * Long.SIZE + Long.numberOfTrailingZeros(word)];
+					if (other.cpuNumber != theCpu) {
+						probed++;
+						invalidationsSent.increment();
+						if (!other.invalidateData(mem, this)) {
+							snoopFilter.remove(theDAddress, other.cpuNumber);
+						}
+					}
+				}
+			}
+			invalidationsSaved.add(cpus.length - 1 - probed);
+		}
+	}
+	
+	/**
+	 * Fills the CPUs' misses while they are fast-forwarded, keeping the contents of the 
+	 * caches and snoop filter warm. Misses are filled from L3 or memory without snooping 
+	 * the other CPUs, stalling or counting, and state changes and writes are ignored.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private class Warmer implements BusListener {
+		/** Item being filled. */
+		private final MemoryInfo warmed = new MemoryInfo();
+		
+		/**
+		 * Called for each miss of a CPU being fast-forwarded, and each event raised by 
+		 * filling it.
+		 */
+		@Override
+		public void onMessage(final CacheEvent theEvent, final int theCpu, 
+				final int theIAddress, final int theIOValue, final int theDAddress, 
+				final byte theStartState, final byte theEndState) {
+			switch (theEvent) {
+				case MISS:
+					fill(cpus[theCpu - 1], warmed.set(theIAddress, theIOValue, theDAddress));
+					break;
+				case L3_FILL:
+					fillL3(theIAddress, this);
+					break;
+				default:
+					//only the contents of the caches are kept warm
+					break;
+			}
+		}
+		
+		/**
+		 * Fills a missed item into a CPU, looking it up in L3 as the dispatcher would.
+		 * 
+		 * @param theCpu The CPU that missed.
+		 * @param m The item missed.
+		 */
+		private void fill(final CPU theCpu, final MemoryInfo m) {
+			byte state = config.protocol.next(Cache.INVALID, Protocol.FILL);
+			if (m.ioValue == 0) {
+				if (config.inclusion != Inclusion.NINE) {
+					probeL3(m.dAddress);
+				}
+			} else if (probeL3(config.inclusion == Inclusion.NINE || m.ioValue == -1 
+					? m.iAddress : m.dAddress) && config.inclusion == Inclusion.NINE) {
+				//the original hierarchy leaves the CPU to hit L3 again
+				return;
+			}
+			theCpu.add(m, state, this);
+			if (config.inclusion == Inclusion.INCLUSIVE) {
+				fillL3(m.iAddress, this);
+				if (m.ioValue != -1) {
+					fillL3(m.dAddress, this);
+				}
+			}
+			if (snoopFilter != null && m.ioValue != -1) {
+				snoopFilter.add(m.dAddress, theCpu.cpuNumber);
+			}
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Directory recording which CPUs may hold each line of data, so a miss only needs to snoop
+ * the CPUs that might supply it rather than broadcasting to all of them. Addresses are 
+ * recorded by their line, so a CPU holding any address of a line is a sharer of all of them.
+ * 
+ * <p>The filter is conservative: a CPU's bit is set whenever the CPU is filled with an 
+ * address and is only cleared once a snoop or invalidation of that CPU finds it no longer 
+ * holds the address. It therefore never misses a holder, it may only name CPUs that have 
+ * since evicted the address. Addresses with no remaining holders are removed.
+ * 
+ * <p>Entries are kept in open-addressing hash tables of primitive arrays (one sharer bit 
+ * per CPU), split into independently locked stripes so dispatchers rarely contend. The 
+ * tables are checkpointed as they are, so a restored filter probes exactly as the original.
+ * 
+ * @author Erik Tedder
+ */
+public class SnoopFilter implements Checkpointable {
+
+	/** Number of independently locked stripes, a power of two. */
+	private static final int STRIPES = 64;
+	/** Starting capacity of each stripe, a power of two. */
+	private static final int INITIAL_CAPACITY = 256;
+	/** Address stored in unused entries. */
+	private static final int NO_ADDRESS = Integer.MIN_VALUE;
+	
+	/** Number of longs needed for one bit per CPU. */
+	private final int words;
+	/** Shift dropping the offset within a line from an address. */
+	private final int offsetShift;
+	/** The stripes of the filter. */
+	private final Stripe[] stripes;
+	
+	/**
+	 * Constructs an empty filter of one byte lines.
+	 * 
+	 * @param theCpuTotal The number of CPUs tracked.
+	 */
+	public SnoopFilter(final int theCpuTotal) {
+		this(theCpuTotal, 1);
+	}
+	
+	/**
+	 * Constructs an empty filter.
+	 * 
+	 * @param theCpuTotal The number of CPUs tracked.
+	 * @param theLineSize Bytes in each line, a power of two.
+	 */
+	public SnoopFilter(final int theCpuTotal, final int theLineSize) {
+		offsetShift = Integer.numberOfTrailingZeros(theLineSize);
+		words = (theCpuTotal + Long.SIZE - 1) / Long.SIZE;
+		stripes = new Stripe[STRIPES];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+	
+	/**
+	 * @return The number of longs making up a sharer set.
+	 */
+	public int words() {
+		return words;
+	}
+	
+	/**
+	 * Copies the set of CPUs that may hold an address. Bit (n % 64) of word (n / 64) is set 
+	 * if CPU number n + 1 may hold it.
+	 * 
+	 * @param theAddress The address.
+	 * @param theSharers Array of at least words() longs to copy the set into.
+	 */
+	public void sharers(final int theAddress, final long[] theSharers) {
+		int line = theAddress >> offsetShift;
+		Stripe stripe = stripe(line);
+		synchronized (stripe) {
+			stripe.sharers(line, theSharers);
+		}
+	}
+	
+	/**
+	 * Records that a CPU may hold an address.
+	 * 
+	 * @param theAddress The address.
+	 * @param theCpu The number of the CPU.
+	 */
+	public void add(final int theAddress, final int theCpu) {
+		int line = theAddress >> offsetShift;
+		Stripe stripe = stripe(line);
+		synchronized (stripe) {
+			stripe.add(line, theCpu - 1);
+		}
+	}
+	
+	/**
+	 * Records that a CPU no longer holds an address.
+	 * 
+	 * @param theAddress The address.
+	 * @param theCpu The number of the CPU.
+	 */
+	public void remove(final int theAddress, final int theCpu) {
+		int line = theAddress >> offsetShift;
+		Stripe stripe = stripe(line);
+		synchronized (stripe) {
+			stripe.remove(line, theCpu - 1);
+		}
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				theOut.writeInt(stripe.addresses.length);
+				theOut.writeInt(stripe.size);
+				Checkpoint.write(theOut, stripe.addresses);
+				Checkpoint.write(theOut, stripe.bits);
+			}
+		}
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				int capacity = theIn.readInt();
+				if (Integer.bitCount(capacity) != 1) {
+					throw new IOException("Checkpointed snoop filter capacity " + capacity 
+							+ " is not a power of two");
+				}
+				stripe.allocate(capacity);
+				stripe.size = theIn.readInt();
+				Checkpoint.read(theIn, stripe.addresses);
+				Checkpoint.read(theIn, stripe.bits);
+			}
+		}
+	}
+	
+	/**
+	 * Spreads the bits of an address.
+	 * 
+	 * @param theAddress The address.
+	 * @return The hash of the address.
+	 */
+	private static int hash(final int theAddress) {
+		int h = theAddress * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	/**
+	 * @param theAddress An address.
+	 * @return The stripe holding the address.
+	 */
+	private Stripe stripe(final int theAddress) {
+		return stripes[hash(theAddress) & (STRIPES - 1)];
+	}
+	
+	/**
+	 * A linear-probing hash table from address to sharer bits. Callers hold its monitor.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private class Stripe {
+		/** Address of each entry. */
+		private int[] addresses;
+		/** Sharer bits of each entry, words() longs per entry. */
+		private long[] bits;
+		/** Number of entries in use. */
+		private int size;
+		
+		Stripe() {
+			allocate(INITIAL_CAPACITY);
+		}
+		
+		/**
+		 * Replaces the table with an empty one.
+		 * 
+		 * @param theCapacity The number of entries, a power of two.
+		 */
+		private void allocate(final int theCapacity) {
+			addresses = new int[theCapacity];
+			Arrays.fill(addresses, NO_ADDRESS);
+			bits = new long[theCapacity * words];
+			size = 0;
+		}
+		
+		/**
+		 * Finds the entry of an address, or the empty entry it would go in.
+		 * 
+		 * @param theAddress The address.
+		 * @return The entry.
+		 */
+		private int find(final int theAddress) {
+			int mask = addresses.length - 1;
+			//the low bits chose the stripe, so probe from the high bits
+			int entry = (hash(theAddress) >>> 6) & mask;
+			while (addresses[entry] != NO_ADDRESS && addresses[entry] != theAddress) {
+				entry = (entry + 1) & mask;
+			}
+			return entry;
+		}
+		
+		void sharers(final int theAddress, final long[] theSharers) {
+			int entry = find(theAddress);
+			if (addresses[entry] == NO_ADDRESS) {
+				Arrays.fill(theSharers, 0, words, 0L);
+			} else {
+				System.arraycopy(bits, entry * words, theSharers, 0, words);
+			}
+		}
+		
+		void add(final int theAddress, final int theBit) {
+			int entry = find(theAddress);
+			if (addresses[entry] == NO_ADDRESS) {
+				if ((size + 1) * 2 > addresses.length) {
+					grow();
+					entry = find(theAddress);
+				}
+				addresses[entry] = theAddress;
+				size++;
+			}
+			bits[entry * words + (theBit >>> 6)] |= 1L << theBit;
+		}
+		
+		void remove(final int theAddress, final int theBit) {
+			int entry = find(theAddress);
+			if (addresses[entry] == NO_ADDRESS) {
+				return;
+			}
+			bits[entry * words + (theBit >>> 6)] &= ~(1L << theBit);
+			for (int w = 0; w < words; w++) {
+				if (bits[entry * words + w] != 0) {
+					return;
+				}
+			}
+			delete(entry);
+		}
+		
+		/**
+		 * Deletes an entry, shifting back any later entries of its probe run so lookups
+		 * never need tombstones.
+		 * 
+		 * @param theEntry The entry to delete.
+		 */
+		private void delete(final int theEntry) {
+			int mask = addresses.length - 1;
+			int hole = theEntry;
+			int entry = (hole + 1) & mask;
+			while (addresses[entry] != NO_ADDRESS) {
+				int home = (hash(addresses[entry]) >>> 6) & mask;
+				//move the entry into the hole unless its home lies between the two
+				if (((entry - home) & mask) >= ((entry - hole) & mask)) {
+					addresses[hole] = addresses[entry];
+					System.arraycopy(bits, entry * words, bits, hole * words, words);
+					hole = entry;
+				}
+				entry = (entry + 1) & mask;
+			}
+			addresses[hole] = NO_ADDRESS;
+			Arrays.fill(bits, hole * words, (hole + 1) * words, 0L);
+			size--;
+		}
+		
+		/**
+		 * Doubles the capacity of the table.
+		 */
+		private void grow() {
+			int[] oldAddresses = addresses;
+			long[] oldBits = bits;
+			allocate(oldAddresses.length * 2);
+			for (int i = 0; i < oldAddresses.length; i++) {
+				if (oldAddresses[i] != NO_ADDRESS) {
+					int entry = find(oldAddresses[i]);
+					addresses[entry] = oldAddresses[i];
+					System.arraycopy(oldBits, i * words, bits, entry * words, words);
+					size++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,416 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass LRU stack distance (Mattson) analysis. The stack distance of a reference is the
+ * number of distinct lines mapping to the same set that were referenced since the last
+ * reference to its line. An LRU cache of any associativity A with that number of sets hits
+ * exactly the references whose distance is less than A. Distances are therefore measured once
+ * for every power-of-two number of sets, giving the hits of every power-of-two size and 
+ * associativity up to a maximum size from one pass over the trace.
+ * 
+ * <p>Within a set, a Fenwick tree over the set's own reference clock marks the last reference 
+ * to each address. The distance of a reference is then the number of marks after the 
+ * address's previous mark, found in O(log n). Addresses are numbered densely through an 
+ * open-addressing table, so each set count only keeps an int per address for its last mark.
+ * 
+ * <p>A CPU looks up the data address of writes in L1d and the instruction address of 
+ * everything else in L1i, each by its line. The curve is of that unified stream of lines. 
+ * Given a configuration, the instruction and data streams are also analysed alone, as L1i 
+ * and L1d, and the references missing the configured L1 are analysed as the stream L2 
+ * sees. Each level is modelled as an LRU cache without coherence, filled as it misses, so 
+ * the results are an estimate of the caches the Simulator models. L1 tracks a timed run 
+ * closely. L2 is estimated as an inclusive L2 would behave, whereas the default 
+ * non-inclusive non-exclusive L2 is only filled with L1 victims, including data lines filled
+ * on reads, so it usually hits more than estimated. Lock-step runs only fill at the end of
+ * each quantum, so they hit less than any estimate.
+ * 
+ * @author Erik Tedder
+ */
+public class StackDistance {
+	
+	/** Default largest cache size analysed. */
+	public static final int MAX_SIZE = 1 << 16;
+	/** Starting capacity of each set's Fenwick tree, a power of two. */
+	private static final int INITIAL_CLOCK = 16;
+	/** Starting capacity of the address table, a power of two. */
+	private static final int INITIAL_ADDRESSES = 1024;
+	/** Address stored in unused entries of the address table. */
+	private static final int NO_ADDRESS = Integer.MIN_VALUE;
+	
+	/** Largest cache size analysed. */
+	private final int maxSize;
+	/** Bits of an address giving its offset within its line. */
+	private final int offsetShift;
+	/** The configuration whose L1 and L2 are estimated, null for the curve alone. */
+	private final SimConfig config;
+	/** Index within levels of the configured L1's number of sets. */
+	private final int l1Level;
+	/** The instruction stream alone, as L1i sees it, null for the curve alone. */
+	private final StackDistance instructions;
+	/** The data stream alone, as L1d sees it, null for the curve alone. */
+	private final StackDistance data;
+	/** The references missing the configured L1, as L2 sees them, null for the curve alone. */
+	private final StackDistance missed;
+	/** levels[k] measures distances for 2^k sets. */
+	private final Level[] levels;
+	/** Addresses of the address table's entries. */
+	private int[] addresses;
+	/** Dense number of each address in the address table. */
+	private int[] ids;
+	/** Number of distinct addresses seen. */
+	private int distinct;
+	/** Number of references analysed. */
+	private long references;
+	
+	/**
+	 * Constructs an analysis of every cache size up to theMaxSize, with the default line 
+	 * size.
+	 * 
+	 * @param theMaxSize The largest cache size analysed, a power of two.
+	 * @throws IllegalArgumentException If theMaxSize is not a power of two.
+	 */
+	public StackDistance(final int theMaxSize) {
+		this(theMaxSize, SimConfig.LINE_SIZE, null);
+	}
+	
+	/**
+	 * Constructs an analysis of every cache size up to theMaxSize, with a configuration's 
+	 * line size, also estimating its L1 and L2.
+	 * 
+	 * @param theMaxSize The largest cache size analysed, a power of two.
+	 * @param theConfig Supplies the line size, and the sizes and associativity of L1 and L2.
+	 * @throws IllegalArgumentException If theMaxSize is not a power of two, or L1 or L2 is 
+	 * larger.
+	 */
+	public StackDistance(final int theMaxSize, final SimConfig theConfig) {
+		this(theMaxSize, theConfig.lineSize, theConfig);
+	}
+	
+	/**
+	 * Constructs an analysis of every cache size up to theMaxSize.
+	 * 
+	 * @param theMaxSize The largest cache size analysed, a power of two.
+	 * @param theLineSize Bytes in each line, a power of two.
+	 * @param theConfig The configuration whose L1 and L2 are estimated, null for none.
+	 * @throws IllegalArgumentException If theMaxSize is not a power of two, or the 
+	 * configuration's L1 or L2 is larger.
+	 */
+	private StackDistance(final int theMaxSize, final int theLineSize, 
+			final SimConfig theConfig) {
+		if (Integer.bitCount(theMaxSize) != 1) {
+			throw new IllegalArgumentException("Maximum size (" + theMaxSize 
+					+ ") must be a power of two");
+		}
+		if (theConfig != null && Math.max(theConfig.l1Size, theConfig.l2Size) > theMaxSize) {
+			throw new IllegalArgumentException("L1 (" + theConfig.l1Size + ") and L2 (" 
+					+ theConfig.l2Size + ") must be no larger than " + theMaxSize);
+		}
+		maxSize = theMaxSize;
+		offsetShift = Integer.numberOfTrailingZeros(theLineSize);
+		config = theConfig;
+		if (theConfig == null) {
+			l1Level = 0;
+			instructions = data = missed = null;
+		} else {
+			l1Level = Integer.numberOfTrailingZeros(theConfig.l1Size / theConfig.numOfWays);
+			instructions = new StackDistance(theMaxSize, theLineSize, null);
+			data = new StackDistance(theMaxSize, theLineSize, null);
+			missed = new StackDistance(theMaxSize, theLineSize, null);
+		}
+		levels = new Level[Integer.numberOfTrailingZeros(theMaxSize) + 1];
+		for (int k = 0; k < levels.length; k++) {
+			levels[k] = new Level(k);
+		}
+		addresses = new int[INITIAL_ADDRESSES];
+		ids = new int[INITIAL_ADDRESSES];
+		Arrays.fill(addresses, NO_ADDRESS);
+	}
+	
+	/**
+	 * Analyses every reference of a trace.
+	 * 
+	 * @param theTrace The trace.
+	 */
+	public void analyse(final Trace theTrace) {
+		TraceCursor cursor = theTrace.cursor();
+		while (cursor.next()) {
+			if (cursor.ioValue() == 1) {
+				access(cursor.dAddress(), true);
+			} else {
+				access(cursor.iAddress(), false);
+			}
+		}
+	}
+	
+	/**
+	 * Analyses a single reference, in L1d or L1i and, if it misses the configured L1, in L2.
+	 * 
+	 * @param theAddress The address referenced.
+	 * @param theData True if the address is looked up in L1d, false if in L1i.
+	 */
+	public void access(final int theAddress, final boolean theData) {
+		access(theAddress);
+		if (config != null && (theData ? data : instructions).access(theAddress, l1Level) 
+				>= config.numOfWays) {
+			missed.access(theAddress);
+		}
+	}
+	
+	/**
+	 * Analyses a single reference in the unified stream alone.
+	 * 
+	 * @param theAddress The address referenced.
+	 */
+	public void access(final int theAddress) {
+		access(theAddress, 0);
+	}
+	
+	/**
+	 * Analyses a single reference in the unified stream alone.
+	 * 
+	 * @param theAddress The address referenced.
+	 * @param theLevel Index within levels of the number of sets whose distance is returned.
+	 * @return The reference's stack distance for that number of sets, at least its largest
+	 * associativity if it is the first reference to its line.
+	 */
+	private int access(final int theAddress, final int theLevel) {
+		int line = theAddress >> offsetShift;
+		int id = id(line);
+		int distance = 0;
+		for (int k = 0; k < levels.length; k++) {
+			int d = levels[k].access(line, id);
+			if (k == theLevel) {
+				distance = d;
+			}
+		}
+		references++;
+		return distance;
+	}
+	
+	/**
+	 * @return The number of references analysed.
+	 */
+	public long references() {
+		return references;
+	}
+	
+	/**
+	 * Calculates the hits of an LRU cache.
+	 * 
+	 * @param theCacheSize Number of entries within the cache, a power of two no larger than
+	 * the maximum size.
+	 * @param theNumOfWays The associativity, a power of two no larger than theCacheSize.
+	 * @return The number of references that hit.
+	 * @throws IllegalArgumentException If the size or associativity are not analysed.
+	 */
+	public long hits(final int theCacheSize, final int theNumOfWays) {
+		if (Integer.bitCount(theCacheSize) != 1 || Integer.bitCount(theNumOfWays) != 1 
+				|| theNumOfWays > theCacheSize || theCacheSize > maxSize) {
+			throw new IllegalArgumentException("Cache size (" + theCacheSize + ") and ways (" 
+					+ theNumOfWays + ") must be powers of two with ways no larger than size "
+					+ "and size no larger than " + maxSize);
+		}
+		long[] histogram = levels[Integer.numberOfTrailingZeros(theCacheSize / theNumOfWays)]
+				.histogram;
+		long hits = 0;
+		for (int d = 0; d < theNumOfWays; d++) {
+			hits += histogram[d];
+		}
+		return hits;
+	}
+	
+	/**
+	 * Prints the miss ratio of every size and associativity analysed.
+	 */
+	public void printCurve() {
+		System.out.format("%-8s %6s %12s %12s %10s\n", "Size", "Ways", "Hits", "Misses", 
+				"Miss Ratio");
+		for (int size = 1; size <= maxSize; size <<= 1) {
+			for (int ways = 1; ways <= size; ways <<= 1) {
+				long hits = hits(size, ways);
+				System.out.format("%-8d %6d %12d %12d %10.4f\n", size, ways, hits, 
+						references - hits, (double) (references - hits) / references);
+			}
+		}
+	}
+	
+	/**
+	 * Prints the estimated hits and misses of the configured L1i and L1d together, and of 
+	 * L2, in the same form as a CPU, L2 only counting the references that missed L1.
+	 * 
+	 * @throws IllegalStateException If the analysis was constructed without a configuration.
+	 */
+	public void printLevels() {
+		if (config == null) {
+			throw new IllegalStateException("No configuration to estimate the levels of");
+		}
+		long l1Hits = instructions.hits(config.l1Size, config.numOfWays) 
+				+ data.hits(config.l1Size, config.numOfWays);
+		long l2Hits = missed.hits(config.l2Size, config.numOfWays);
+		long l1Misses = references - l1Hits;
+		System.out.format("\n[Stack distance] %d references, %d distinct\n[L1] Hits: %d "
+				+ "Misses: %d\n[L2] Hits: %d Misses: %d\n", references, distinct, l1Hits, 
+				l1Misses, l2Hits, l1Misses - l2Hits);
+	}
+	
+	/**
+	 * Analyses a trace file from the command line.
+	 * 
+	 * @param theArgs The trace file, then optionally max=size and SimConfig parameters as 
+	 * name=value to choose the L1 and L2 printed.
+	 */
+	public static void main(String... theArgs) {
+		if (theArgs.length < 1) {
+			System.err.println("Usage: StackDistance trace [max=size] [name=value]...");
+			return;
+		}
+		int max = MAX_SIZE;
+		SimConfig config = new SimConfig();
+		for (int i = 1; i < theArgs.length; i++) {
+			String[] pair = theArgs[i].split("=", 2);
+			if (pair[0].equals("max")) {
+				max = Integer.parseInt(pair[1]);
+			} else {
+				config = config.with(pair[0], pair[1]);
+			}
+		}
+		StackDistance analysis = new StackDistance(max, config);
+		analysis.analyse(Simulator.readTrace(theArgs[0]));
+		analysis.printCurve();
+		analysis.printLevels();
+	}
+	
+	/**
+	 * Numbers an address densely, adding it to the address table if it is new.
+	 * 
+	 * @param theAddress The address.
+	 * @return The number of the address.
+	 */
+	private int id(final int theAddress) {
+		int entry = find(theAddress);
+		if (addresses[entry] == NO_ADDRESS) {
+			if ((distinct + 1) * 2 > addresses.length) {
+				int[] oldAddresses = addresses, oldIds = ids;
+				addresses = new int[oldAddresses.length * 2];
+				ids = new int[oldAddresses.length * 2];
+				Arrays.fill(addresses, NO_ADDRESS);
+				for (int i = 0; i < oldAddresses.length; i++) {
+					if (oldAddresses[i] != NO_ADDRESS) {
+						int moved = find(oldAddresses[i]);
+						addresses[moved] = oldAddresses[i];
+						ids[moved] = oldIds[i];
+					}
+				}
+				entry = find(theAddress);
+			}
+			addresses[entry] = theAddress;
+			ids[entry] = distinct++;
+		}
+		return ids[entry];
+	}
+	
+	/**
+	 * Finds the entry of an address in the address table, or the empty entry it would go in.
+	 * 
+	 * @param theAddress The address.
+	 * @return The entry.
+	 */
+	private int find(final int theAddress) {
+		int mask = addresses.length - 1;
+		int h = theAddress * 0x9E3779B9;
+		int entry = (h ^ (h >>> 16)) & mask;
+		while (addresses[entry] != NO_ADDRESS && addresses[entry] != theAddress) {
+			entry = (entry + 1) & mask;
+		}
+		return entry;
+	}
+	
+	/**
+	 * Stack distances for one number of sets.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private class Level {
+		/** Mask selecting the set bits of an address. */
+		private final int indexMask;
+		/** Largest associativity analysed, distances this far or further share a bucket. */
+		private final int maxWays;
+		/** Number of references at each distance, the last bucket holding the rest. */
+		private final long[] histogram;
+		/** Fenwick tree of each set, null until the set is referenced. */
+		private final int[][] trees;
+		/** Clock of each set, advanced on each reference to the set. */
+		private final int[] clocks;
+		/** Set clock of each address's last reference, 0 if never referenced. */
+		private int[] marks = new int[INITIAL_ADDRESSES];
+		
+		Level(final int theSetsShift) {
+			int sets = 1 << theSetsShift;
+			indexMask = sets - 1;
+			maxWays = maxSize >> theSetsShift;
+			histogram = new long[maxWays + 1];
+			trees = new int[sets][];
+			clocks = new int[sets];
+		}
+		
+		int access(final int theAddress, final int theId) {
+			int set = theAddress & indexMask;
+			int time = ++clocks[set];
+			int[] tree = trees[set];
+			if (tree == null) {
+				tree = new int[INITIAL_CLOCK + 1];
+			} else if (time >= tree.length) {
+				//the new half is empty, so only the node spanning both halves needs a sum
+				int capacity = tree.length - 1;
+				tree = Arrays.copyOf(tree, capacity * 2 + 1);
+				tree[capacity * 2] = prefix(tree, capacity);
+			}
+			trees[set] = tree;
+			if (theId >= marks.length) {
+				marks = Arrays.copyOf(marks, Math.max(marks.length * 2, theId + 1));
+			}
+			
+			int last = marks[theId];
+			int distance = maxWays;
+			if (last != 0) {
+				//a first reference misses at every size
+				distance = Math.min(prefix(tree, time - 1) - prefix(tree, last), maxWays);
+				update(tree, last, -1);
+			}
+			histogram[distance]++;
+			update(tree, time, 1);
+			marks[theId] = time;
+			return distance;
+		}
+	}
+	
+	/**
+	 * Adds to an entry of a Fenwick tree.
+	 * 
+	 * @param theTree The tree.
+	 * @param theIndex The entry, from 1.
+	 * @param theDelta The amount added.
+	 */
+	private static void update(final int[] theTree, final int theIndex, final int theDelta) {
+		for (int i = theIndex; i < theTree.length; i += i & -i) {
+			theTree[i] += theDelta;
+		}
+	}
+	
+	/**
+	 * Sums the first entries of a Fenwick tree.
+	 * 
+	 * @param theTree The tree.
+	 * @param theIndex The last entry summed, from 1.
+	 * @return The sum.
+	 */
+	private static int prefix(final int[] theTree, final int theIndex) {
+		int sum = 0;
+		for (int i = theIndex; i > 0; i -= i & -i) {
+			sum += theTree[i];
+		}
+		return sum;
+	}
+}
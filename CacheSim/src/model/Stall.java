@@ -0,0 +1,20 @@
+package model;
+
+/**
+ * The causes a CPU's clock is stalled for, beyond the single cycle each reference takes to
+ * issue.
+ * 
+ * @author Erik Tedder
+ */
+public enum Stall {
+	/** Missing L1, costing L1's latency. */
+	L1,
+	/** Missing L2, costing L2's latency. */
+	L2,
+	/** Missing L3, costing L3's latency. */
+	L3,
+	/** Reading an item no cache supplied from main memory. */
+	MEMORY,
+	/** Writing data through, or back on eviction, to main memory. */
+	WRITE
+}
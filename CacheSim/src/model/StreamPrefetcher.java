@@ -0,0 +1,108 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Stream prefetching. Each stream tracks the last line missed in a region of memory, and a 
+ * miss within WINDOW lines of it extends the stream in that direction. A second miss in the
+ * same direction confirms the stream, after which each miss extending it prefetches the 
+ * next degree lines ahead. A miss near no stream replaces the least recently extended one.
+ * 
+ * @author Erik Tedder
+ */
+public class StreamPrefetcher implements Prefetcher {
+	
+	/** Number of streams tracked at once. */
+	public static final int STREAMS = 16;
+	/** Furthest a miss may be, in lines, from a stream's last line to extend it. */
+	public static final int WINDOW = 4;
+	
+	/** Bytes in each line. */
+	private final int lineSize;
+	/** Shift turning an address into its line number. */
+	private final int lineShift;
+	/** Lines prefetched on each miss extending a confirmed stream. */
+	private final int degree;
+	/** Last line of each stream. */
+	private final int[] lines = new int[STREAMS];
+	/** Direction of each stream, 1 ascending, -1 descending and 0 until known. */
+	private final int[] directions = new int[STREAMS];
+	/** When each stream was last extended, for choosing the stream replaced. */
+	private final long[] stamps = new long[STREAMS];
+	/** Misses seen, stamping the streams they extend. */
+	private long clock;
+	
+	/**
+	 * Constructs a stream prefetcher tracking no streams.
+	 * 
+	 * @param theLineSize Bytes in each line, a power of two.
+	 * @param theDegree Lines prefetched on each miss extending a confirmed stream.
+	 */
+	public StreamPrefetcher(final int theLineSize, final int theDegree) {
+		lineSize = theLineSize;
+		lineShift = Integer.numberOfTrailingZeros(theLineSize);
+		degree = theDegree;
+		Arrays.fill(stamps, -1);
+	}
+	
+	@Override
+	public int miss(final int thePc, final int theAddress, final int[] theTargets) {
+		int line = theAddress >> lineShift;
+		clock++;
+		int oldest = 0;
+		for (int s = 0; s < STREAMS; s++) {
+			int distance = line - lines[s];
+			if (stamps[s] != -1 && distance == 0) {
+				//another miss on the stream's last line
+				stamps[s] = clock;
+				return 0;
+			}
+			if (stamps[s] != -1 && Math.abs(distance) <= WINDOW) {
+				int direction = Integer.signum(distance);
+				boolean confirmed = directions[s] == direction;
+				directions[s] = direction;
+				lines[s] = line;
+				stamps[s] = clock;
+				if (!confirmed) {
+					return 0;
+				}
+				for (int i = 0; i < degree; i++) {
+					theTargets[i] = (line + (i + 1) * direction) * lineSize;
+				}
+				return degree;
+			}
+			if (stamps[s] < stamps[oldest]) {
+				oldest = s;
+			}
+		}
+		//no stream extended, start one in place of the least recently extended
+		lines[oldest] = line;
+		directions[oldest] = 0;
+		stamps[oldest] = clock;
+		return 0;
+	}
+	
+	@Override
+	public int degree() {
+		return degree;
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		Checkpoint.write(theOut, lines);
+		Checkpoint.write(theOut, directions);
+		Checkpoint.write(theOut, stamps);
+		theOut.writeLong(clock);
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		Checkpoint.read(theIn, lines);
+		Checkpoint.read(theIn, directions);
+		Checkpoint.read(theIn, stamps);
+		clock = theIn.readLong();
+	}
+}
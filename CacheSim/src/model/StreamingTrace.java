@@ -0,0 +1,246 @@
+package model;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A CSV trace read incrementally by a background thread into a bounded ring, so the CPUs can
+ * start replaying it as soon as the first records are parsed and memory use does not grow 
+ * with the length of the trace.
+ * 
+ * <p>The trace is built for a fixed number of consumers, each of which must replay the whole
+ * trace through its own cursor. A ring slot is only reused once every consumer has moved 
+ * past it, so the reader waits for the slowest consumer when the ring is full and a consumer
+ * waits for the reader when it has caught up. Both sides publish their progress with ordered
+ * stores every CHUNK records rather than per record, and both yield while waiting, as the 
+ * CoherenceBus does. Consumers must not drift more than the ring's capacity apart, which 
+ * free-running CPUs and lock-step epochs no larger than the capacity both satisfy.
+ * 
+ * <p>If the file cannot be read or a line is malformed, the reader stops and every cursor
+ * throws once it has replayed the records before the failure, so a truncated trace is never
+ * mistaken for a complete one.
+ * 
+ * @author Erik Tedder
+ */
+public class StreamingTrace implements Trace {
+	
+	/** Default number of records the ring holds. */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+	/** Number of records between progress updates, a power of two. */
+	private static final int CHUNK = 1024;
+	
+	/** Instruction address of each slot. */
+	private final int[] iAddresses;
+	/** I/O value of each slot. */
+	private final int[] ioValues;
+	/** Data address of each slot. */
+	private final int[] dAddresses;
+	/** Mask turning a sequence number into a slot. */
+	private final int mask;
+	/** Number of records published by the reader. */
+	private final AtomicLong written = new AtomicLong();
+	/** Number of records each consumer has moved past. */
+	private final AtomicLongArray reads;
+	/** Set once the reader has published its last record. */
+	private volatile boolean finished;
+	/** Why the reader stopped before the end of the file, written before finished. */
+	private volatile Exception failure;
+	/** Number of cursors handed out. */
+	private int cursors;
+	
+	/**
+	 * Opens a CSV trace file and starts reading it with the default capacity.
+	 * 
+	 * @param theFileName Name of the CSV trace file.
+	 * @param theConsumers The number of cursors that will replay the trace.
+	 * @throws IOException If the file cannot be opened.
+	 */
+	public StreamingTrace(final String theFileName, final int theConsumers) 
+			throws IOException {
+		this(theFileName, theConsumers, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Opens a CSV trace file and starts reading it.
+	 * 
+	 * @param theFileName Name of the CSV trace file.
+	 * @param theConsumers The number of cursors that will replay the trace.
+	 * @param theCapacity The number of records the ring holds, a power of two no smaller 
+	 * than CHUNK.
+	 * @throws IOException If the file cannot be opened.
+	 * @throws IllegalArgumentException If the capacity is invalid.
+	 */
+	public StreamingTrace(final String theFileName, final int theConsumers, 
+			final int theCapacity) throws IOException {
+		if (Integer.bitCount(theCapacity) != 1 || theCapacity < CHUNK) {
+			throw new IllegalArgumentException("Capacity (" + theCapacity 
+					+ ") must be a power of two of at least " + CHUNK);
+		}
+		iAddresses = new int[theCapacity];
+		ioValues = new int[theCapacity];
+		dAddresses = new int[theCapacity];
+		mask = theCapacity - 1;
+		reads = new AtomicLongArray(theConsumers);
+		
+		final FileInputStream in = new FileInputStream(theFileName);
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				RingWriter writer = new RingWriter();
+				try {
+					CsvParser.stream(in.getChannel(), writer);
+				} catch (IOException | RuntimeException e) {
+					failure = e;
+				} finally {
+					written.lazySet(writer.sequence);
+					finished = true;
+					try {
+						in.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}, "trace-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+	
+	/**
+	 * The length of a streamed trace is not known until it has been read.
+	 * 
+	 * @return -1
+	 */
+	@Override
+	public long size() {
+		return -1;
+	}
+	
+	/**
+	 * Hands out the next consumer's cursor.
+	 * 
+	 * @return A new TraceCursor.
+	 * @throws IllegalStateException If every consumer's cursor has been handed out.
+	 */
+	@Override
+	public synchronized TraceCursor cursor() {
+		if (cursors == reads.length()) {
+			throw new IllegalStateException("All " + cursors + " cursors have been created");
+		}
+		return new Cursor(cursors++);
+	}
+	
+	/**
+	 * Writes parsed records into the ring on the reader thread.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private class RingWriter implements TraceSink {
+		/** Number of records written. */
+		private long sequence;
+		/** The last read of the slowest consumer's progress. */
+		private long slowest;
+		
+		@Override
+		public void add(final int theIAddress, final int theIOValue, final int theDAddress) {
+			while (sequence - slowest > mask) {
+				slowest = slowest();
+				if (sequence - slowest > mask) {
+					//ring is full, give the slowest consumer a chance to catch up
+					Thread.yield();
+				}
+			}
+			int slot = (int) sequence & mask;
+			iAddresses[slot] = theIAddress;
+			ioValues[slot] = theIOValue;
+			dAddresses[slot] = theDAddress;
+			sequence++;
+			if ((sequence & (CHUNK - 1)) == 0) {
+				//ordered store, makes the chunk visible before the new count
+				written.lazySet(sequence);
+			}
+		}
+	}
+	
+	/**
+	 * @return The number of records every consumer has moved past.
+	 */
+	private long slowest() {
+		long slowest = Long.MAX_VALUE;
+		for (int i = 0; i < reads.length(); i++) {
+			slowest = Math.min(slowest, reads.get(i));
+		}
+		return slowest;
+	}
+	
+	/**
+	 * Cursor of one consumer. The current record is copied out of the ring, so the reader 
+	 * may reuse its slot as soon as the cursor has published its progress. Having replayed 
+	 * every record, the cursor throws an IllegalStateException if the reader failed.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private class Cursor implements TraceCursor {
+		/** Index of this consumer. */
+		private final int consumer;
+		/** Number of records moved past. */
+		private long position;
+		/** The last read of the reader's progress. */
+		private long available;
+		/** The current record. */
+		private int iAddress, ioValue, dAddress;
+		
+		Cursor(final int theConsumer) {
+			consumer = theConsumer;
+		}
+		
+		@Override
+		public boolean next() {
+			if (position == available) {
+				reads.lazySet(consumer, position);
+				while ((available = written.get()) == position) {
+					if (finished) {
+						//finished is written after the last count, so re-read it once
+						available = written.get();
+						if (available == position) {
+							if (failure != null) {
+								throw new IllegalStateException("Trace reading failed after " 
+										+ position + " records", failure);
+							}
+							return false;
+						}
+						break;
+					}
+					//caught up with the reader, give it a chance to parse more
+					Thread.yield();
+				}
+			}
+			int slot = (int) position & mask;
+			iAddress = iAddresses[slot];
+			ioValue = ioValues[slot];
+			dAddress = dAddresses[slot];
+			position++;
+			if ((position & (CHUNK - 1)) == 0) {
+				reads.lazySet(consumer, position);
+			}
+			return true;
+		}
+		
+		@Override
+		public int iAddress() {
+			return iAddress;
+		}
+		
+		@Override
+		public int ioValue() {
+			return ioValue;
+		}
+		
+		@Override
+		public int dAddress() {
+			return dAddress;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Stride prefetching with a reference prediction table. Each instruction address hashes to 
+ * an entry recording the last address it missed on and the stride between its last two 
+ * misses. Seeing the same stride again raises the entry's confidence, and once confident 
+ * each miss prefetches the next degree addresses along the stride. Entries are direct 
+ * mapped, an instruction evicting whichever one hashed to its entry before.
+ * 
+ * @author Erik Tedder
+ */
+public class StridePrefetcher implements Prefetcher {
+	
+	/** Entries in the table, a power of two. */
+	public static final int TABLE_SIZE = 256;
+	/** Confidence from which the stride is prefetched. */
+	public static final int CONFIDENT = 2;
+	/** Highest confidence an entry reaches. */
+	public static final int MAX_CONFIDENCE = 3;
+	/** Instruction address of an unused entry. */
+	private static final int NO_PC = -1;
+	
+	/** Bytes in each line. */
+	private final int lineSize;
+	/** Most addresses prefetched on each miss. */
+	private final int degree;
+	/** Instruction address owning each entry. */
+	private final int[] pcs = new int[TABLE_SIZE];
+	/** Address of each entry's last miss. */
+	private final int[] addresses = new int[TABLE_SIZE];
+	/** Stride between each entry's last two misses. */
+	private final int[] strides = new int[TABLE_SIZE];
+	/** Confidence in each entry's stride. */
+	private final byte[] confidence = new byte[TABLE_SIZE];
+	
+	/**
+	 * Constructs a stride prefetcher with an empty table.
+	 * 
+	 * @param theLineSize Bytes in each line, a power of two.
+	 * @param theDegree Most addresses prefetched on each miss.
+	 */
+	public StridePrefetcher(final int theLineSize, final int theDegree) {
+		lineSize = theLineSize;
+		degree = theDegree;
+		Arrays.fill(pcs, NO_PC);
+	}
+	
+	@Override
+	public int miss(final int thePc, final int theAddress, final int[] theTargets) {
+		int h = thePc * 0x9E3779B9;
+		int entry = (h ^ (h >>> 16)) & (TABLE_SIZE - 1);
+		if (pcs[entry] != thePc) {
+			pcs[entry] = thePc;
+			addresses[entry] = theAddress;
+			strides[entry] = 0;
+			confidence[entry] = 0;
+			return 0;
+		}
+		int stride = theAddress - addresses[entry];
+		addresses[entry] = theAddress;
+		if (stride != 0 && stride == strides[entry]) {
+			if (confidence[entry] < MAX_CONFIDENCE) {
+				confidence[entry]++;
+			}
+		} else {
+			strides[entry] = stride;
+			confidence[entry] = 0;
+		}
+		if (confidence[entry] < CONFIDENT) {
+			return 0;
+		}
+		//strides within a line would fetch the same line repeatedly, step a line at a time
+		int step = Math.abs(stride) < lineSize ? Integer.signum(stride) * lineSize : stride;
+		for (int i = 0; i < degree; i++) {
+			theTargets[i] = theAddress + (i + 1) * step;
+		}
+		return degree;
+	}
+	
+	@Override
+	public int degree() {
+		return degree;
+	}
+	
+	@Override
+	public void save(final DataOutput theOut) throws IOException {
+		Checkpoint.write(theOut, pcs);
+		Checkpoint.write(theOut, addresses);
+		Checkpoint.write(theOut, strides);
+		Checkpoint.write(theOut, confidence);
+	}
+	
+	@Override
+	public void restore(final DataInput theIn) throws IOException {
+		Checkpoint.read(theIn, pcs);
+		Checkpoint.read(theIn, addresses);
+		Checkpoint.read(theIn, strides);
+		Checkpoint.read(theIn, confidence);
+	}
+}
@@ -0,0 +1,71 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that any number of threads may add to without losing updates, in the style of
+ * java.util.concurrent.atomic.LongAdder (which this Java 7 code base cannot use). Additions 
+ * are spread over cells chosen by a hash of the adding thread's id, each cell on its own 
+ * cache line, so threads updating the same counter rarely contend for a line. Every cell is
+ * updated atomically, as threads hashing to the same cell may add to it at once. The value
+ * is the sum of the cells, which may be read at any time, such as while a simulation is
+ * still running.
+ * 
+ * @author Erik Tedder
+ */
+public class StripedCounter {
+	
+	/** Number of cells, a power of two with room for every host processor. */
+	private static final int STRIPES = Math.min(Integer.highestOneBit(
+			Runtime.getRuntime().availableProcessors() * 2 - 1) << 1, 64);
+	/** Longs between cells, placing each on its own cache line. */
+	private static final int PAD = 8;
+	
+	/** The cells, cell i being at index i * PAD. */
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+	
+	/**
+	 * Adds to the counter.
+	 * 
+	 * @param theDelta The amount added.
+	 */
+	public void add(final long theDelta) {
+		if (theDelta == 0) {
+			return;
+		}
+		int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+		int stripe = (h ^ (h >>> 16)) & (STRIPES - 1);
+		cells.getAndAdd(stripe * PAD, theDelta);
+	}
+	
+	/**
+	 * Adds one to the counter.
+	 */
+	public void increment() {
+		add(1);
+	}
+	
+	/**
+	 * Sets the counter, such as when restoring a checkpoint. Unlike add, must not be called 
+	 * while any other thread may be adding to the counter.
+	 * 
+	 * @param theValue The value of the counter.
+	 */
+	public void set(final long theValue) {
+		for (int i = 0; i < cells.length(); i += PAD) {
+			cells.set(i, 0);
+		}
+		cells.getAndAdd(0, theValue);
+	}
+	
+	/**
+	 * @return The value of the counter.
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < cells.length(); i += PAD) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,223 @@
+package model;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs the simulator over a grid of configurations and tabulates the results. The trace is 
+ * read once and shared, read-only, by every simulation. The configurations are fanned out 
+ * over a ForkJoinPool, each simulated deterministically on a single worker thread, so the 
+ * table does not depend on the number of host processors.
+ * 
+ * <p>Usage: Sweep trace [name=value,value...]... [out=file.csv|file.json]. Each name is one of
+ * SimConfig.PARAMETERS; every combination of the listed values is simulated, with unlisted 
+ * parameters taking their defaults. Results are written as CSV, or JSON when the output file
+ * ends in .json, to standard output if no file is given.
+ * 
+ * @author Erik Tedder
+ */
+public class Sweep {
+	
+	/** Argument naming the output file. */
+	private static final String OUT = "out";
+	/** Extension of output files written as JSON. */
+	private static final String JSON_EXTENSION = ".json";
+	
+	/** The trace shared by every simulation. */
+	private final Trace trace;
+	/** The configurations simulated. */
+	private final List<SimConfig> configs;
+	
+	/**
+	 * Constructs a sweep.
+	 * 
+	 * @param theTrace The trace shared by every simulation.
+	 * @param theConfigs The configurations simulated.
+	 */
+	public Sweep(final Trace theTrace, final List<SimConfig> theConfigs) {
+		trace = theTrace;
+		configs = theConfigs;
+	}
+	
+	/**
+	 * Simulates every configuration on the passed pool.
+	 * 
+	 * @param thePool The pool running the simulations.
+	 * @return The results, in the order of the configurations.
+	 */
+	public SimResult[] run(final ForkJoinPool thePool) {
+		SimResult[] results = new SimResult[configs.size()];
+		thePool.invoke(new Task(results, 0, results.length));
+		return results;
+	}
+	
+	/**
+	 * Expands a grid into every combination of its values.
+	 * 
+	 * @param theBase The configuration supplying unlisted parameters.
+	 * @param theGrid Each entry a parameter name followed by the values it takes.
+	 * @return The configurations, the last parameter of the grid varying fastest.
+	 * @throws IllegalArgumentException If a parameter or value is not recognised.
+	 */
+	public static List<SimConfig> expand(final SimConfig theBase, 
+			final List<String[]> theGrid) {
+		List<SimConfig> configs = new ArrayList<SimConfig>();
+		configs.add(theBase);
+		for (String[] axis : theGrid) {
+			List<SimConfig> expanded = new ArrayList<SimConfig>();
+			for (SimConfig config : configs) {
+				for (int i = 1; i < axis.length; i++) {
+					expanded.add(config.with(axis[0], axis[i]));
+				}
+			}
+			configs = expanded;
+		}
+		return configs;
+	}
+	
+	/**
+	 * Writes results as CSV, one row per configuration.
+	 * 
+	 * @param theResults The results.
+	 * @param theOut Where the table is written.
+	 */
+	public static void writeCsv(final SimResult[] theResults, final PrintWriter theOut) {
+		StringBuilder row = new StringBuilder();
+		for (String name : SimConfig.PARAMETERS) {
+			row.append(name).append(',');
+		}
+		for (String name : SimResult.STATISTICS) {
+			row.append(name).append(',');
+		}
+		theOut.println(row.substring(0, row.length() - 1));
+		for (SimResult result : theResults) {
+			row.setLength(0);
+			for (String name : SimConfig.PARAMETERS) {
+				row.append(result.config.get(name)).append(',');
+			}
+			for (String name : SimResult.STATISTICS) {
+				row.append(result.get(name)).append(',');
+			}
+			theOut.println(row.substring(0, row.length() - 1));
+		}
+	}
+	
+	/**
+	 * Writes results as a JSON array, one object per configuration. Numbers and booleans are
+	 * written bare and every other value, such as a policy or protocol name, as a string.
+	 * None of them need escaping.
+	 * 
+	 * @param theResults The results.
+	 * @param theOut Where the array is written.
+	 */
+	public static void writeJson(final SimResult[] theResults, final PrintWriter theOut) {
+		theOut.println("[");
+		for (int i = 0; i < theResults.length; i++) {
+			StringBuilder object = new StringBuilder("  {");
+			for (String name : SimConfig.PARAMETERS) {
+				object.append('"').append(name).append("\": ")
+						.append(json(theResults[i].config.get(name))).append(", ");
+			}
+			for (String name : SimResult.STATISTICS) {
+				object.append('"').append(name).append("\": ")
+						.append(json(theResults[i].get(name))).append(", ");
+			}
+			object.setLength(object.length() - 2);
+			theOut.println(object.append(i + 1 < theResults.length ? "}," : "}"));
+		}
+		theOut.println("]");
+	}
+	
+	/**
+	 * @param theValue A parameter or statistic.
+	 * @return The value as a JSON literal: bare if a number or boolean, otherwise quoted.
+	 */
+	private static String json(final String theValue) {
+		if (theValue.matches("-?\\d+(\\.\\d+)?([eE][-+]?\\d+)?|true|false")) {
+			return theValue;
+		}
+		return '"' + theValue + '"';
+	}
+	
+	/**
+	 * Runs a sweep from the command line.
+	 * 
+	 * @param theArgs The trace file, then the grid and output file as name=value arguments.
+	 */
+	public static void main(String... theArgs) {
+		if (theArgs.length < 1) {
+			System.err.println("Usage: Sweep trace [name=value,value...]... [out=file]");
+			return;
+		}
+		String outFile = null;
+		List<String[]> grid = new ArrayList<String[]>();
+		for (int i = 1; i < theArgs.length; i++) {
+			String[] axis = theArgs[i].split("[=,]");
+			if (axis.length < 2) {
+				System.err.println("Expected name=value but got " + theArgs[i]);
+				return;
+			}
+			if (axis[0].equals(OUT)) {
+				outFile = axis[1];
+			} else {
+				grid.add(axis);
+			}
+		}
+		
+		List<SimConfig> configs = expand(new SimConfig(), grid);
+		Trace trace = Simulator.readTrace(theArgs[0]);
+		System.err.format("Simulating %d configurations over %d references\n", 
+				configs.size(), trace.size());
+		SimResult[] results = new Sweep(trace, configs).run(new ForkJoinPool());
+		
+		try (Writer writer = outFile == null ? new PrintWriter(System.out) 
+				: new FileWriter(outFile);
+				PrintWriter out = new PrintWriter(writer)) {
+			if (outFile != null && outFile.endsWith(JSON_EXTENSION)) {
+				writeJson(results, out);
+			} else {
+				writeCsv(results, out);
+			}
+		} catch (IOException e) {
+			System.err.println("ERROR WRITING RESULTS");
+		}
+	}
+	
+	/**
+	 * Simulates a range of the configurations, splitting it in half until a single 
+	 * configuration remains.
+	 */
+	private class Task extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		/** Results of every configuration. */
+		private final SimResult[] results;
+		/** First configuration of the range. */
+		private final int from;
+		/** End of the range, exclusive. */
+		private final int to;
+		
+		Task(final SimResult[] theResults, final int theFrom, final int theTo) {
+			results = theResults;
+			from = theFrom;
+			to = theTo;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				results[from] = new Simulator(trace, configs.get(from)).simulate();
+			} else if (to > from) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Task(results, from, middle), new Task(results, middle, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package model;
+
+/**
+ * Receives the records of a multi-threaded trace as they are parsed, along with the thread 
+ * that made each reference.
+ * 
+ * @author Erik Tedder
+ */
+public interface ThreadedTraceSink {
+
+	/**
+	 * Receives the next record of the trace.
+	 * 
+	 * @param theThread The thread making the reference (-1 if not recorded).
+	 * @param theIAddress The instruction address.
+	 * @param theIOValue The I/O value (-1 if none, 0 for read, 1 for write).
+	 * @param theDAddress The data address (-1 if none).
+	 */
+	void add(int theThread, int theIAddress, int theIOValue, int theDAddress);
+}
@@ -0,0 +1,24 @@
+package model;
+
+/**
+ * A memory trace that the CPUs replay. A trace is read-only once constructed, so any number
+ * of CPUs may each walk it independently through their own TraceCursor.
+ * 
+ * @author Erik Tedder
+ */
+public interface Trace {
+
+	/**
+	 * The number of records within this trace.
+	 * 
+	 * @return The record count, or -1 if it is not known ahead of time.
+	 */
+	long size();
+	
+	/**
+	 * Creates a new cursor positioned before the first record of this trace.
+	 * 
+	 * @return A new TraceCursor.
+	 */
+	TraceCursor cursor();
+}
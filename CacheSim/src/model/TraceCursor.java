@@ -0,0 +1,32 @@
+package model;
+
+/**
+ * Forward-only iterator over the records of a Trace. Values are handed out as primitives so
+ * walking a trace does not require a MemoryInfo object per record.
+ * 
+ * @author Erik Tedder
+ */
+public interface TraceCursor {
+
+	/**
+	 * Advances to the next record of the trace.
+	 * 
+	 * @return True if the cursor is now on a record, false if the trace is exhausted.
+	 */
+	boolean next();
+	
+	/**
+	 * @return The instruction address of the current record.
+	 */
+	int iAddress();
+	
+	/**
+	 * @return The I/O value of the current record (-1 if none, 0 for read, 1 for write).
+	 */
+	int ioValue();
+	
+	/**
+	 * @return The data address of the current record (-1 if none).
+	 */
+	int dAddress();
+}
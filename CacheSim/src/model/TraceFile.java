@@ -0,0 +1,292 @@
+package model;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reading and conversion of memory trace files. Two formats are understood:
+ * 
+ * <p>CSV traces, one "iAddress,ioValue,dAddress" record per line with empty fields standing 
+ * for -1. Multi-threaded traces add the thread of each record as a fourth column, which 
+ * shard() uses to split the trace between CPUs.
+ * 
+ * <p>Binary traces (BINARY_EXTENSION), a HEADER_SIZE byte header (magic number, version and 
+ * record count) followed by fixed-width records of three little-endian ints in the same 
+ * column order as the CSV.
+ * 
+ * @author Erik Tedder
+ */
+public class TraceFile {
+
+	/** File extension of binary traces. */
+	public static final String BINARY_EXTENSION = ".bin";
+	/** Magic number opening every binary trace ("CTRC"). */
+	public static final int MAGIC = 0x43545243;
+	/** Version of the binary layout. */
+	public static final int VERSION = 1;
+	/** Size of the binary header in bytes. */
+	public static final int HEADER_SIZE = 16;
+	/** Size of a single binary record in bytes. */
+	public static final int RECORD_SIZE = 12;
+	/** Byte order of the binary format. */
+	public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+	
+	/** Size of the buffer used when writing binary traces. */
+	private static final int WRITE_BUFFER_SIZE = RECORD_SIZE * 8192;
+	
+	private TraceFile() {
+		//static methods only
+	}
+	
+	/**
+	 * Opens the passed trace, memory-mapping it when binary and reading it in when CSV.
+	 * 
+	 * @param theFileName The name of the trace file.
+	 * @return The opened Trace.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static Trace open(final String theFileName) throws IOException {
+		if (theFileName.endsWith(BINARY_EXTENSION)) {
+			return new MappedTrace(theFileName);
+		}
+		return readCsv(theFileName);
+	}
+	
+	/**
+	 * Reads a complete CSV trace into memory, large files being parsed in parallel chunks.
+	 * 
+	 * @param theFileName The name of the CSV trace.
+	 * @return The trace read.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static ArrayTrace readCsv(final String theFileName) throws IOException {
+		return CsvParser.read(theFileName, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Splits a multi-threaded CSV trace between CPUs by its thread column. Threads are 
+	 * numbered in the order they first appear and thread n is given to shard n % theShards,
+	 * so each shard keeps the order of its own records and the records are only held once.
+	 * Records without a thread all belong to a single thread.
+	 * 
+	 * @param theFileName The name of the CSV trace.
+	 * @param theShards The number of shards, one per CPU.
+	 * @return The shards.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static ArrayTrace[] shard(final String theFileName, final int theShards) 
+			throws IOException {
+		Sharder sharder = new Sharder(theShards);
+		FileInputStream in = new FileInputStream(theFileName);
+		try {
+			CsvParser.streamThreaded(in.getChannel(), sharder);
+		} finally {
+			in.close();
+		}
+		return sharder.shards;
+	}
+	
+	/**
+	 * Converts a CSV trace into the binary format. The CSV is streamed, so the size of the
+	 * trace converted is not limited by the heap.
+	 * 
+	 * @param theCsvName The name of the CSV trace to read.
+	 * @param theBinaryName The name of the binary trace to write.
+	 * @return The number of records written.
+	 * @throws IOException If either file cannot be accessed.
+	 */
+	public static long convert(final String theCsvName, final String theBinaryName) 
+			throws IOException {
+		FileInputStream in = new FileInputStream(theCsvName);
+		FileOutputStream out = new FileOutputStream(theBinaryName);
+		try {
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ORDER);
+			//leave space for the header, written once the record count is known
+			channel.position(HEADER_SIZE);
+			
+			RecordWriter writer = new RecordWriter(buffer, channel);
+			CsvParser.stream(in.getChannel(), writer);
+			if (writer.failure != null) {
+				throw writer.failure;
+			}
+			flush(buffer, channel);
+			
+			writeHeader(buffer, writer.count);
+			buffer.flip();
+			channel.position(0);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			return writer.count;
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+	
+	/**
+	 * Writes the binary header to the passed buffer.
+	 * 
+	 * @param theBuffer The buffer to place the header in.
+	 * @param theCount The number of records following the header.
+	 */
+	static void writeHeader(final ByteBuffer theBuffer, final long theCount) {
+		theBuffer.putInt(MAGIC);
+		theBuffer.putInt(VERSION);
+		theBuffer.putLong(theCount);
+	}
+	
+	/**
+	 * Validates a binary header and reads its record count.
+	 * 
+	 * @param theHeader Buffer holding the header.
+	 * @return The number of records within the trace.
+	 * @throws IOException If the header is not that of a supported binary trace.
+	 */
+	static long readHeader(final ByteBuffer theHeader) throws IOException {
+		if (theHeader.remaining() < HEADER_SIZE || theHeader.getInt() != MAGIC) {
+			throw new IOException("Not a binary trace file");
+		}
+		int version = theHeader.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported trace version " + version);
+		}
+		long count = theHeader.getLong();
+		if (count < 0) {
+			throw new IOException("Invalid record count " + count);
+		}
+		return count;
+	}
+	
+	
+	/**
+	 * Writes out everything in the buffer and clears it.
+	 * 
+	 * @param theBuffer The buffer to write.
+	 * @param theChannel Where the buffer is written.
+	 * @throws IOException If writing fails.
+	 */
+	private static void flush(final ByteBuffer theBuffer, final FileChannel theChannel) 
+			throws IOException {
+		theBuffer.flip();
+		while (theBuffer.hasRemaining()) {
+			theChannel.write(theBuffer);
+		}
+		theBuffer.clear();
+	}
+	
+	/**
+	 * Converts a CSV trace to the binary format.
+	 * 
+	 * @param theArgs The CSV trace followed by the binary trace to write.
+	 */
+	public static void main(String... theArgs) {
+		if (theArgs.length != 2) {
+			System.err.println("Usage: TraceFile <trace.csv> <trace" + BINARY_EXTENSION + ">");
+			return;
+		}
+		try {
+			long count = convert(theArgs[0], theArgs[1]);
+			System.out.format("Converted %d records to %s\n", count, theArgs[1]);
+		} catch (IOException e) {
+			System.err.println("ERROR CONVERTING FILE: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Writes parsed records into a buffer, flushing it to a channel as it fills. A failed 
+	 * write is kept for the caller, since records arrive through TraceSink.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private static class RecordWriter implements TraceSink {
+		/** Buffer the records are written into. */
+		private final ByteBuffer buffer;
+		/** Channel the buffer is flushed to. */
+		private final FileChannel channel;
+		/** Number of records written. */
+		private long count;
+		/** The first failure to flush, if any. */
+		private IOException failure;
+		
+		RecordWriter(final ByteBuffer theBuffer, final FileChannel theChannel) {
+			buffer = theBuffer;
+			channel = theChannel;
+		}
+		
+		@Override
+		public void add(final int theIAddress, final int theIOValue, final int theDAddress) {
+			if (failure != null) {
+				return;
+			}
+			if (buffer.remaining() < RECORD_SIZE) {
+				try {
+					flush(buffer, channel);
+				} catch (IOException e) {
+					failure = e;
+					return;
+				}
+			}
+			buffer.putInt(theIAddress);
+			buffer.putInt(theIOValue);
+			buffer.putInt(theDAddress);
+			count++;
+		}
+	}
+	
+	/**
+	 * Distributes the records of a multi-threaded trace between shards.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private static class Sharder implements ThreadedTraceSink {
+		/** The shards. */
+		private final ArrayTrace[] shards;
+		/** Threads seen, in the order they first appeared. */
+		private int[] threads = new int[16];
+		/** Number of threads seen. */
+		private int threadTotal;
+		/** The thread of the last record and its shard, since records come in runs. */
+		private int lastThread, lastShard = -1;
+		
+		Sharder(final int theShards) {
+			shards = new ArrayTrace[theShards];
+			for (int i = 0; i < shards.length; i++) {
+				shards[i] = new ArrayTrace();
+			}
+		}
+		
+		@Override
+		public void add(final int theThread, final int theIAddress, final int theIOValue, 
+				final int theDAddress) {
+			if (lastShard == -1 || theThread != lastThread) {
+				lastThread = theThread;
+				lastShard = shardOf(theThread);
+			}
+			shards[lastShard].add(theIAddress, theIOValue, theDAddress);
+		}
+		
+		/**
+		 * @param theThread A thread.
+		 * @return The shard of the thread, numbering it if it is new.
+		 */
+		private int shardOf(final int theThread) {
+			for (int i = 0; i < threadTotal; i++) {
+				if (threads[i] == theThread) {
+					return i % shards.length;
+				}
+			}
+			if (threadTotal == threads.length) {
+				threads = Arrays.copyOf(threads, threadTotal * 2);
+			}
+			threads[threadTotal] = theThread;
+			return threadTotal++ % shards.length;
+		}
+	}
+}
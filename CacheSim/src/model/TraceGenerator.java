@@ -0,0 +1,539 @@
+package model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates synthetic traces of any length for scaling benchmarks and soak tests, in either
+ * format TraceFile reads.
+ * 
+ * <p>Each thread of the workload loops through CODE_BASE's code footprint an instruction at
+ * a time, and a fraction of its instructions access data. A data access falls in the region
+ * shared by every thread or in the thread's private region, each workingSet bytes, and is
+ * either strided, sweeping the region stride bytes at a time, or picks a LINE_SIZE line by
+ * a Zipfian distribution, the k-th hottest line being accessed in proportion to 1 / k^zipf
+ * (0 being uniform). Hot lines are scattered over the region rather than packed together.
+ * 
+ * <p>Every record is a function of the seed, its thread and its index within the thread
+ * alone, drawn from a SplitMix64 sequence seeded by the three. The trace is therefore
+ * generated in chunks on every host processor at once, the chunks being written in order as
+ * they complete, and the same seed always gives the same trace, in either format. CSV traces
+ * of several threads interleave them in runs of RUN records, with each record's thread in
+ * the fourth column, ready for Simulator's "shard". Binary traces have no thread column, so
+ * each thread is written to a file of its own, "-" and its number being added to the name.
+ * 
+ * @author Erik Tedder
+ */
+public class TraceGenerator {
+	
+	/** Address of the first instruction of the code every thread runs. */
+	public static final int CODE_BASE = 0x1000;
+	/** Address of the shared data region, followed by each thread's private region. */
+	public static final int DATA_BASE = 0x1000000;
+	/** Bytes of each instruction and data word. */
+	public static final int WORD_SIZE = 4;
+	/** Bytes of each line the Zipfian distribution picks between. */
+	public static final int LINE_SIZE = 64;
+	/** Records of one thread run together in CSV traces of several threads. */
+	public static final int RUN = 64;
+	/** Records generated by each task. */
+	public static final int CHUNK = 1 << 16;
+	
+	/** Default number of records. */
+	public static final long RECORDS = 1000000;
+	/** Default number of threads. */
+	public static final int THREADS = 1;
+	/** Default bytes of code each thread loops through. */
+	public static final int CODE = 1 << 14;
+	/** Default bytes of the shared region and each private region. */
+	public static final int WORKING_SET = 1 << 20;
+	/** Default fraction of instructions accessing data. */
+	public static final double DATA = 0.67;
+	/** Default fraction of data accesses writing. */
+	public static final double WRITES = 0.33;
+	/** Default fraction of data accesses that are strided. */
+	public static final double STRIDED = 0.2;
+	/** Default bytes between strided accesses. */
+	public static final int STRIDE = 64;
+	/** Default exponent of the Zipfian distribution. */
+	public static final double ZIPF = 0.99;
+	/** Default fraction of data accesses to the shared region. */
+	public static final double SHARED = 0.1;
+	/** Default seed. */
+	public static final long SEED = 1;
+	
+	/** Increment of the SplitMix64 sequence, the golden ratio in fixed point. */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	/** Odd multiplier scattering the Zipfian ranks over a region's lines. */
+	private static final long SCATTER = 0x9E3779B1L;
+	/** Longest CSV record: four fields of up to eleven characters, separators and newline. */
+	private static final int MAX_CSV_RECORD = 4 * 12;
+	
+	/** Number of records. */
+	public final long records;
+	/** Number of threads. */
+	public final int threads;
+	/** Bytes of code each thread loops through. */
+	public final int code;
+	/** Bytes of the shared region and of each private region. */
+	public final int workingSet;
+	/** Fraction of instructions accessing data. */
+	public final double data;
+	/** Fraction of data accesses writing. */
+	public final double writes;
+	/** Fraction of data accesses that are strided. */
+	public final double strided;
+	/** Bytes between strided accesses. */
+	public final int stride;
+	/** Exponent of the Zipfian distribution. */
+	public final double zipf;
+	/** Fraction of data accesses to the shared region. */
+	public final double shared;
+	/** Seed of every record's random numbers. */
+	public final long seed;
+	
+	/** Lines in each region. */
+	private final int lines;
+	/** Zipfian sampling constants: the integral of h over [1.5, lines + 0.5], shifted. */
+	private final double hIntegralX1, hIntegralLines;
+	/** Zipfian sampling constant: the width of the always-accepted interval. */
+	private final double s;
+	
+	/**
+	 * Constructs a generator of the default workload.
+	 */
+	public TraceGenerator() {
+		this(RECORDS, THREADS, CODE, WORKING_SET, DATA, WRITES, STRIDED, STRIDE, ZIPF, SHARED,
+				SEED);
+	}
+	
+	/**
+	 * Constructs a generator.
+	 * 
+	 * @param theRecords Number of records, split between the threads.
+	 * @param theThreads Number of threads, at most EventQueue.MAX_CPUS.
+	 * @param theCode Bytes of code each thread loops through.
+	 * @param theWorkingSet Bytes of the shared region and of each private region, at least
+	 * LINE_SIZE.
+	 * @param theData Fraction of instructions accessing data.
+	 * @param theWrites Fraction of data accesses writing.
+	 * @param theStrided Fraction of data accesses that are strided.
+	 * @param theStride Bytes between strided accesses.
+	 * @param theZipf Exponent of the Zipfian distribution, 0 for uniform.
+	 * @param theShared Fraction of data accesses to the shared region.
+	 * @param theSeed Seed of every record's random numbers.
+	 * @throws IllegalArgumentException If a count or size is out of range, a fraction is not
+	 * between 0 and 1, or the regions do not fit in the address space.
+	 */
+	public TraceGenerator(final long theRecords, final int theThreads, final int theCode,
+			final int theWorkingSet, final double theData, final double theWrites,
+			final double theStrided, final int theStride, final double theZipf,
+			final double theShared, final long theSeed) {
+		if (theRecords < 0 || theThreads < 1 || theThreads > EventQueue.MAX_CPUS
+				|| theCode < WORD_SIZE || theCode > DATA_BASE - CODE_BASE
+				|| theWorkingSet < LINE_SIZE || theStride < 0 || theZipf < 0) {
+			throw new IllegalArgumentException("Invalid trace of " + theRecords 
+					+ " records, " + theThreads + " threads, " + theCode + " bytes of code, a "
+					+ "working set of " + theWorkingSet + " bytes, stride " + theStride 
+					+ " and exponent " + theZipf);
+		}
+		if ((long) theWorkingSet * (theThreads + 1) > Integer.MAX_VALUE - DATA_BASE) {
+			throw new IllegalArgumentException(theThreads + " threads' working sets of "
+					+ theWorkingSet + " bytes do not fit in the address space");
+		}
+		for (double fraction : new double[] {theData, theWrites, theStrided, theShared}) {
+			if (!(fraction >= 0 && fraction <= 1)) {
+				throw new IllegalArgumentException("Fraction " + fraction
+						+ " is not between 0 and 1");
+			}
+		}
+		records = theRecords;
+		threads = theThreads;
+		code = theCode;
+		workingSet = theWorkingSet;
+		data = theData;
+		writes = theWrites;
+		strided = theStrided;
+		stride = theStride;
+		zipf = theZipf;
+		shared = theShared;
+		seed = theSeed;
+		lines = theWorkingSet / LINE_SIZE;
+		hIntegralX1 = hIntegral(1.5) - 1;
+		hIntegralLines = hIntegral(lines + 0.5);
+		s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+	}
+	
+	/**
+	 * Writes the trace, as binary if the file name ends in TraceFile.BINARY_EXTENSION and
+	 * CSV otherwise.
+	 * 
+	 * @param theFileName The trace file. Binary traces of several threads are written to a
+	 * file per thread, named by files().
+	 * @param theParallelism Number of chunks generated at once.
+	 * @throws IOException If a file cannot be written.
+	 */
+	public void write(final String theFileName, final int theParallelism) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(theParallelism);
+		try {
+			if (!theFileName.endsWith(TraceFile.BINARY_EXTENSION)) {
+				write(theFileName, -1, records, pool, theParallelism);
+				return;
+			}
+			String[] files = files(theFileName);
+			for (int thread = 0; thread < threads; thread++) {
+				write(files[thread], thread, records / threads
+						+ (thread < records % threads ? 1 : 0), pool, theParallelism);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * @param theFileName The name of a trace.
+	 * @return The files the trace is written to, one per thread if it is binary and of
+	 * several threads, theFileName alone otherwise.
+	 */
+	public String[] files(final String theFileName) {
+		if (threads == 1 || !theFileName.endsWith(TraceFile.BINARY_EXTENSION)) {
+			return new String[] {theFileName};
+		}
+		String name = theFileName.substring(0,
+				theFileName.length() - TraceFile.BINARY_EXTENSION.length());
+		String[] files = new String[threads];
+		for (int thread = 0; thread < threads; thread++) {
+			files[thread] = name + "-" + thread + TraceFile.BINARY_EXTENSION;
+		}
+		return files;
+	}
+	
+	/**
+	 * Writes a trace file, generating its chunks in parallel and writing them in order. At
+	 * most two chunks per task are held at once, however long the trace.
+	 * 
+	 * @param theFileName The trace file.
+	 * @param theThread The thread written to a binary trace, or -1 for a CSV trace of every
+	 * thread.
+	 * @param theRecords Number of records in the file.
+	 * @param thePool Generates the chunks.
+	 * @param theParallelism Number of chunks generated at once.
+	 * @throws IOException If the file cannot be written.
+	 */
+	private void write(final String theFileName, final int theThread, final long theRecords,
+			final ExecutorService thePool, final int theParallelism) throws IOException {
+		FileOutputStream out = new FileOutputStream(theFileName);
+		try {
+			FileChannel channel = out.getChannel();
+			if (theThread >= 0) {
+				ByteBuffer header = ByteBuffer.allocate(TraceFile.HEADER_SIZE)
+						.order(TraceFile.ORDER);
+				TraceFile.writeHeader(header, theRecords);
+				header.flip();
+				write(header, channel);
+			}
+			Queue<Future<ByteBuffer>> chunks = new ArrayDeque<Future<ByteBuffer>>();
+			for (long from = 0; from < theRecords; from += CHUNK) {
+				if (chunks.size() == 2 * theParallelism) {
+					write(chunks.remove().get(), channel);
+				}
+				chunks.add(thePool.submit(new Chunk(from, Math.min(from + CHUNK, theRecords),
+						theThread)));
+			}
+			while (!chunks.isEmpty()) {
+				write(chunks.remove().get(), channel);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted writing " + theFileName, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed generating " + theFileName, e.getCause());
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Writes out everything in a buffer.
+	 * 
+	 * @param theBuffer The buffer to write.
+	 * @param theChannel Where the buffer is written.
+	 * @throws IOException If writing fails.
+	 */
+	private static void write(final ByteBuffer theBuffer, final FileChannel theChannel)
+			throws IOException {
+		while (theBuffer.hasRemaining()) {
+			theChannel.write(theBuffer);
+		}
+	}
+	
+	/**
+	 * Generates a chunk of a trace into a buffer ready to be written.
+	 * 
+	 * @author Erik Tedder
+	 */
+	private class Chunk implements Callable<ByteBuffer> {
+		/** Index of the first record, within the file. */
+		private final long from;
+		/** Index after the last record, within the file. */
+		private final long to;
+		/** The thread of a binary trace, or -1 for a CSV trace of every thread. */
+		private final int thread;
+		/** State of the SplitMix64 sequence of the record being generated. */
+		private long state;
+		/** The record being generated. */
+		private int iAddress, ioValue, dAddress;
+		
+		Chunk(final long theFrom, final long theTo, final int theThread) {
+			from = theFrom;
+			to = theTo;
+			thread = theThread;
+		}
+		
+		@Override
+		public ByteBuffer call() {
+			if (thread >= 0) {
+				ByteBuffer buffer = ByteBuffer.allocate(
+						(int) (to - from) * TraceFile.RECORD_SIZE).order(TraceFile.ORDER);
+				for (long i = from; i < to; i++) {
+					generate(thread, i);
+					buffer.putInt(iAddress);
+					buffer.putInt(ioValue);
+					buffer.putInt(dAddress);
+				}
+				buffer.flip();
+				return buffer;
+			}
+			byte[] bytes = new byte[(int) (to - from) * MAX_CSV_RECORD];
+			int length = 0;
+			for (long i = from; i < to; i++) {
+				//runs of RUN records from each thread in turn
+				long run = i / RUN;
+				int runThread = (int) (run % threads);
+				generate(runThread, run / threads * RUN + i % RUN);
+				length = format(iAddress, bytes, length);
+				bytes[length++] = ',';
+				length = format(ioValue, bytes, length);
+				bytes[length++] = ',';
+				length = format(dAddress, bytes, length);
+				if (threads > 1) {
+					bytes[length++] = ',';
+					length = format(runThread, bytes, length);
+				}
+				bytes[length++] = '\n';
+			}
+			return ByteBuffer.wrap(bytes, 0, length);
+		}
+		
+		/**
+		 * Generates a record.
+		 * 
+		 * @param theThread The record's thread.
+		 * @param theIndex The record's index within its thread.
+		 */
+		private void generate(final int theThread, final long theIndex) {
+			state = mix(seed + mix(((long) theThread << 48) ^ theIndex));
+			iAddress = CODE_BASE + (int) (theIndex * WORD_SIZE % code);
+			if (nextDouble() >= data) {
+				ioValue = -1;
+				dAddress = -1;
+				return;
+			}
+			ioValue = nextDouble() < writes ? 1 : 0;
+			int region = DATA_BASE 
+					+ (nextDouble() < shared ? 0 : (theThread + 1) * workingSet);
+			if (nextDouble() < strided) {
+				//aligned to a word, as every other access is
+				long offset = theIndex * stride % workingSet;
+				dAddress = region + (int) (offset - offset % WORD_SIZE);
+			} else {
+				long line = (nextZipf() - 1) * SCATTER % lines;
+				dAddress = region + (int) line * LINE_SIZE
+						+ (int) ((nextLong() >>> 1) % (LINE_SIZE / WORD_SIZE)) * WORD_SIZE;
+			}
+		}
+		
+		/**
+		 * @return The next number of the record's SplitMix64 sequence.
+		 */
+		private long nextLong() {
+			state += GOLDEN_GAMMA;
+			return mix(state);
+		}
+		
+		/**
+		 * @return The next number of the record's sequence, uniform in [0, 1).
+		 */
+		private double nextDouble() {
+			return (nextLong() >>> 11) * 0x1.0p-53;
+		}
+		
+		/**
+		 * Draws a Zipfian rank by rejection-inversion (Hormann and Derflinger), taking a
+		 * constant number of draws on average however many lines there are.
+		 * 
+		 * @return A rank between 1 and lines, rank k being drawn in proportion to 1 / k^zipf.
+		 */
+		private long nextZipf() {
+			if (zipf == 0) {
+				return 1 + (nextLong() >>> 1) % lines;
+			}
+			while (true) {
+				double u = hIntegralLines + nextDouble() * (hIntegralX1 - hIntegralLines);
+				double x = hIntegralInverse(u);
+				long k = Math.max(1, Math.min(lines, (long) (x + 0.5)));
+				if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+					return k;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param theZ A number.
+	 * @return The number's bits mixed by SplitMix64's finalizer.
+	 */
+	private static long mix(final long theZ) {
+		long z = (theZ ^ (theZ >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * @param theX A rank.
+	 * @return The unnormalised Zipfian weight of the rank, x^-zipf.
+	 */
+	private double h(final double theX) {
+		return Math.exp(-zipf * Math.log(theX));
+	}
+	
+	/**
+	 * @param theX A rank.
+	 * @return The integral of h from 1 to theX.
+	 */
+	private double hIntegral(final double theX) {
+		double logX = Math.log(theX);
+		return expm1OverX((1 - zipf) * logX) * logX;
+	}
+	
+	/**
+	 * @param theX A value of hIntegral.
+	 * @return The rank whose hIntegral is theX.
+	 */
+	private double hIntegralInverse(final double theX) {
+		double t = Math.max(theX * (1 - zipf), -1);
+		return Math.exp(log1pOverX(t) * theX);
+	}
+	
+	/**
+	 * @param theX A number.
+	 * @return log(1 + x) / x, accurately for x near 0.
+	 */
+	private static double log1pOverX(final double theX) {
+		return Math.abs(theX) > 1e-8 ? Math.log1p(theX) / theX
+				: 1 - theX * (0.5 - theX * (1.0 / 3 - 0.25 * theX));
+	}
+	
+	/**
+	 * @param theX A number.
+	 * @return (e^x - 1) / x, accurately for x near 0.
+	 */
+	private static double expm1OverX(final double theX) {
+		return Math.abs(theX) > 1e-8 ? Math.expm1(theX) / theX
+				: 1 + theX * 0.5 * (1 + theX / 3 * (1 + 0.25 * theX));
+	}
+	
+	/**
+	 * Writes a number as decimal text, -1 as nothing.
+	 * 
+	 * @param theValue The number.
+	 * @param theBytes The bytes written to.
+	 * @param theIndex Where the number is written.
+	 * @return The index after the number.
+	 */
+	private static int format(final int theValue, final byte[] theBytes, final int theIndex) {
+		if (theValue == -1) {
+			return theIndex;
+		}
+		int index = theIndex;
+		long value = theValue;
+		if (value < 0) {
+			theBytes[index++] = '-';
+			value = -value;
+		}
+		int digits = 1;
+		for (long power = 10; power <= value; power *= 10) {
+			digits++;
+		}
+		for (int i = index + digits - 1; i >= index; i--) {
+			theBytes[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return index + digits;
+	}
+	
+	/**
+	 * Generates a trace.
+	 * 
+	 * @param theArgs The trace file to write, ending in TraceFile.BINARY_EXTENSION for a
+	 * binary trace, then any of "records=", "threads=", "code=" (bytes), "workingset="
+	 * (bytes), "data=" (fraction), "writes=" (fraction), "strided=" (fraction), "stride="
+	 * (bytes), "zipf=" (exponent), "shared=" (fraction) and "seed=" followed by its value.
+	 */
+	public static void main(String... theArgs) {
+		if (theArgs.length == 0) {
+			System.err.println("Usage: TraceGenerator <trace.csv|trace"
+					+ TraceFile.BINARY_EXTENSION + "> [name=value]...");
+			return;
+		}
+		long records = RECORDS, seed = SEED;
+		int threads = THREADS, code = CODE, workingSet = WORKING_SET, stride = STRIDE;
+		double data = DATA, writes = WRITES, strided = STRIDED, zipf = ZIPF, shared = SHARED;
+		for (int i = 1; i < theArgs.length; i++) {
+			String[] arg = theArgs[i].split("=", 2);
+			String value = arg.length > 1 ? arg[1] : "";
+			switch (arg[0]) {
+				case "records": records = Long.parseLong(value); break;
+				case "threads": threads = Integer.parseInt(value); break;
+				case "code": code = Integer.parseInt(value); break;
+				case "workingset": workingSet = Integer.parseInt(value); break;
+				case "data": data = Double.parseDouble(value); break;
+				case "writes": writes = Double.parseDouble(value); break;
+				case "strided": strided = Double.parseDouble(value); break;
+				case "stride": stride = Integer.parseInt(value); break;
+				case "zipf": zipf = Double.parseDouble(value); break;
+				case "shared": shared = Double.parseDouble(value); break;
+				case "seed": seed = Long.parseLong(value); break;
+				default:
+					System.err.println("Unknown parameter " + arg[0]);
+					return;
+			}
+		}
+		TraceGenerator generator = new TraceGenerator(records, threads, code, workingSet,
+				data, writes, strided, stride, zipf, shared, seed);
+		try {
+			long start = System.nanoTime();
+			generator.write(theArgs[0], Runtime.getRuntime().availableProcessors());
+			double seconds = (System.nanoTime() - start) / 1e9;
+			long bytes = 0;
+			for (String file : generator.files(theArgs[0])) {
+				bytes += new File(file).length();
+			}
+			System.out.format("Generated %d records (%d MB) in %.2f s, %.1f M records/s, "
+					+ "%.0f MB/s\n", records, bytes >> 20, seconds, records / seconds / 1e6,
+					bytes / seconds / (1 << 20));
+		} catch (IOException e) {
+			System.err.println("ERROR WRITING FILE: " + e.getMessage());
+		}
+	}
+}
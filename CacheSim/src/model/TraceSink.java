@@ -0,0 +1,19 @@
+package model;
+
+/**
+ * Receives the records of a trace as they are parsed, as primitives so parsing does not 
+ * require an object per record.
+ * 
+ * @author Erik Tedder
+ */
+public interface TraceSink {
+
+	/**
+	 * Receives the next record of the trace.
+	 * 
+	 * @param theIAddress The instruction address.
+	 * @param theIOValue The I/O value (-1 if none, 0 for read, 1 for write).
+	 * @param theDAddress The data address (-1 if none).
+	 */
+	void add(int theIAddress, int theIOValue, int theDAddress);
+}